@@ -0,0 +1,62 @@
+package robDex.bench;
+
+/**
+ * A benchmark : an operation whose duration is measured, run many times in a row by the {@link Runner}.
+ * 
+ * The operation returns a value derived from its work, consumed by the runner so that the JIT can't remove the work.
+ * Operations much shorter than a microsecond are run in batches, each batch being timed as a whole.
+ */
+
+public abstract class Benchmark {
+	
+	private final String name, params;
+	private final int batch;
+	
+	/**
+	 * Creates a benchmark.
+	 * 
+	 * @param name the name of the benchmark, such as {@code protocol.decode}.
+	 * @param params the parameters of this run of the benchmark, such as {@code protocol=binary,files=10}.
+	 * @param batch the number of operations timed at once.
+	 */
+	protected Benchmark(String name, String params, int batch){
+		
+		this.name = name;
+		this.params = params;
+		this.batch = batch;
+	}
+	
+	public String getName(){
+		return name;
+	}
+	
+	public String getParams(){
+		return params;
+	}
+	
+	public int getBatch(){
+		return batch;
+	}
+	
+	/**
+	 * Prepares the benchmark, before its first operation.
+	 * 
+	 * @throws Exception if the benchmark can't be run.
+	 */
+	public void setUp() throws Exception{}
+	
+	/**
+	 * Runs the operation once.
+	 * 
+	 * @return a value derived from the operation's work.
+	 * @throws Exception if the operation fails, which stops the benchmark.
+	 */
+	public abstract long run() throws Exception;
+	
+	/**
+	 * Releases what the benchmark used, after its last operation.
+	 * 
+	 * @throws Exception if the resources can't be released.
+	 */
+	public void tearDown() throws Exception{}
+}
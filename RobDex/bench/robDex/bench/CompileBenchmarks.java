@@ -0,0 +1,84 @@
+package robDex.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import robDex.util.Compilation;
+import robDex.util.Compiler;
+import robDex.util.JavaSource;
+import robDex.util.option.OptionManager;
+import robDex.worker.WorkerPool;
+import robDex.workspace.Workspace;
+import robDex.workspace.Workspaces;
+
+/**
+ * Benchmarks of the whole compilation of a request (javac, retrolambda, then the dexer), as configured by the server's options.
+ * The result cache is bypassed, but the DEX code of the class files may be reused from one operation to the next if {@code --dexCache} allows it.
+ */
+
+public class CompileBenchmarks {
+	
+	// Suppresses default constructor, ensuring non-instantiability.
+	private CompileBenchmarks(){}
+	
+	/**
+	 * Creates the benchmarks, once the server's options are initialized.
+	 * 
+	 * @param serverArgs the options of the server, as given to {@link robDex.Server}.
+	 * @return the benchmarks.
+	 * @throws Exception if the options are invalid.
+	 */
+	public static List<Benchmark> all(String[] serverArgs) throws Exception{
+		
+		init(serverArgs);
+		
+		List<Benchmark> benchmarks = new ArrayList<>();
+		
+		for(Corpus.Size size : Corpus.Size.values())
+			benchmarks.add(compile(size));
+		
+		return benchmarks;
+	}
+	
+	/**
+	 * Initializes the server's options, the compiler and the workers, before the benchmarks are created.
+	 * 
+	 * @param serverArgs the options of the server, as given to {@link robDex.Server}.
+	 * @throws Exception if the options are invalid.
+	 */
+	public static void init(String[] serverArgs) throws Exception{
+		
+		OptionManager.init(serverArgs);
+		Compiler.init();
+		Workspaces.init();
+		WorkerPool.init();
+	}
+	
+	/**
+	 * Creates the benchmark of the compilation of a corpus, once the server's options are initialized.
+	 * 
+	 * @param size the size of the corpus.
+	 * @return the benchmark.
+	 */
+	public static Benchmark compile(Corpus.Size size){
+		
+		List<JavaSource> sources = Corpus.sources(size);
+		String params = "corpus=" + size.name().toLowerCase() + ",files=" + sources.size()
+				+ ",compiler=" + (OptionManager.useWorkers() ? "worker" : OptionManager.useInternalCompiler() ? "internal" : "external");
+		
+		return new Benchmark("compiler.compile", params, 1){
+			
+			@Override
+			public long run() throws Exception{
+				
+				try(Workspace workspace = Workspaces.acquire()){
+					
+					Compilation compilation = new Compilation(workspace.getPath(), sources);
+					Compiler.compile(compilation);
+					
+					return compilation.getDex().length;
+				}
+			}
+		};
+	}
+}
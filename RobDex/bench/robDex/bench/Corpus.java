@@ -0,0 +1,142 @@
+package robDex.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import robDex.protocol.BinaryProtocol;
+import robDex.util.JavaSource;
+
+/**
+ * This class generates the java sources used by the benchmarks, and the requests sending them to the server.
+ * The sources are the same from one run to the next, so that the results can be compared.
+ */
+
+public class Corpus {
+	
+	/**
+	 * The sizes of the corpora : the number of classes, and the number of methods of each class.
+	 */
+	public enum Size {
+		
+		SMALL(1, 10),
+		MEDIUM(10, 40),
+		LARGE(50, 80);
+		
+		final int classes, methods;
+		
+		Size(int classes, int methods){
+			
+			this.classes = classes;
+			this.methods = methods;
+		}
+	}
+	
+	// Suppresses default constructor, ensuring non-instantiability.
+	private Corpus(){}
+	
+	/**
+	 * Generates the java files of a corpus. Each class holds plain methods and lambdas, so that every stage of the compilation has work to do.
+	 * 
+	 * @param size the size of the corpus.
+	 * @return the java files.
+	 */
+	public static List<JavaSource> sources(Size size){
+		
+		List<JavaSource> sources = new ArrayList<>(size.classes);
+		
+		for(int c = 0; c < size.classes; c++){
+			
+			StringBuilder sb = new StringBuilder();
+			
+			sb.append("import java.util.function.IntSupplier;\n\n");
+			sb.append("public class C").append(c).append(" {\n");
+			
+			for(int m = 0; m < size.methods; m++){
+				
+				sb.append("\tpublic int m").append(m).append("(int x) {\n");
+				sb.append("\t\tIntSupplier s = () -> x * ").append(m + 1).append(" + ").append(c).append(";\n");
+				sb.append("\t\treturn s.getAsInt()").append(c > 0 ? " + new C" + (c - 1) + "().m0(x)" : "").append(";\n");
+				sb.append("\t}\n\n");
+			}
+			
+			sb.append("}\n");
+			
+			sources.add(new JavaSource("C" + c + ".java", sb.toString().getBytes(StandardCharsets.UTF_8)));
+		}
+		
+		return sources;
+	}
+	
+	/**
+	 * Encodes a request with the text protocol, as a client sends it, without waiting for the server's answers.
+	 * 
+	 * @param sources the files of the request.
+	 * @param checksums {@code true} if the sizes are followed by the files' checksums.
+	 * @return the request.
+	 */
+	public static byte[] textRequest(List<JavaSource> sources, boolean checksums){
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		
+		write(out, sources.size() + "\n");
+		
+		for(JavaSource s : sources){
+			
+			write(out, s.getName() + "\n" + s.getContent().length);
+			write(out, checksums ? " " + Long.toHexString(crc(s.getContent())) + "\n" : "\n");
+			out.write(s.getContent(), 0, s.getContent().length);
+		}
+		
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Encodes a request with the binary protocol.
+	 * 
+	 * @param sources the files of the request.
+	 * @param checksums {@code true} if the manifest holds the files' checksums.
+	 * @return the request.
+	 */
+	public static byte[] binaryRequest(List<JavaSource> sources, boolean checksums){
+		
+		int size = 7;
+		
+		for(JavaSource s : sources)
+			size += 2 + s.getName().getBytes(StandardCharsets.UTF_8).length + 4 + (checksums ? 4 : 0) + s.getContent().length;
+		
+		ByteBuffer b = ByteBuffer.allocate(size);
+		b.put(BinaryProtocol.MAGIC).put(BinaryProtocol.VERSION).put((byte) (checksums ? BinaryProtocol.CHECKSUM : 0)).putInt(sources.size());
+		
+		for(JavaSource s : sources){
+			
+			byte[] name = s.getName().getBytes(StandardCharsets.UTF_8);
+			b.putShort((short) name.length).put(name).putInt(s.getContent().length);
+			
+			if(checksums)
+				b.putInt((int) crc(s.getContent()));
+		}
+		
+		for(JavaSource s : sources)
+			b.put(s.getContent());
+		
+		return b.array();
+	}
+	
+	private static void write(ByteArrayOutputStream out, String s){
+		
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.write(b, 0, b.length);
+	}
+	
+	private static long crc(byte[] content){
+		
+		CRC32 crc = new CRC32();
+		crc.update(content, 0, content.length);
+		
+		return crc.getValue();
+	}
+}
@@ -0,0 +1,179 @@
+package robDex.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import robDex.exceptions.BadRequestException;
+import robDex.protocol.Protocol;
+import robDex.util.CompilationResult;
+
+/**
+ * Benchmarks of a whole exchange with a client over a loopback socket, the compilation aside :
+ * the client sends its files, the server receives and decodes them as a {@link robDex.Request} does, then sends back a result
+ * held in memory or left in a file. A new connection is made for each exchange.
+ */
+
+public class LoopbackBenchmarks {
+	
+	private static final int BUF_SIZE = 64 * 1024;
+	
+	// Suppresses default constructor, ensuring non-instantiability.
+	private LoopbackBenchmarks(){}
+	
+	public static List<Benchmark> all(){
+		
+		List<Benchmark> benchmarks = new ArrayList<>();
+		
+		for(String protocol : new String[]{"text", "binary"})
+			for(boolean inMemory : new boolean[]{true, false})
+				for(int resultSize : new int[]{4 * 1024, 1024 * 1024})
+					benchmarks.add(exchange(protocol, inMemory, resultSize));
+		
+		return benchmarks;
+	}
+	
+	/**
+	 * Creates the benchmark of an exchange.
+	 * 
+	 * @param protocol the protocol of the request, {@code text} or {@code binary}.
+	 * @param inMemory whether the result is held in memory, or left in a file.
+	 * @param resultSize the size of the result, in bytes.
+	 * @return the benchmark.
+	 */
+	public static Benchmark exchange(String protocol, boolean inMemory, int resultSize){
+		return new Exchange(protocol, inMemory, resultSize);
+	}
+	
+	private static class Exchange extends Benchmark{
+		
+		private final byte[] request;
+		private final boolean inMemory;
+		private final int resultSize;
+		
+		private ServerSocketChannel server;
+		private Thread serverThread;
+		private CompilationResult result;
+		private File file;
+		
+		private final ByteBuffer clientBuf = ByteBuffer.allocateDirect(BUF_SIZE);
+		
+		Exchange(String protocol, boolean inMemory, int resultSize){
+			
+			super("loopback.exchange", "protocol=" + protocol + ",result=" + (inMemory ? "memory" : "file") + ",resultBytes=" + resultSize, 1);
+			
+			this.inMemory = inMemory;
+			this.resultSize = resultSize;
+			this.request = protocol.equals("text") ? Corpus.textRequest(Corpus.sources(Corpus.Size.MEDIUM), false)
+					: Corpus.binaryRequest(Corpus.sources(Corpus.Size.MEDIUM), false);
+		}
+		
+		@Override
+		public void setUp() throws IOException{
+			
+			byte[] content = new byte[resultSize];
+			new Random(resultSize).nextBytes(content);
+			
+			if(inMemory)
+				result = new CompilationResult(true, content).toDirect();
+			
+			else{
+				
+				file = File.createTempFile("robDex-bench", ".dex");
+				Files.write(file.toPath(), content);
+			}
+			
+			server = ServerSocketChannel.open();
+			server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			
+			serverThread = new Thread(this::serve, "bench-server");
+			serverThread.setDaemon(true);
+			serverThread.start();
+		}
+		
+		@Override
+		public long run() throws IOException{
+			
+			long received = 0;
+			
+			try(SocketChannel client = SocketChannel.open(server.getLocalAddress())){
+				
+				ByteBuffer out = ByteBuffer.wrap(request);
+				
+				while(out.hasRemaining())
+					client.write(out);
+				
+				int n;
+				
+				while((n = client.read(clientBuf)) != -1){
+					
+					received += n;
+					clientBuf.clear();
+				}
+			}
+			
+			return received;
+		}
+		
+		@Override
+		public void tearDown() throws IOException{
+			
+			server.close();
+			
+			if(file != null)
+				file.delete();
+		}
+		
+		/**
+		 * Answers the clients, one after the other, until the server socket is closed.
+		 */
+		private void serve(){
+			
+			ByteBuffer buf = ByteBuffer.allocateDirect(BUF_SIZE);
+			
+			while(server.isOpen()){
+				
+				try(SocketChannel client = server.accept()){
+					
+					Protocol protocol = null;
+					boolean received = false;
+					
+					while(!received){
+						
+						buf.clear();
+						
+						if(client.read(buf) == -1)
+							break;
+						
+						buf.flip();
+						
+						if(protocol == null)
+							protocol = Protocol.detect(buf.get(0));
+						
+						received = protocol.decode(buf);
+						
+						ByteBuffer answers = protocol.takeAnswers();
+						
+						while(answers.hasRemaining())
+							client.write(answers);
+					}
+					
+					//as with the results of the cache's disk tier, the file is opened for each response, which closes it
+					if(received)
+						protocol.encode(0, inMemory ? result : new CompilationResult(true, FileChannel.open(file.toPath()), 0, resultSize)).sendTo(client);
+				}
+				
+				catch (IOException | BadRequestException e) {}
+			}
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package robDex.bench;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import robDex.exceptions.BadRequestException;
+import robDex.protocol.Protocol;
+
+/**
+ * Benchmarks of the decoding of the clients' requests, by both protocols.
+ * The requests are given to the protocol in chunks of the size of the server's read buffers, as if they were read from a socket.
+ */
+
+public class ProtocolBenchmarks {
+	
+	private static final int CHUNK = 64 * 1024;
+	
+	// Suppresses default constructor, ensuring non-instantiability.
+	private ProtocolBenchmarks(){}
+	
+	public static List<Benchmark> all(){
+		
+		List<Benchmark> benchmarks = new ArrayList<>();
+		
+		for(Corpus.Size size : Corpus.Size.values()){
+			
+			for(boolean checksums : new boolean[]{false, true}){
+				
+				benchmarks.add(decode("text", size, checksums));
+				benchmarks.add(decode("binary", size, checksums));
+			}
+		}
+		
+		return benchmarks;
+	}
+	
+	/**
+	 * Creates the benchmark of the decoding of a request.
+	 * 
+	 * @param protocol the protocol of the request, {@code text} or {@code binary}.
+	 * @param size the size of the corpus sent by the request.
+	 * @param checksums whether the request gives the checksums of its files.
+	 * @return the benchmark.
+	 */
+	public static Benchmark decode(String protocol, Corpus.Size size, boolean checksums){
+		
+		byte[] request = protocol.equals("text") ? Corpus.textRequest(Corpus.sources(size), checksums)
+				: Corpus.binaryRequest(Corpus.sources(size), checksums);
+		
+		String params = "protocol=" + protocol + ",corpus=" + size.name().toLowerCase() + ",checksums=" + checksums + ",bytes=" + request.length;
+		
+		return new Benchmark("protocol.decode", params, 1){
+			
+			private final ByteBuffer buf = ByteBuffer.allocateDirect(CHUNK);
+			
+			@Override
+			public long run() throws BadRequestException{
+				
+				Protocol p = null;
+				boolean received = false;
+				
+				for(int offset = 0; !received; offset += CHUNK){
+					
+					buf.clear();
+					buf.put(request, offset, Math.min(CHUNK, request.length - offset));
+					buf.flip();
+					
+					if(p == null)
+						p = Protocol.detect(buf.get(0));
+					
+					received = p.decode(buf);
+					p.takeAnswers();
+				}
+				
+				return p.getFiles().size();
+			}
+		};
+	}
+}
@@ -0,0 +1,293 @@
+package robDex.bench;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import robDex.metrics.Histogram;
+
+/**
+ * <p>
+ * This class runs the benchmarks of the server, and writes their results in a machine-readable format (JSON or CSV),
+ * so that the results of two runs can be compared.
+ * </p>
+ * <p>
+ * The benchmarks are meant to be run by JMH, from the {@code jmh} module of the Maven build ({@code robDex.jmh}).
+ * This runner is only a fallback for the builds made with javac alone : it runs every benchmark one after the other in a single JVM, without the forks of JMH,
+ * and its results aren't to be compared with JMH's.
+ * </p>
+ * <p>
+ * Each benchmark is run for a few warm-up iterations, whose results are dropped, then for the measured iterations.
+ * An iteration runs the benchmark's operation again and again for a fixed time. The result of a benchmark gives its throughput,
+ * averaged over the measured iterations, and the distribution of the durations of its operations.
+ * </p>
+ * <p>
+ * Usage : {@code java robDex.bench.Runner [options] [-- server options]}
+ * <ul>
+ * <li>{@code -w count} : warm-up iterations, 3 by default.</li>
+ * <li>{@code -i count} : measured iterations, 5 by default.</li>
+ * <li>{@code -t milliseconds} : duration of an iteration, 1000 by default.</li>
+ * <li>{@code -b regex} : runs only the benchmarks whose name and parameters match, all of them by default.</li>
+ * <li>{@code -f json|csv} : format of the results, json by default.</li>
+ * <li>{@code -o path} : file in which the results are written, the standard output by default.</li>
+ * </ul>
+ * The compilation benchmarks are only run if the server's options follow {@code --}, such as {@code -- -j deps.jar -r retrolambda.jar}.
+ * </p>
+ */
+
+public class Runner {
+	
+	private int warmups = 3, iterations = 5;
+	private long time = 1000;
+	private Pattern filter = Pattern.compile(".*");
+	private String format = "json", output;
+	private String[] serverArgs;
+	
+	/**
+	 * Sink of the values returned by the operations, so that their work isn't removed by the JIT.
+	 */
+	private static volatile long sink;
+	
+	public static void main(String[] args){
+		
+		Runner runner = new Runner();
+		
+		try {
+			
+			runner.parse(args);
+			runner.run();
+		}
+		
+		catch (Exception e) {
+			
+			System.err.println(e.getMessage());
+			System.exit(-1);
+		}
+	}
+	
+	private void parse(String[] args){
+		
+		for(int i = 0; i < args.length; i++){
+			
+			String a = args[i];
+			
+			if(a.equals("--")){
+				
+				serverArgs = Arrays.copyOfRange(args, i + 1, args.length);
+				return;
+			}
+			
+			if(i + 1 == args.length)
+				throw new IllegalArgumentException("Option \"" + a + "\" needs a value.");
+			
+			String v = args[++i];
+			
+			switch(a){
+			
+			case "-w":
+				warmups = Integer.parseInt(v);
+				break;
+			
+			case "-i":
+				iterations = Integer.parseInt(v);
+				break;
+			
+			case "-t":
+				time = Long.parseLong(v);
+				break;
+			
+			case "-b":
+				filter = Pattern.compile(v);
+				break;
+			
+			case "-f":
+				
+				if(!v.equals("json") && !v.equals("csv"))
+					throw new IllegalArgumentException("Format \"" + v + "\" is neither \"json\" nor \"csv\".");
+				
+				format = v;
+				break;
+			
+			case "-o":
+				output = v;
+				break;
+			
+			default:
+				throw new IllegalArgumentException("Unknown option \"" + a + "\".");
+			}
+		}
+	}
+	
+	private void run() throws Exception{
+		
+		List<Benchmark> benchmarks = new ArrayList<>();
+		
+		benchmarks.addAll(ValidationBenchmarks.all());
+		benchmarks.addAll(ProtocolBenchmarks.all());
+		benchmarks.addAll(LoopbackBenchmarks.all());
+		
+		if(serverArgs != null)
+			benchmarks.addAll(CompileBenchmarks.all(serverArgs));
+		
+		List<Result> results = new ArrayList<>();
+		
+		for(Benchmark b : benchmarks){
+			
+			if(!filter.matcher(b.getName() + " " + b.getParams()).find())
+				continue;
+			
+			System.err.println("# " + b.getName() + " " + b.getParams());
+			
+			b.setUp();
+			
+			try {
+				
+				for(int i = 0; i < warmups; i++)
+					iterate(b, new Histogram());
+				
+				Histogram durations = new Histogram();
+				double[] throughputs = new double[iterations];
+				
+				for(int i = 0; i < iterations; i++){
+					
+					throughputs[i] = iterate(b, durations);
+					System.err.println(String.format(Locale.ROOT, "  iteration %d : %.1f ops/s", i + 1, throughputs[i]));
+				}
+				
+				results.add(new Result(b, throughputs, durations));
+			}
+			
+			finally{
+				b.tearDown();
+			}
+		}
+		
+		if(output == null)
+			write(results, System.out);
+		
+		else{
+			
+			try(PrintStream out = new PrintStream(Files.newOutputStream(Paths.get(output)), false, "UTF-8")){
+				write(results, out);
+			}
+		}
+	}
+	
+	/**
+	 * Runs a benchmark's operation for an iteration.
+	 * 
+	 * @param b the benchmark.
+	 * @param durations the histogram in which the durations of the operations are recorded, in nanoseconds.
+	 * @return the number of operations per second.
+	 * @throws Exception if an operation fails.
+	 */
+	private double iterate(Benchmark b, Histogram durations) throws Exception{
+		
+		long start = System.nanoTime(), end = start + time * 1_000_000, now = start, ops = 0;
+		
+		while(now < end){
+			
+			long value = 0, t = now;
+			
+			for(int i = 0; i < b.getBatch(); i++)
+				value += b.run();
+			
+			now = System.nanoTime();
+			durations.record((now - t) / b.getBatch());
+			
+			sink = value;
+			ops += b.getBatch();
+		}
+		
+		return ops * 1e9 / (now - start);
+	}
+	
+	private void write(List<Result> results, PrintStream out) throws IOException{
+		
+		Writer w = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+		
+		if(format.equals("csv")){
+			
+			w.write("benchmark,params,iterations,ops_per_s,ops_per_s_error,mean_ns,p50_ns,p90_ns,p99_ns\n");
+			
+			for(Result r : results)
+				w.write(String.format(Locale.ROOT, "%s,\"%s\",%d,%.3f,%.3f,%d,%d,%d,%d\n", r.name, r.params, r.iterations, r.throughput, r.error,
+						r.mean, r.p50, r.p90, r.p99));
+		}
+		
+		else{
+			
+			w.write("{\n  \"java\": \"" + System.getProperty("java.version") + "\",\n");
+			w.write("  \"warmups\": " + warmups + ",\n  \"iterations\": " + iterations + ",\n  \"iterationMillis\": " + time + ",\n");
+			w.write("  \"results\": [");
+			
+			for(int i = 0; i < results.size(); i++){
+				
+				Result r = results.get(i);
+				
+				w.write(i == 0 ? "\n" : ",\n");
+				w.write(String.format(Locale.ROOT, "    {\"benchmark\": \"%s\", \"params\": \"%s\", \"iterations\": %d, \"opsPerSecond\": %.3f, \"opsPerSecondError\": %.3f, "
+						+ "\"meanNanos\": %d, \"p50Nanos\": %d, \"p90Nanos\": %d, \"p99Nanos\": %d}",
+						r.name, r.params, r.iterations, r.throughput, r.error, r.mean, r.p50, r.p90, r.p99));
+			}
+			
+			w.write("\n  ]\n}\n");
+		}
+		
+		w.flush();
+	}
+	
+	/**
+	 * The result of a benchmark.
+	 */
+	private static class Result{
+		
+		final String name, params;
+		final int iterations;
+		
+		/**
+		 * Mean of the throughputs of the iterations, in operations per second, and their standard deviation.
+		 */
+		final double throughput, error;
+		
+		/**
+		 * Durations of the operations, in nanoseconds.
+		 */
+		final long mean, p50, p90, p99;
+		
+		Result(Benchmark b, double[] throughputs, Histogram durations){
+			
+			name = b.getName();
+			params = b.getParams();
+			iterations = throughputs.length;
+			
+			double sum = 0, squares = 0;
+			
+			for(double t : throughputs)
+				sum += t;
+			
+			throughput = sum / iterations;
+			
+			for(double t : throughputs)
+				squares += (t - throughput) * (t - throughput);
+			
+			error = iterations > 1 ? Math.sqrt(squares / (iterations - 1)) : 0;
+			
+			long count = durations.getCount();
+			
+			mean = count == 0 ? 0 : durations.getSum() / count;
+			p50 = durations.getQuantile(0.5);
+			p90 = durations.getQuantile(0.9);
+			p99 = durations.getQuantile(0.99);
+		}
+	}
+}
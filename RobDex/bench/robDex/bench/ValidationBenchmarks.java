@@ -0,0 +1,69 @@
+package robDex.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import robDex.util.Util;
+
+/**
+ * Benchmarks of the checks made on the names of the files sent by the clients.
+ */
+
+public class ValidationBenchmarks {
+	
+	private static final int BATCH = 1000;
+	
+	private static final String[] NAMES = {
+		"A.java", "MainActivity.java", "Robot$Controller.java", "../../etc/passwd.java", "invalid-name.java", "Readme.txt",
+		"src/main/java/com/example/VeryLongClassNameForTheBenchmark.java"
+	};
+	
+	// Suppresses default constructor, ensuring non-instantiability.
+	private ValidationBenchmarks(){}
+	
+	public static List<Benchmark> all(){
+		
+		List<Benchmark> benchmarks = new ArrayList<>();
+		
+		benchmarks.add(isNameValid());
+		benchmarks.add(filterFileName());
+		
+		return benchmarks;
+	}
+	
+	/**
+	 * Creates the benchmark of {@link Util#isNameValid(String)}, over names valid and invalid.
+	 * 
+	 * @return the benchmark.
+	 */
+	public static Benchmark isNameValid(){
+		
+		return new Benchmark("util.isNameValid", "names=" + NAMES.length, BATCH){
+			
+			private int i;
+			
+			@Override
+			public long run(){
+				return Util.isNameValid(NAMES[i++ % NAMES.length]) ? 1 : 0;
+			}
+		};
+	}
+	
+	/**
+	 * Creates the benchmark of {@link Util#filterFileName(String)}, over names valid and invalid.
+	 * 
+	 * @return the benchmark.
+	 */
+	public static Benchmark filterFileName(){
+		
+		return new Benchmark("util.filterFileName", "names=" + NAMES.length, BATCH){
+			
+			private int i;
+			
+			@Override
+			public long run(){
+				return Util.filterFileName(NAMES[i++ % NAMES.length]).length();
+			}
+		};
+	}
+}
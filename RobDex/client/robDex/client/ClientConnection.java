@@ -0,0 +1,383 @@
+package robDex.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ * A persistent connection to the server, speaking the binary protocol with checksums, compressed results and encoded diagnostics.
+ * </p>
+ * <p>
+ * Requests are sent one after the other by a writer thread, without waiting for the previous results, each under an ID of its own.
+ * A reader thread routes the results to their requests by their IDs, in the order the server sends them.
+ * If the connection breaks, its requests are given back to the {@link RobDexClient}, which may send them again on another connection.
+ * </p>
+ */
+
+class ClientConnection {
+	
+	private static final byte MAGIC = (byte) 0xD7, VERSION = 2;
+	private static final int CHECKSUM = 0x01, COMPRESSION = 0x02, PERSISTENT = 0x04, DIAGNOSTICS = 0x08;
+	private static final byte SUCCESS_TAG = 0, ERROR_TAG = -1, DEFLATE = 1;
+	
+	private static final int BUF_SIZE = 64 * 1024, CONNECT_TIMEOUT = 10 * 1000;
+	
+	private final RobDexClient client;
+	private final InetSocketAddress server;
+	private final Socket socket = new Socket();
+	
+	/**
+	 * Requests waiting to be sent.
+	 */
+	private final BlockingQueue<PendingRequest> queue = new LinkedBlockingQueue<>();
+	
+	/**
+	 * Requests sent, waiting for their results, by ID.
+	 */
+	private final ConcurrentHashMap<Integer, PendingRequest> sent = new ConcurrentHashMap<>();
+	
+	private final Thread writer;
+	private boolean closed;
+	
+	ClientConnection(RobDexClient client, InetSocketAddress server){
+		
+		this.client = client;
+		this.server = server;
+		
+		writer = new Thread(this::write, "robDex-client-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+	
+	/**
+	 * Queues a request to be sent.
+	 * 
+	 * @param request the request.
+	 * @return {@code true} if the request is queued, {@code false} if the connection is closed.
+	 */
+	synchronized boolean submit(PendingRequest request){
+		
+		if(closed)
+			return false;
+		
+		queue.add(request);
+		return true;
+	}
+	
+	/**
+	 * Returns the number of requests carried by the connection.
+	 * 
+	 * @return the requests waiting to be sent, and those waiting for their results.
+	 */
+	int getLoad(){
+		return queue.size() + sent.size();
+	}
+	
+	synchronized boolean isClosed(){
+		return closed;
+	}
+	
+	/**
+	 * Closes the connection, and gives its requests back to the client.
+	 * 
+	 * @param cause the reason why the connection is closed.
+	 */
+	void close(IOException cause){
+		
+		List<PendingRequest> requests = new ArrayList<>();
+		
+		synchronized(this){
+			
+			if(closed)
+				return;
+			
+			closed = true;
+			
+			queue.drainTo(requests);
+			requests.addAll(sent.values());
+			sent.clear();
+		}
+		
+		try {
+			socket.close();
+		}
+		
+		catch (IOException e) {}
+		
+		writer.interrupt();
+		
+		for(PendingRequest request : requests)
+			client.retry(request, cause);
+	}
+	
+	/**
+	 * Connects to the server, then sends the queued requests until the connection is closed.
+	 */
+	private void write(){
+		
+		try {
+			
+			socket.connect(server, CONNECT_TIMEOUT);
+			socket.setTcpNoDelay(true);
+			
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUF_SIZE));
+			out.write(new byte[]{MAGIC, VERSION, CHECKSUM | COMPRESSION | PERSISTENT | DIAGNOSTICS});
+			out.flush();
+			
+			Thread reader = new Thread(this::read, "robDex-client-reader");
+			reader.setDaemon(true);
+			reader.start();
+			
+			int id = 0;
+			
+			while(true){
+				
+				PendingRequest request = queue.take();
+				
+				//a request which timed out before being sent is dropped
+				if(request.isDone())
+					continue;
+				
+				if(!track(++id, request)){
+					
+					client.retry(request, new IOException("Connection closed"));
+					return;
+				}
+				
+				send(out, id, request.files);
+				
+				if(queue.isEmpty())
+					out.flush();
+			}
+		}
+		
+		catch (InterruptedException e) {
+			close(new InterruptedIOException("Connection closed"));
+		}
+		
+		catch (IOException e) {
+			close(e);
+		}
+	}
+	
+	/**
+	 * Keeps a request until its result is received.
+	 * 
+	 * @param id the ID of the request.
+	 * @param request the request.
+	 * @return {@code true} if the request is kept, {@code false} if the connection is closed.
+	 */
+	private synchronized boolean track(int id, PendingRequest request){
+		
+		if(closed)
+			return false;
+		
+		sent.put(id, request);
+		return true;
+	}
+	
+	/**
+	 * Sends a request : its ID, its manifest, then the contents of its files as they are.
+	 * 
+	 * @param out the connection's stream.
+	 * @param id the ID of the request.
+	 * @param files the files of the request.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private void send(DataOutputStream out, int id, List<SourceFile> files) throws IOException{
+		
+		out.writeInt(id);
+		out.writeInt(files.size());
+		
+		CRC32 crc = new CRC32();
+		
+		for(SourceFile file : files){
+			
+			byte[] name = file.getName().getBytes(StandardCharsets.UTF_8);
+			
+			crc.reset();
+			crc.update(file.getContent());
+			
+			out.writeShort(name.length);
+			out.write(name);
+			out.writeInt(file.getContent().length);
+			out.writeInt((int) crc.getValue());
+			out.writeInt(0);
+		}
+		
+		for(SourceFile file : files)
+			out.write(file.getContent());
+	}
+	
+	/**
+	 * Receives the results until the connection is closed.
+	 */
+	private void read(){
+		
+		Inflater inflater = new Inflater();
+		
+		try {
+			
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUF_SIZE));
+			byte[] chunk = new byte[BUF_SIZE], inflated = new byte[BUF_SIZE];
+			
+			while(true){
+				
+				int id = in.readInt();
+				byte tag = in.readByte();
+				
+				PendingRequest request = sent.get(id);
+				byte encoding;
+				int size, sentSize;
+				
+				try {
+					
+					encoding = in.readByte();
+					size = in.readInt();
+					sentSize = in.readInt();
+				}
+				
+				//an invalid request is only answered by its tag, before the server closes the connection
+				catch (EOFException e) {
+					
+					if(tag == ERROR_TAG && request != null && sent.remove(id, request))
+						client.retry(request, new RejectedRequestException("Request rejected by the server"));
+					
+					throw e;
+				}
+				
+				if(tag != SUCCESS_TAG && tag != ERROR_TAG)
+					throw new IOException("Invalid answer from the server: " + tag);
+				
+				inflater.reset();
+				receive(in, request, tag == SUCCESS_TAG, encoding == DEFLATE ? inflater : null, size, sentSize, chunk, inflated);
+				
+				if(request != null)
+					sent.remove(id, request);
+			}
+		}
+		
+		catch (IOException e) {
+			close(e);
+		}
+		
+		finally{
+			inflater.end();
+		}
+	}
+	
+	/**
+	 * Receives the content of a result, and writes it to the sink of its request as it comes.
+	 * Once the request is done, or if its sink fails, the rest of the content is read and dropped.
+	 * 
+	 * @param in the connection's stream.
+	 * @param request the request, {@code null} if it's unknown.
+	 * @param successful {@code true} if the content is a DEX file, {@code false} if it holds the errors.
+	 * @param inflater the inflater uncompressing the content, {@code null} if the content is sent as is.
+	 * @param size the size of the uncompressed content.
+	 * @param sentSize the size of the content as it is sent.
+	 * @param chunk buffer in which the content is read.
+	 * @param inflated buffer in which the content is uncompressed.
+	 * @throws IOException if an I/O error occurs on the connection.
+	 */
+	private void receive(DataInputStream in, PendingRequest request, boolean successful, Inflater inflater, int size, int sentSize, byte[] chunk, byte[] inflated) throws IOException{
+		
+		ByteArrayOutputStream errors = successful ? null : new ByteArrayOutputStream(size);
+		ResultSink sink = request == null || request.isDone() ? null : successful ? request.sink : ResultSink.of(errors);
+		IOException failure = null;
+		
+		try {
+			
+			if(sink != null){
+				
+				request.streaming = successful;
+				sink.open(size);
+			}
+		}
+		
+		catch (IOException e) {
+			failure = e;
+		}
+		
+		for(int remaining = sentSize; remaining > 0;){
+			
+			int n = in.read(chunk, 0, Math.min(chunk.length, remaining));
+			
+			if(n < 0)
+				throw new EOFException();
+			
+			remaining -= n;
+			
+			if(sink == null || failure != null || request.isDone())
+				continue;
+			
+			try {
+				
+				if(inflater == null)
+					sink.write(chunk, 0, n);
+				
+				else{
+					
+					inflater.setInput(chunk, 0, n);
+					
+					for(int m; (m = inflater.inflate(inflated)) > 0;)
+						sink.write(inflated, 0, m);
+				}
+			}
+			
+			catch (IOException e) {
+				failure = e;
+			}
+			
+			catch (DataFormatException e) {
+				failure = new IOException("Invalid compressed content", e);
+			}
+		}
+		
+		if(sink == null || request.isDone())
+			return;
+		
+		if(failure == null && inflater != null && !inflater.finished())
+			failure = new IOException("Truncated compressed content");
+		
+		if(failure != null){
+			
+			request.fail(failure);
+			return;
+		}
+		
+		try {
+			
+			if(successful)
+				request.complete(sink.close(size));
+			
+			else
+				request.complete(new CompileResult(false, size, null, Diagnostic.decode(errors.toByteArray())));
+		}
+		
+		catch (IOException e) {
+			request.fail(e);
+		}
+		
+		catch (IllegalArgumentException e) {
+			request.fail(new IOException("Invalid diagnostics", e));
+		}
+	}
+}
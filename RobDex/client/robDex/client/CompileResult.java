@@ -0,0 +1,78 @@
+package robDex.client;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * The result of a compilation : the DEX file if it was successful, the errors otherwise.
+ */
+
+public class CompileResult {
+	
+	private final boolean successful;
+	private final long size;
+	private final ByteBuffer dex;
+	private final List<Diagnostic> diagnostics;
+	
+	CompileResult(boolean successful, long size, ByteBuffer dex, List<Diagnostic> diagnostics){
+		
+		this.successful = successful;
+		this.size = size;
+		this.dex = dex;
+		this.diagnostics = diagnostics;
+	}
+	
+	public boolean isSuccessful(){
+		return successful;
+	}
+	
+	/**
+	 * Returns the size of the DEX file.
+	 * 
+	 * @return the size, in bytes, {@code 0} if the compilation failed.
+	 */
+	public long getSize(){
+		return successful ? size : 0;
+	}
+	
+	/**
+	 * Returns the DEX file, when it was kept in memory by the client.
+	 * 
+	 * @return the DEX file, {@code null} if the compilation failed or if the DEX file was written to the caller's output.
+	 */
+	public ByteBuffer getDex(){
+		return dex;
+	}
+	
+	/**
+	 * Returns the errors, warnings and notes reported by the stages of the compilation.
+	 * 
+	 * @return the diagnostics, {@code null} if the compilation was successful.
+	 */
+	public List<Diagnostic> getDiagnostics(){
+		return diagnostics;
+	}
+	
+	/**
+	 * Returns the errors reported by the server, as javac and the other tools print them.
+	 * 
+	 * @return the errors, {@code null} if the compilation was successful.
+	 */
+	public String getErrors(){
+		
+		if(diagnostics == null)
+			return null;
+		
+		StringBuilder sb = new StringBuilder();
+		
+		for(Diagnostic d : diagnostics){
+			
+			sb.append(d);
+			
+			if(sb.charAt(sb.length() - 1) != '\n')
+				sb.append('\n');
+		}
+		
+		return sb.toString();
+	}
+}
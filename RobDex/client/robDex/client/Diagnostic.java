@@ -0,0 +1,172 @@
+package robDex.client;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An error, warning or note reported by a stage of a failed compilation, such as an error of javac.
+ * The messages of the tools which don't locate their errors are kept whole, without a file.
+ */
+
+public class Diagnostic {
+	
+	/**
+	 * The stages which report messages, in the order of their codes.
+	 */
+	public enum Stage { SERVER, RECEIVE, JAVAC, RETROLAMBDA, DEX }
+	
+	/**
+	 * The severities of the messages, in the order of their codes.
+	 */
+	public enum Severity { ERROR, WARNING, NOTE }
+	
+	private final Stage stage;
+	private final Severity severity;
+	private final String file, code, message;
+	private final int line, column;
+	
+	private Diagnostic(Stage stage, Severity severity, String file, int line, int column, String code, String message){
+		
+		this.stage = stage;
+		this.severity = severity;
+		this.file = file;
+		this.line = line;
+		this.column = column;
+		this.code = code;
+		this.message = message;
+	}
+	
+	public Stage getStage(){
+		return stage;
+	}
+	
+	public Severity getSeverity(){
+		return severity;
+	}
+	
+	/**
+	 * Returns the name of the file the message refers to.
+	 * 
+	 * @return the name of the file, empty if there is none.
+	 */
+	public String getFile(){
+		return file;
+	}
+	
+	/**
+	 * Returns the line the message refers to.
+	 * 
+	 * @return the line, starting at {@code 1}, {@code 0} if it's unknown.
+	 */
+	public int getLine(){
+		return line;
+	}
+	
+	/**
+	 * Returns the column the message refers to.
+	 * 
+	 * @return the column, starting at {@code 1}, {@code 0} if it's unknown.
+	 */
+	public int getColumn(){
+		return column;
+	}
+	
+	/**
+	 * Returns the code of the message given by the tool, such as {@code compiler.err.cant.resolve}.
+	 * 
+	 * @return the code, empty if there is none.
+	 */
+	public String getCode(){
+		return code;
+	}
+	
+	/**
+	 * Returns the message, which may span several lines.
+	 * 
+	 * @return the message.
+	 */
+	public String getMessage(){
+		return message;
+	}
+	
+	/**
+	 * Returns the diagnostic as javac prints it, such as {@code Main.java:3: error: cannot find symbol}.
+	 * The messages of the other stages are given as the tools wrote them, preceded by their file if there is one.
+	 * 
+	 * @return the diagnostic as text.
+	 */
+	@Override
+	public String toString(){
+		
+		StringBuilder sb = new StringBuilder();
+		
+		if(!file.isEmpty()){
+			
+			sb.append(file);
+			
+			if(line > 0)
+				sb.append(':').append(line);
+			
+			sb.append(": ");
+		}
+		
+		if(stage == Stage.JAVAC)
+			sb.append(severity == Severity.NOTE ? "Note" : severity.name().toLowerCase(Locale.ROOT)).append(": ");
+		
+		return sb.append(message).toString();
+	}
+	
+	/**
+	 * Decodes the diagnostics sent by the server, as described in the server's {@code robDex.util.Diagnostics}.
+	 * 
+	 * @param encoded the encoding of the diagnostics.
+	 * @return the diagnostics.
+	 * @throws IllegalArgumentException if the encoding is invalid.
+	 */
+	static List<Diagnostic> decode(byte[] encoded) throws IllegalArgumentException{
+		
+		ByteBuffer b = ByteBuffer.wrap(encoded);
+		
+		try {
+			
+			int count = b.getInt();
+			
+			if(count < 0 || count > b.remaining())
+				throw new IllegalArgumentException("Invalid number of diagnostics : " + count + ".");
+			
+			List<Diagnostic> diagnostics = new ArrayList<>(count);
+			
+			for(int i = 0; i < count; i++){
+				
+				Stage stage = Stage.values()[b.get()];
+				Severity severity = Severity.values()[b.get()];
+				int line = b.getInt(), column = b.getInt();
+				String file = string(b, b.getShort() & 0xffff), code = string(b, b.getShort() & 0xffff), message = string(b, b.getInt());
+				
+				diagnostics.add(new Diagnostic(stage, severity, file, line, column, code, message));
+			}
+			
+			return Collections.unmodifiableList(diagnostics);
+		}
+		
+		catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Truncated diagnostics.", e);
+		}
+	}
+	
+	private static String string(ByteBuffer b, int length){
+		
+		if(length < 0 || length > b.remaining())
+			throw new BufferUnderflowException();
+		
+		String s = new String(b.array(), b.position(), length, StandardCharsets.UTF_8);
+		b.position(b.position() + length);
+		
+		return s;
+	}
+}
@@ -0,0 +1,61 @@
+package robDex.client;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A request submitted to the client, until its result is received or it fails.
+ */
+
+class PendingRequest {
+	
+	final List<SourceFile> files;
+	final ResultSink sink;
+	final CompletableFuture<CompileResult> future = new CompletableFuture<>();
+	
+	/**
+	 * Number of times the request was sent again.
+	 */
+	int retries;
+	
+	/**
+	 * {@code true} once the DEX file started being written to the sink, after which the request can't be sent again.
+	 */
+	volatile boolean streaming;
+	
+	/**
+	 * Deadline of the request, cancelled once it's done.
+	 */
+	volatile ScheduledFuture<?> deadline;
+	
+	PendingRequest(List<SourceFile> files, ResultSink sink){
+		
+		this.files = files;
+		this.sink = sink;
+	}
+	
+	boolean isDone(){
+		return future.isDone();
+	}
+	
+	void complete(CompileResult result){
+		
+		future.complete(result);
+		cancelDeadline();
+	}
+	
+	void fail(Throwable cause){
+		
+		future.completeExceptionally(cause);
+		cancelDeadline();
+	}
+	
+	private void cancelDeadline(){
+		
+		ScheduledFuture<?> d = deadline;
+		
+		if(d != null)
+			d.cancel(false);
+	}
+}
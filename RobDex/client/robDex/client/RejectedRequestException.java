@@ -0,0 +1,16 @@
+package robDex.client;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the server rejects a request, such as a request holding too many files or a file with an invalid name.
+ */
+
+public class RejectedRequestException extends IOException{
+	
+	private static final long serialVersionUID = 1L;
+	
+	public RejectedRequestException(String message){
+		super(message);
+	}
+}
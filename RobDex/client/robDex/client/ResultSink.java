@@ -0,0 +1,150 @@
+package robDex.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class receives the content of a DEX file, chunk by chunk, as it is read from the server.
+ */
+
+abstract class ResultSink {
+	
+	/**
+	 * Called before the first chunk of the content.
+	 * 
+	 * @param size the size of the content, in bytes.
+	 * @throws IOException if the content can't be taken.
+	 */
+	abstract void open(long size) throws IOException;
+	
+	abstract void write(byte[] b, int off, int len) throws IOException;
+	
+	/**
+	 * Called once the whole content is written.
+	 * 
+	 * @param size the size of the content, in bytes.
+	 * @return the result of the compilation.
+	 * @throws IOException if the content can't be taken.
+	 */
+	abstract CompileResult close(long size) throws IOException;
+	
+	/**
+	 * Returns a sink keeping the content in memory, given by {@link CompileResult#getDex()}.
+	 * 
+	 * @return the sink.
+	 */
+	static ResultSink inMemory(){
+		
+		return new ResultSink(){
+			
+			private ByteBuffer dex;
+			
+			@Override
+			void open(long size) throws IOException{
+				
+				if(size > Integer.MAX_VALUE)
+					throw new IOException("DEX file too large: " + size);
+				
+				dex = ByteBuffer.allocate((int) size);
+			}
+			
+			@Override
+			void write(byte[] b, int off, int len) throws IOException{
+				
+				try {
+					dex.put(b, off, len);
+				}
+				
+				catch (BufferOverflowException e) {
+					throw new IOException("DEX file larger than announced");
+				}
+			}
+			
+			@Override
+			CompileResult close(long size) throws IOException{
+				
+				if(dex.hasRemaining())
+					throw new IOException("DEX file smaller than announced");
+				
+				dex.flip();
+				return new CompileResult(true, size, dex.asReadOnlyBuffer(), null);
+			}
+		};
+	}
+	
+	/**
+	 * Returns a sink writing the content to a stream, which isn't closed.
+	 * 
+	 * @param out the stream.
+	 * @return the sink.
+	 */
+	static ResultSink of(OutputStream out){
+		
+		return new ResultSink(){
+			
+			private long written;
+			
+			@Override
+			void open(long size){}
+			
+			@Override
+			void write(byte[] b, int off, int len) throws IOException{
+				
+				out.write(b, off, len);
+				written += len;
+			}
+			
+			@Override
+			CompileResult close(long size) throws IOException{
+				
+				if(written != size)
+					throw new IOException("DEX file of " + written + " bytes, " + size + " announced");
+				
+				out.flush();
+				return new CompileResult(true, size, null, null);
+			}
+		};
+	}
+	
+	/**
+	 * Returns a sink writing the content into a buffer, from its position. Once the content is written, the position is moved after it.
+	 * 
+	 * @param dst the buffer.
+	 * @return the sink.
+	 */
+	static ResultSink of(ByteBuffer dst){
+		
+		return new ResultSink(){
+			
+			private long written;
+			
+			@Override
+			void open(long size) throws IOException{
+				
+				if(size > dst.remaining())
+					throw new IOException("DEX file of " + size + " bytes, larger than the buffer");
+			}
+			
+			@Override
+			void write(byte[] b, int off, int len) throws IOException{
+				
+				if(len > dst.remaining())
+					throw new IOException("DEX file larger than announced");
+				
+				dst.put(b, off, len);
+				written += len;
+			}
+			
+			@Override
+			CompileResult close(long size) throws IOException{
+				
+				if(written != size)
+					throw new IOException("DEX file of " + written + " bytes, " + size + " announced");
+				
+				return new CompileResult(true, size, null, null);
+			}
+		};
+	}
+}
@@ -0,0 +1,236 @@
+package robDex.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * <p>
+ * This class sends java files to a RobDex server to be compiled, without blocking the caller : each request gives a {@link CompletableFuture},
+ * completed with the result of the compilation.
+ * </p>
+ * <p>
+ * The requests are spread over a pool of persistent connections, opened on the first request and opened again when they break.
+ * Several requests are carried at once by each connection, without waiting for the previous results.
+ * The DEX files are either kept in memory, or written, as they are received, to a stream or a buffer given by the caller,
+ * so that a large DEX file is never held by the client.
+ * </p>
+ * <p>
+ * A request rejected by the server, or abandoned because its connection broke, is sent again after a delay, up to a number of retries.
+ * A request whose DEX file started being written to the caller's stream or buffer isn't sent again.
+ * A request which isn't done after its timeout, retries included, fails with a {@link TimeoutException}.
+ * </p>
+ * <p>
+ * The futures are completed by the threads of the client : the callers shouldn't block them, and the caller's streams should be written quickly,
+ * as the other results of the connection wait meanwhile.
+ * </p>
+ */
+
+public class RobDexClient implements Closeable{
+	
+	public static final int DEFAULT_PORT = 5668, DEFAULT_CONNECTIONS = 2, DEFAULT_RETRIES = 3;
+	public static final long DEFAULT_TIMEOUT = 5 * 60;
+	
+	/**
+	 * Delay before the first retry of a request, in milliseconds, doubled at each retry.
+	 */
+	private static final long RETRY_DELAY = 100, MAX_RETRY_DELAY = 5 * 1000;
+	
+	private final InetSocketAddress server;
+	private final ClientConnection[] connections;
+	private final long timeout;
+	private final int retries;
+	
+	/**
+	 * Thread enforcing the timeouts, and sending the requests again.
+	 */
+	private final ScheduledThreadPoolExecutor scheduler;
+	
+	/**
+	 * Requests which aren't done yet.
+	 */
+	private final Set<PendingRequest> requests = ConcurrentHashMap.newKeySet();
+	
+	private volatile boolean closed;
+	
+	/**
+	 * Creates a client of the server at {@code host}, on the default port, with the default settings.
+	 * 
+	 * @param host the server's host.
+	 */
+	public RobDexClient(String host){
+		this(new InetSocketAddress(host, DEFAULT_PORT), DEFAULT_CONNECTIONS, DEFAULT_TIMEOUT, TimeUnit.SECONDS, DEFAULT_RETRIES);
+	}
+	
+	/**
+	 * Creates a client.
+	 * 
+	 * @param server the server's address.
+	 * @param connections the number of connections to the server.
+	 * @param timeout the delay after which a request fails, from its submission.
+	 * @param unit the unit of {@code timeout}.
+	 * @param retries the number of times a request may be sent again.
+	 */
+	public RobDexClient(InetSocketAddress server, int connections, long timeout, TimeUnit unit, int retries){
+		
+		if(connections < 1 || timeout <= 0 || retries < 0)
+			throw new IllegalArgumentException();
+		
+		this.server = server;
+		this.connections = new ClientConnection[connections];
+		this.timeout = unit.toMillis(timeout);
+		this.retries = retries;
+		
+		scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+			
+			Thread t = new Thread(r, "robDex-client-scheduler");
+			t.setDaemon(true);
+			
+			return t;
+		});
+		
+		scheduler.setRemoveOnCancelPolicy(true);
+	}
+	
+	/**
+	 * Compiles java files, keeping the DEX file in memory.
+	 * 
+	 * @param files the files.
+	 * @return the future result, whose DEX file is given by {@link CompileResult#getDex()}.
+	 */
+	public CompletableFuture<CompileResult> compile(List<SourceFile> files){
+		return submit(files, ResultSink.inMemory());
+	}
+	
+	/**
+	 * Compiles java files, writing the DEX file to a stream as it is received. The stream isn't closed.
+	 * 
+	 * @param files the files.
+	 * @param out the stream.
+	 * @return the future result.
+	 */
+	public CompletableFuture<CompileResult> compile(List<SourceFile> files, OutputStream out){
+		return submit(files, ResultSink.of(out));
+	}
+	
+	/**
+	 * Compiles java files, writing the DEX file into a buffer, from its position, as it is received.
+	 * The result fails if the DEX file doesn't fit in the buffer.
+	 * 
+	 * @param files the files.
+	 * @param dst the buffer, whose position is moved after the DEX file.
+	 * @return the future result.
+	 */
+	public CompletableFuture<CompileResult> compile(List<SourceFile> files, ByteBuffer dst){
+		return submit(files, ResultSink.of(dst));
+	}
+	
+	private CompletableFuture<CompileResult> submit(List<SourceFile> files, ResultSink sink){
+		
+		PendingRequest request = new PendingRequest(new ArrayList<>(files), sink);
+		
+		requests.add(request);
+		request.future.whenComplete((result, e) -> requests.remove(request));
+		
+		request.deadline = scheduler.schedule(() -> {
+			request.fail(new TimeoutException("No result after " + timeout + " ms"));
+		}, timeout, TimeUnit.MILLISECONDS);
+		
+		send(request);
+		
+		return request.future;
+	}
+	
+	/**
+	 * Sends a request on the least loaded connection, opening the connections which are closed.
+	 * 
+	 * @param request the request.
+	 */
+	private void send(PendingRequest request){
+		
+		while(true){
+			
+			ClientConnection connection = null;
+			
+			synchronized(connections){
+				
+				if(closed){
+					
+					request.fail(new IOException("Client closed"));
+					return;
+				}
+				
+				for(int i = 0; i < connections.length; i++){
+					
+					if(connections[i] == null || connections[i].isClosed())
+						connections[i] = new ClientConnection(this, server);
+					
+					if(connection == null || connections[i].getLoad() < connection.getLoad())
+						connection = connections[i];
+				}
+			}
+			
+			if(connection.submit(request))
+				return;
+		}
+	}
+	
+	/**
+	 * Sends a request again after a delay, if it can be ; fails it otherwise.
+	 * 
+	 * @param request the request, abandoned by its connection.
+	 * @param cause the reason why the request was abandoned.
+	 */
+	void retry(PendingRequest request, IOException cause){
+		
+		if(request.isDone())
+			return;
+		
+		if(closed || request.streaming || request.retries == retries){
+			
+			request.fail(cause);
+			return;
+		}
+		
+		long delay = Math.min(RETRY_DELAY << request.retries++, MAX_RETRY_DELAY);
+		
+		try {
+			scheduler.schedule(() -> send(request), delay, TimeUnit.MILLISECONDS);
+		}
+		
+		catch (RuntimeException e) {
+			request.fail(cause);
+		}
+	}
+	
+	/**
+	 * Closes the connections. The requests which aren't done fail.
+	 */
+	@Override
+	public void close(){
+		
+		synchronized(connections){
+			closed = true;
+		}
+		
+		for(ClientConnection connection : connections)
+			if(connection != null)
+				connection.close(new IOException("Client closed"));
+		
+		scheduler.shutdownNow();
+		
+		//the requests waiting to be sent again
+		for(PendingRequest request : requests)
+			request.fail(new IOException("Client closed"));
+	}
+}
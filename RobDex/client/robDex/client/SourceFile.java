@@ -0,0 +1,43 @@
+package robDex.client;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A java file to be compiled by the server.
+ */
+
+public class SourceFile {
+	
+	private final String name;
+	private final byte[] content;
+	
+	/**
+	 * Creates a java file.
+	 * 
+	 * @param name the name of the file, such as {@code Main.java}.
+	 * @param content the content of the file, in the charset expected by the server.
+	 */
+	public SourceFile(String name, byte[] content){
+		
+		this.name = name;
+		this.content = content;
+	}
+	
+	/**
+	 * Creates a java file, encoded in UTF-8.
+	 * 
+	 * @param name the name of the file, such as {@code Main.java}.
+	 * @param content the content of the file.
+	 */
+	public SourceFile(String name, String content){
+		this(name, content.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	public String getName(){
+		return name;
+	}
+	
+	public byte[] getContent(){
+		return content;
+	}
+}
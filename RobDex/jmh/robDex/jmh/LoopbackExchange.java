@@ -0,0 +1,27 @@
+package robDex.jmh;
+
+import org.openjdk.jmh.annotations.Param;
+
+import robDex.bench.Benchmark;
+import robDex.bench.LoopbackBenchmarks;
+
+/**
+ * A whole exchange with a client over a loopback socket, the compilation aside.
+ */
+
+public class LoopbackExchange extends Suite {
+	
+	@Param({"text", "binary"})
+	public String protocol;
+	
+	@Param({"memory", "file"})
+	public String result;
+	
+	@Param({"4096", "1048576"})
+	public int resultBytes;
+	
+	@Override
+	protected Benchmark create(){
+		return LoopbackBenchmarks.exchange(protocol, result.equals("memory"), resultBytes);
+	}
+}
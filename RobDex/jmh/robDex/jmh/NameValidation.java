@@ -0,0 +1,25 @@
+package robDex.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+
+import robDex.bench.Benchmark;
+import robDex.bench.ValidationBenchmarks;
+
+/**
+ * The checks made on the names of the files sent by the clients.
+ */
+
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NameValidation extends Suite {
+	
+	@Param({"isNameValid", "filterFileName"})
+	public String check;
+	
+	@Override
+	protected Benchmark create(){
+		return check.equals("isNameValid") ? ValidationBenchmarks.isNameValid() : ValidationBenchmarks.filterFileName();
+	}
+}
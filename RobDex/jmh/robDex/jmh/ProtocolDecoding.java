@@ -0,0 +1,28 @@
+package robDex.jmh;
+
+import org.openjdk.jmh.annotations.Param;
+
+import robDex.bench.Benchmark;
+import robDex.bench.Corpus;
+import robDex.bench.ProtocolBenchmarks;
+
+/**
+ * The decoding of the clients' requests, by both protocols.
+ */
+
+public class ProtocolDecoding extends Suite {
+	
+	@Param({"text", "binary"})
+	public String protocol;
+	
+	@Param({"SMALL", "MEDIUM", "LARGE"})
+	public Corpus.Size corpus;
+	
+	@Param({"false", "true"})
+	public boolean checksums;
+	
+	@Override
+	protected Benchmark create(){
+		return ProtocolBenchmarks.decode(protocol, corpus, checksums);
+	}
+}
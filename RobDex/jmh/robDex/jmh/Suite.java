@@ -0,0 +1,56 @@
+package robDex.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs a benchmark of the plain harness ({@link robDex.bench}) under JMH, which takes care of the forks, the warm-up
+ * and the dead code elimination. Each subclass creates the benchmark from its JMH parameters.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public abstract class Suite {
+	
+	private robDex.bench.Benchmark benchmark;
+	
+	/**
+	 * Creates the benchmark, from the parameters injected by JMH.
+	 * 
+	 * @return the benchmark.
+	 * @throws Exception if the benchmark can't be created.
+	 */
+	protected abstract robDex.bench.Benchmark create() throws Exception;
+	
+	@Setup
+	public void setUp() throws Exception{
+		
+		benchmark = create();
+		benchmark.setUp();
+	}
+	
+	@Benchmark
+	public long run() throws Exception{
+		return benchmark.run();
+	}
+	
+	@TearDown
+	public void tearDown() throws Exception{
+		benchmark.tearDown();
+	}
+}
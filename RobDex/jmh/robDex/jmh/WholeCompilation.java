@@ -0,0 +1,45 @@
+package robDex.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+
+import robDex.bench.Benchmark;
+import robDex.bench.CompileBenchmarks;
+import robDex.bench.Corpus;
+
+/**
+ * The whole compilation of a request, as configured by the server's options given with {@code -p serverArgs="..."}.
+ */
+
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WholeCompilation extends Suite {
+	
+	private static boolean initialized;
+	
+	@Param({"SMALL", "MEDIUM", "LARGE"})
+	public Corpus.Size corpus;
+	
+	@Param({""})
+	public String serverArgs;
+	
+	@Override
+	protected Benchmark create() throws Exception{
+		
+		if(serverArgs.trim().isEmpty())
+			throw new IllegalStateException("The compilation needs the server's options, given with -p serverArgs=\"...\".");
+		
+		//JMH forks a JVM for each corpus, but runs them all in its own JVM when forks are disabled (-f 0)
+		synchronized(WholeCompilation.class){
+			
+			if(!initialized){
+				
+				CompileBenchmarks.init(serverArgs.trim().split("\\s+"));
+				initialized = true;
+			}
+		}
+		
+		return CompileBenchmarks.compile(corpus);
+	}
+}
@@ -0,0 +1,451 @@
+package robDex;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+
+import robDex.access.AccessControl;
+import robDex.exceptions.BadRequestException;
+import robDex.metrics.Metrics;
+import robDex.metrics.Metrics.Outcome;
+import robDex.metrics.Metrics.Phase;
+import robDex.protocol.Protocol;
+import robDex.protocol.Response;
+import robDex.util.CompilationResult;
+import robDex.util.JavaSource;
+import robDex.util.option.OptionManager;
+import robDex.workspace.Workspace;
+import robDex.workspace.Workspaces;
+
+/**
+ * This class holds the state of a client's connection handled by an {@link EventLoop}.
+ * 
+ * Except for the compilations, which are run by threads of the pool, a connection is only used by the event loop's thread.
+ * A persistent connection carries several requests, compiled at once and answered in the order they end. Like a {@link Request},
+ * each request must be received, compiled and sent before its deadlines, and a persistent connection is closed once it's been idle for too long.
+ */
+
+class Connection {
+	
+	/**
+	 * The connection is either open to new requests, closed to new requests but answering the received ones,
+	 * or only sending its last answers before being closed.
+	 */
+	private enum State { OPEN, DRAINING, CLOSING }
+	
+	private final EventLoop loop;
+	private final SocketChannel channel;
+	private final SelectionKey key;
+	
+	/**
+	 * Protocol spoken by the client, chosen from the first byte it sends.
+	 */
+	private Protocol protocol;
+	
+	/**
+	 * Answers waiting to be sent to the client, in order.
+	 */
+	private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+	
+	/**
+	 * Results of the compilations waiting to be sent to the client, encoded by the threads which compiled them.
+	 */
+	private final Queue<Response> responses = new ConcurrentLinkedQueue<>();
+	
+	private State state = State.OPEN;
+	
+	/**
+	 * {@code true} while a request is partly received.
+	 */
+	private boolean receiving;
+	
+	/**
+	 * Number of requests received, and number of requests whose compilation isn't over.
+	 */
+	private int received, compiling;
+	
+	/**
+	 * The moment the request being received started, as given by {@link System#nanoTime()}.
+	 */
+	private long receiveStart = System.nanoTime();
+	
+	/**
+	 * {@code true} once the connection was lost or cut.
+	 */
+	private boolean failed;
+	
+	/**
+	 * Deadline of the request being received, or of the idle connection.
+	 */
+	private ScheduledFuture<?> deadline;
+	
+	/**
+	 * Deadline of the results which the client doesn't take, {@code null} when all of them are sent.
+	 */
+	private ScheduledFuture<?> sendDeadline;
+	
+	/**
+	 * Threads compiling the connection's requests.
+	 */
+	private final Set<Thread> workers = new HashSet<>();
+	
+	/**
+	 * Creates a connection, whose files are to be received.
+	 * 
+	 * @param loop the event loop handling the connection.
+	 * @param channel the client's channel.
+	 * @param key the key of the channel in the event loop's selector.
+	 */
+	Connection(EventLoop loop, SocketChannel channel, SelectionKey key){
+		
+		this.loop = loop;
+		this.channel = channel;
+		this.key = key;
+		
+		startPhase(OptionManager.getReceiveTimeout());
+	}
+	
+	/**
+	 * Reads and decodes the bytes sent by the client.
+	 * Each request whose files are all received is given to the compilation pool.
+	 * 
+	 * @param buf the buffer in which the bytes are read.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	void read(ByteBuffer buf) throws IOException{
+		
+		buf.clear();
+		
+		int n = channel.read(buf);
+		
+		if(n == -1){
+			
+			if(receiving){
+				
+				close();
+				return;
+			}
+			
+			//the client sends no more requests, but may wait for the results of the previous ones
+			state = State.DRAINING;
+			flush();
+			
+			return;
+		}
+		
+		buf.flip();
+		
+		if(!buf.hasRemaining())
+			return;
+		
+		Metrics.countReceived(n);
+		
+		if(protocol == null){
+			
+			protocol = Protocol.detect(buf.get(0));
+			protocol.setAdmission(() -> AccessControl.admit(channel.socket().getInetAddress()));
+		}
+		
+		try {
+			
+			while(state == State.OPEN && buf.hasRemaining()){
+				
+				if(!receiving){
+					
+					receiving = true;
+					
+					//the first request's deadline runs since the connection was accepted
+					if(received > 0){
+						
+						receiveStart = System.nanoTime();
+						startPhase(OptionManager.getReceiveTimeout());
+					}
+				}
+				
+				if(protocol.decode(buf))
+					submit();
+			}
+		}
+		
+		catch (BadRequestException e) {
+			
+			state = State.CLOSING;
+			Metrics.countOutcome(Outcome.REJECTED);
+		}
+		
+		ByteBuffer answers = protocol.takeAnswers();
+		
+		Metrics.countSent(answers.remaining());
+		output.add(answers);
+		
+		flush();
+	}
+	
+	/**
+	 * Sends the bytes waiting for the client, as far as the client takes them.
+	 * The connection is closed once the last answer is sent.
+	 * 
+	 * @throws IOException if an I/O error occurs.
+	 */
+	void flush() throws IOException{
+		
+		while(!output.isEmpty()){
+			
+			ByteBuffer b = output.peek();
+			channel.write(b);
+			
+			if(b.hasRemaining())
+				break;
+			
+			output.poll();
+		}
+		
+		boolean sent = output.isEmpty();
+		Response response;
+		
+		while(sent && state != State.CLOSING && (response = responses.peek()) != null){
+			
+			sent = response.writeTo(channel);
+			
+			if(sent){
+				
+				responses.poll();
+				response.close();
+				
+				Metrics.record(Phase.SEND, response.getEncodingTime());
+				Metrics.countSent(response.getSize());
+				Metrics.countOutcome(response.isSuccessful() ? Outcome.SUCCESS : Outcome.FAILURE);
+			}
+		}
+		
+		if(sent && (state == State.CLOSING || state == State.DRAINING && compiling == 0)){
+			
+			close();
+			return;
+		}
+		
+		waitForClient(!sent);
+		
+		if(sent && state == State.OPEN && !receiving && compiling == 0)
+			waitForRequest();
+		
+		int ops = sent ? 0 : SelectionKey.OP_WRITE;
+		
+		if(state == State.OPEN)
+			ops |= SelectionKey.OP_READ;
+		
+		key.interestOps(ops);
+	}
+	
+	/**
+	 * Sends the result of a compilation, once it is over.
+	 * 
+	 * @throws IOException if an I/O error occurs.
+	 */
+	void send() throws IOException{
+		
+		if(!key.isValid())
+			return;
+		
+		compiling--;
+		
+		flush();
+	}
+	
+	/**
+	 * Closes the connection.
+	 */
+	void close(){
+		
+		//the requests still being handled are lost
+		if(state != State.CLOSING && (receiving || compiling > 0 || !responses.isEmpty()))
+			fail();
+		
+		endPhase();
+		waitForClient(false);
+		
+		try {
+			
+			channel.close();
+			
+			for(Response response : responses)
+				response.close();
+		}
+		
+		catch (IOException e) {}
+	}
+	
+	/**
+	 * Gives the request whose files are received to the compilation pool.
+	 * A persistent connection then waits for the next request, while the others are done receiving.
+	 */
+	private void submit(){
+		
+		int requestId = protocol.getRequestId();
+		List<JavaSource> files = protocol.getFiles();
+		
+		Metrics.record(Phase.RECEIVE, receiveStart);
+		
+		long submitted = System.nanoTime();
+		Metrics.enqueue();
+		
+		ScheduledFuture<?> compileDeadline = Deadlines.schedule(this::expire, OptionManager.getCompileTimeout());
+		loop.submit(() -> compile(requestId, files, submitted, compileDeadline));
+		
+		received++;
+		compiling++;
+		receiving = false;
+		endPhase();
+		
+		if(protocol.isPersistent())
+			protocol.next();
+		
+		else
+			state = State.DRAINING;
+	}
+	
+	/**
+	 * Compiles the files of a request, then gives the result to the event loop. Run by a thread of the pool,
+	 * which also encodes the result so that its compression doesn't hold the event loop.
+	 * The event loop is told the compilation is over however it ends, an unexpected exception being answered as a failure.
+	 * 
+	 * @param requestId the ID of the request.
+	 * @param files the files of the request.
+	 * @param submitted the moment the request was given to the pool, as given by {@link System#nanoTime()}.
+	 * @param compileDeadline the deadline of the compilation.
+	 */
+	private void compile(int requestId, List<JavaSource> files, long submitted, ScheduledFuture<?> compileDeadline){
+		
+		Metrics.dequeue(submitted);
+		
+		synchronized(this){
+			
+			if(!channel.isOpen()){
+				
+				compileDeadline.cancel(false);
+				return;
+			}
+			
+			workers.add(Thread.currentThread());
+		}
+		
+		Workspace workspace = Workspaces.acquire();
+		
+		try {
+			
+			CompilationResult result = new Job(workspace.getPath(), files, channel.socket().getInetAddress()).run();
+			responses.add(protocol.encode(requestId, result));
+		}
+		
+		catch (InterruptedIOException e) {
+			//the connection was cut, the request is abandoned
+		}
+		
+		catch (RuntimeException e) {
+			
+			//the client gets the default error message instead of waiting for a result
+			e.printStackTrace();
+			responses.add(protocol.encode(requestId, new CompilationResult(false, new byte[0])));
+		}
+		
+		finally{
+			
+			synchronized(this){
+				workers.remove(Thread.currentThread());
+			}
+			
+			compileDeadline.cancel(false);
+			workspace.close();
+			
+			loop.compiled(this);
+		}
+	}
+	
+	private synchronized void startPhase(long delay){
+		
+		if(deadline != null)
+			deadline.cancel(false);
+		
+		deadline = Deadlines.schedule(this::expire, delay);
+	}
+	
+	/**
+	 * Gives the client a limited time to send its next request, once the others are answered.
+	 */
+	private synchronized void waitForRequest(){
+		
+		if(deadline != null)
+			deadline.cancel(false);
+		
+		deadline = Deadlines.schedule(this::cut, OptionManager.getIdleTimeout());
+	}
+	
+	private synchronized void endPhase(){
+		
+		if(deadline != null)
+			deadline.cancel(false);
+	}
+	
+	/**
+	 * Gives the client a limited time to take the results waiting for it.
+	 * 
+	 * @param waiting {@code true} if results are waiting for the client, {@code false} once all of them are sent.
+	 */
+	private synchronized void waitForClient(boolean waiting){
+		
+		if(waiting && sendDeadline == null)
+			sendDeadline = Deadlines.schedule(this::expire, OptionManager.getSendTimeout());
+		
+		else if(!waiting && sendDeadline != null){
+			
+			sendDeadline.cancel(false);
+			sendDeadline = null;
+		}
+	}
+	
+	/**
+	 * Counts the connection as lost, once.
+	 */
+	private synchronized void fail(){
+		
+		if(!failed)
+			Metrics.countOutcome(Outcome.ERROR);
+		
+		failed = true;
+	}
+	
+	/**
+	 * Cuts the connection with the client, whose requests are lost.
+	 */
+	private synchronized void expire(){
+		
+		fail();
+		cut();
+	}
+	
+	/**
+	 * Cuts the connection with the client, and interrupts its compilations if they are running.
+	 */
+	private synchronized void cut(){
+		
+		try {
+			channel.close();
+		}
+		
+		catch (IOException e) {}
+		
+		loop.wakeup();
+		
+		for(Thread worker : workers)
+			worker.interrupt();
+	}
+}
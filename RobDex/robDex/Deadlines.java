@@ -0,0 +1,50 @@
+package robDex;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is used to ensure requests finish in a timely manner.
+ * A single thread watches the deadlines of all the requests ; when a deadline expires, the action given with it is run,
+ * such as cutting the connection with the client.
+ */
+
+public class Deadlines {
+	
+	private static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+		
+		Thread t = new Thread(r, "deadlines");
+		t.setDaemon(true);
+		
+		return t;
+	});
+	
+	static{
+		//requests usually finish before their deadline, which must not stay in the timer's queue
+		timer.setRemoveOnCancelPolicy(true);
+	}
+	
+	private Deadlines(){}
+	
+	/**
+	 * Schedules an action to be run when a deadline expires.
+	 * 
+	 * @param action the action to be run.
+	 * @param delay the delay before the deadline expires, in seconds.
+	 * @return the deadline, to be cancelled if it is met.
+	 */
+	public static ScheduledFuture<?> schedule(Runnable action, long delay){
+		
+		return timer.schedule(action, delay, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * Runs a short task on the thread watching the deadlines, such as a cleanup which mustn't delay the threads serving the clients.
+	 * 
+	 * @param task the task to be run.
+	 */
+	public static void execute(Runnable task){
+		timer.execute(task);
+	}
+}
@@ -0,0 +1,165 @@
+package robDex;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+import robDex.access.AccessControl;
+
+/**
+ * This class is used to handle all the clients' connections on a single thread, without blocking on any of them.
+ * 
+ * The files sent by the clients are received as they arrive, and a request is only given to the compilation pool
+ * once all of its files are received. The result is then sent back by this thread as fast as the client takes it :
+ * slow clients never hold a thread of the pool. A client keeping its connection open may have several requests compiled at once.
+ */
+
+public class EventLoop {
+	
+	private static final int BUF_SIZE = 64 * 1024;
+	
+	private final Selector selector;
+	private final ServerSocketChannel server;
+	private final ExecutorService pool;
+	
+	/**
+	 * Buffer in which the bytes of every client are read, decoded at once.
+	 */
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUF_SIZE);
+	
+	/**
+	 * Connections whose compilation is over, to be answered by this thread.
+	 */
+	private final Queue<Connection> compiled = new ConcurrentLinkedQueue<>();
+	
+	/**
+	 * Creates an event loop listening on a port.
+	 * 
+	 * @param port the port on which the server listens.
+	 * @param pool the pool running the compilations.
+	 * @throws IOException if the server can't listen on the port.
+	 */
+	public EventLoop(int port, ExecutorService pool) throws IOException{
+		
+		this.pool = pool;
+		
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(port));
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+	}
+	
+	/**
+	 * Handles the connections, until the server stops.
+	 * 
+	 * @throws IOException if the server can't accept connections anymore.
+	 */
+	public void run() throws IOException{
+		
+		while(true){
+			
+			selector.select();
+			
+			Connection c;
+			
+			while((c = compiled.poll()) != null){
+				
+				try {
+					c.send();
+				}
+				
+				catch (IOException | CancelledKeyException e) {
+					c.close();
+				}
+			}
+			
+			Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+			
+			while(it.hasNext()){
+				
+				SelectionKey key = it.next();
+				it.remove();
+				
+				if(key.channel() == server)
+					accept();
+				
+				else
+					handle(key);
+			}
+		}
+	}
+	
+	/**
+	 * Gives a request, whose files are all received, to the compilation pool.
+	 * 
+	 * @param compilation the compilation of the request.
+	 */
+	void submit(Runnable compilation){
+		pool.submit(compilation);
+	}
+	
+	/**
+	 * Notifies this thread that the compilation of one of a connection's requests is over, so that its result is sent.
+	 * 
+	 * @param c the connection.
+	 */
+	void compiled(Connection c){
+		
+		compiled.add(c);
+		selector.wakeup();
+	}
+	
+	/**
+	 * Wakes this thread up, so that the channels closed by other threads are released.
+	 */
+	void wakeup(){
+		selector.wakeup();
+	}
+	
+	private void accept() throws IOException{
+		
+		SocketChannel client;
+		
+		while((client = server.accept()) != null){
+			
+			if(!AccessControl.isAllowed(((InetSocketAddress) client.getRemoteAddress()).getAddress())){
+				
+				client.close();
+				continue;
+			}
+			
+			client.configureBlocking(false);
+			
+			SelectionKey key = client.register(selector, SelectionKey.OP_READ);
+			key.attach(new Connection(this, client, key));
+		}
+	}
+	
+	private void handle(SelectionKey key){
+		
+		Connection c = (Connection) key.attachment();
+		
+		try {
+			
+			if(key.isReadable())
+				c.read(buffer);
+			
+			if(key.isValid() && key.isWritable())
+				c.flush();
+		}
+		
+		catch (IOException | CancelledKeyException e) {
+			c.close();
+		}
+	}
+}
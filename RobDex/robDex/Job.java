@@ -0,0 +1,170 @@
+package robDex;
+
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import robDex.cache.ResultCache;
+import robDex.exceptions.FailedCompilationException;
+import robDex.util.Compilation;
+import robDex.util.CompilationResult;
+import robDex.util.Compiler;
+import robDex.util.Diagnostic;
+import robDex.util.Diagnostic.Severity;
+import robDex.util.Diagnostic.Stage;
+import robDex.util.Diagnostics;
+import robDex.util.JavaSource;
+
+/**
+ * This class is used to compile the files received from a client, once they are all received.
+ * When the same files were already compiled, the result is taken from the cache instead.
+ * When the same files are being compiled for another request, the job waits for that compilation and shares its result,
+ * so that identical requests arriving at once are compiled only once.
+ */
+
+public class Job {
+	
+	/**
+	 * Compilations being run, by the key of their result. A compilation's future gives {@code null}
+	 * if its result can't be shared, the compilation having failed for reasons unrelated to the java files.
+	 */
+	private static final ConcurrentHashMap<String, CompletableFuture<CompilationResult>> running = new ConcurrentHashMap<>();
+	
+	private static final AtomicLong coalesced = new AtomicLong();
+	
+	private final String directory;
+	private final List<JavaSource> files;
+	private final InetAddress client;
+	
+	/**
+	 * Creates a job.
+	 * 
+	 * @param directory the directory in which the compilation's files are to be made.
+	 * @param files the files received from the client.
+	 * @param client the address of the client.
+	 */
+	public Job(String directory, List<JavaSource> files, InetAddress client){
+		
+		this.directory = directory;
+		this.files = files;
+		this.client = client;
+	}
+	
+	/**
+	 * Runs the job.
+	 * 
+	 * @return the result of the compilation.
+	 * @throws InterruptedIOException if the job is interrupted while waiting for an identical compilation, the request being abandoned.
+	 */
+	public CompilationResult run() throws InterruptedIOException{
+		
+		Recorder.record(files);
+		
+		String key = ResultCache.key(files);
+		
+		while(true){
+			
+			CompilationResult result = ResultCache.get(key);
+			
+			if(result != null)
+				return result;
+			
+			CompletableFuture<CompilationResult> compilation = new CompletableFuture<>();
+			CompletableFuture<CompilationResult> other = running.putIfAbsent(key, compilation);
+			
+			if(other == null)
+				return compile(key, compilation);
+			
+			coalesced.incrementAndGet();
+			
+			try {
+				
+				result = other.get();
+				
+				if(result != null)
+					return result;
+			}
+			
+			catch (InterruptedException e) {
+				
+				//the request's deadline expired : there is no result to send
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for an identical compilation.");
+			}
+			
+			catch (ExecutionException e) {}
+			
+			//the other compilation's result can't be shared : the files are compiled again
+		}
+	}
+	
+	/**
+	 * Returns the number of requests which waited for the compilation of identical files instead of compiling them.
+	 * 
+	 * @return the number of requests.
+	 */
+	public static long getCoalesced(){
+		return coalesced.get();
+	}
+	
+	/**
+	 * Compiles the received files and keeps the result in the cache, then gives it to the jobs waiting for it.
+	 * Only the failures due to errors in the java files are kept and shared : the others, such as I/O errors or a tool killed
+	 * for lack of memory, may not happen again.
+	 * 
+	 * @param key the key identifying the result in the cache.
+	 * @param compilation the future given to the waiting jobs.
+	 * @return the result of the compilation.
+	 */
+	private CompilationResult compile(String key, CompletableFuture<CompilationResult> compilation){
+		
+		Compilation c = new Compilation(directory, files, client);
+		CompilationResult result, shared = null;
+		
+		try {
+			
+			Compiler.compile(c);
+			
+			result = new CompilationResult(true, c.getDex());
+			ResultCache.put(key, result);
+			shared = result;
+			
+		} catch (FailedCompilationException e) {
+			
+			result = new CompilationResult(false, Diagnostics.encode(c.getDiagnostics()));
+			
+			if(e.getCause() == null && hasJavacErrors(c)){
+				
+				ResultCache.put(key, result);
+				shared = result;
+			}
+		}
+		
+		finally{
+			
+			running.remove(key, compilation);
+			compilation.complete(shared);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Tells whether javac reported errors in the java files of a compilation, in which case identical files always fail the same way.
+	 * 
+	 * @param c the failed compilation.
+	 * @return {@code true} if javac reported errors, {@code false} if the compilation failed in another way.
+	 */
+	private static boolean hasJavacErrors(Compilation c){
+		
+		for(Diagnostic d : c.getDiagnostics())
+			if(d.getStage() == Stage.JAVAC && d.getSeverity() == Severity.ERROR)
+				return true;
+		
+		return false;
+	}
+}
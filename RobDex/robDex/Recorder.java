@@ -0,0 +1,317 @@
+package robDex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import robDex.util.JavaSource;
+import robDex.util.option.OptionManager;
+
+/**
+ * <p>
+ * This class is used to record the files sent by the clients, so that real traffic can be replayed against a server
+ * by the load generator ({@code robDex.tools.LoadGenerator}).
+ * </p>
+ * <p>
+ * The files are redacted before being recorded : their comments are removed, and the contents of their string and character literals,
+ * such as addresses, keys or people's names, are replaced by placeholders, the same literal getting the same placeholder within a request.
+ * The rest of the code is kept, so that the files are compiled as they were : the names of the files, of the packages, classes, methods and
+ * variables, stay as the clients sent them. The addresses of the clients aren't recorded. The recording file starts with {@code RDXR} and its version {@code 1} (1 byte),
+ * then holds each request in turn : the time it was received, in milliseconds since the recording started (8 bytes),
+ * the number of files (4 bytes), then for each file the length of its name (2 bytes), its name in UTF-8, the size of its content (4 bytes) and its content.
+ * </p>
+ */
+
+public class Recorder {
+	
+	private static final byte[] MAGIC = {'R', 'D', 'X', 'R'};
+	private static final byte VERSION = 1;
+	
+	private static FileChannel file;
+	private static long start;
+	
+	// Suppresses default constructor, ensuring non-instantiability.
+	private Recorder(){}
+	
+	/**
+	 * Starts recording, if a recording file is given by the program's options. Requests are appended to an existing recording.
+	 * 
+	 * @throws IOException if the recording file can't be opened.
+	 */
+	public static synchronized void init() throws IOException{
+		
+		if(OptionManager.getRecord().isEmpty())
+			return;
+		
+		Path path = Paths.get(OptionManager.getRecord());
+		boolean exists = Files.exists(path) && Files.size(path) > 0;
+		
+		file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		start = System.currentTimeMillis();
+		
+		if(!exists)
+			file.write(ByteBuffer.wrap(new byte[]{MAGIC[0], MAGIC[1], MAGIC[2], MAGIC[3], VERSION}));
+	}
+	
+	/**
+	 * Records the files of a request. Recording errors are ignored : the request is handled anyway.
+	 * 
+	 * @param files the files received from the client.
+	 */
+	public static void record(List<JavaSource> files){
+		
+		if(file == null)
+			return;
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteBuffer b = ByteBuffer.allocate(12);
+		
+		b.putLong(System.currentTimeMillis() - start).putInt(files.size());
+		out.write(b.array(), 0, b.position());
+		
+		Map<String, String> placeholders = new HashMap<>();
+		
+		for(JavaSource f : files){
+			
+			byte[] name = f.getName().getBytes(StandardCharsets.UTF_8);
+			byte[] content = redact(f.getContent(), placeholders);
+			
+			b.clear();
+			b.putShort((short) name.length);
+			out.write(b.array(), 0, b.position());
+			out.write(name, 0, name.length);
+			
+			b.clear();
+			b.putInt(content.length);
+			out.write(b.array(), 0, b.position());
+			out.write(content, 0, content.length);
+		}
+		
+		ByteBuffer record = ByteBuffer.wrap(out.toByteArray());
+		
+		synchronized(Recorder.class){
+			
+			try {
+				
+				while(record.hasRemaining())
+					file.write(record);
+			}
+			
+			catch (IOException e) {}
+		}
+	}
+	
+	/**
+	 * A recorded request.
+	 */
+	public static class Recording{
+		
+		private final long time;
+		private final List<JavaSource> files;
+		
+		Recording(long time, List<JavaSource> files){
+			
+			this.time = time;
+			this.files = files;
+		}
+		
+		/**
+		 * Returns the time the request was received.
+		 * 
+		 * @return the time, in milliseconds since the recording started.
+		 */
+		public long getTime(){
+			return time;
+		}
+		
+		public List<JavaSource> getFiles(){
+			return files;
+		}
+	}
+	
+	/**
+	 * Reads the requests of a recording file.
+	 * 
+	 * @param in the content of the recording file.
+	 * @return the requests, in the order they were recorded.
+	 * @throws IOException if the file can't be read, or isn't a recording.
+	 */
+	public static List<Recording> read(InputStream in) throws IOException{
+		
+		DataInputStream data = new DataInputStream(in);
+		byte[] header = new byte[MAGIC.length + 1];
+		
+		data.readFully(header);
+		
+		if(header[0] != MAGIC[0] || header[1] != MAGIC[1] || header[2] != MAGIC[2] || header[3] != MAGIC[3] || header[4] != VERSION)
+			throw new IOException("Not a recording of requests.");
+		
+		List<Recording> recordings = new ArrayList<>();
+		
+		while(true){
+			
+			long time;
+			
+			try {
+				time = data.readLong();
+			}
+			
+			catch (EOFException e) {
+				break;
+			}
+			
+			int count = data.readInt();
+			List<JavaSource> files = new ArrayList<>(count);
+			
+			for(int i = 0; i < count; i++){
+				
+				byte[] name = new byte[data.readUnsignedShort()];
+				data.readFully(name);
+				
+				byte[] content = new byte[data.readInt()];
+				data.readFully(content);
+				
+				files.add(new JavaSource(new String(name, StandardCharsets.UTF_8), content));
+			}
+			
+			recordings.add(new Recording(time, Collections.unmodifiableList(files)));
+		}
+		
+		return recordings;
+	}
+	
+	/**
+	 * Removes the comments of a java file, and replaces the contents of its literals, which may hold names or other personal details.
+	 * Each comment is replaced by a space, its line breaks being kept so that the errors still point to the same lines.
+	 * Each distinct literal is replaced by a distinct placeholder, so that constants which differed, such as the labels of a switch, still do :
+	 * string literals keep their length where the placeholder fits in it, character literals are replaced by a letter, then by unicode escapes.
+	 * The bytes are scanned as they are, the delimiters being the same in every charset a java file may be written in.
+	 * 
+	 * @param content the content of the java file.
+	 * @param placeholders the placeholders given to the literals of the request so far, by delimiter and content.
+	 * @return the content without comments nor the literals' contents.
+	 */
+	static byte[] redact(byte[] content, Map<String, String> placeholders){
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream(content.length);
+		int i = 0, n = content.length;
+		
+		while(i < n){
+			
+			byte c = content[i];
+			byte next = i + 1 < n ? content[i + 1] : 0;
+			
+			if(c == '"' || c == '\''){
+				
+				//the literal ends at its closing quote, escaped quotes aside
+				int end = i + 1;
+				
+				while(end < n && content[end] != c && content[end] != '\n'){
+					
+					if(content[end] == '\\')
+						end++;
+					
+					end++;
+				}
+				
+				end = Math.min(end, n);
+				
+				String literal = (char) c + new String(content, i + 1, end - i - 1, StandardCharsets.ISO_8859_1);
+				String placeholder = placeholders.get(literal);
+				
+				if(placeholder == null){
+					
+					placeholder = placeholder(c, end - i - 1, placeholders.size());
+					placeholders.put(literal, placeholder);
+				}
+				
+				out.write(c);
+				out.write(placeholder.getBytes(StandardCharsets.US_ASCII), 0, placeholder.length());
+				i = end;
+				
+				if(i < n && content[i] == c){
+					
+					out.write(c);
+					i++;
+				}
+			}
+			
+			else if(c == '/' && next == '/'){
+				
+				while(i < n && content[i] != '\n' && content[i] != '\r')
+					i++;
+				
+				out.write(' ');
+			}
+			
+			else if(c == '/' && next == '*'){
+				
+				i += 2;
+				
+				while(i < n && !(content[i] == '*' && i + 1 < n && content[i + 1] == '/')){
+					
+					if(content[i] == '\n')
+						out.write('\n');
+					
+					i++;
+				}
+				
+				i = Math.min(i + 2, n);
+				out.write(' ');
+			}
+			
+			else{
+				
+				out.write(c);
+				i++;
+			}
+		}
+		
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Makes the placeholder of a literal, distinct from those of the other literals.
+	 * 
+	 * @param quote the delimiter of the literal.
+	 * @param length the length of the literal's content, in bytes.
+	 * @param index the number of literals which already have a placeholder.
+	 * @return the placeholder, in ASCII.
+	 */
+	private static String placeholder(byte quote, int length, int index){
+		
+		if(length == 0)
+			return "";
+		
+		if(quote == '\''){
+			
+			//beyond the letters, unicode escapes from U+4E00 on, far from the line breaks and quotes which would end the literal
+			return index < 26 ? String.valueOf((char) ('a' + index)) : String.format("\\u%04x", 0x4E00 + index);
+		}
+		
+		//the index in base 26, padded with underscores, which aren't among its digits
+		StringBuilder sb = new StringBuilder();
+		
+		for(int k = index + 1; k > 0; k = (k - 1) / 26)
+			sb.append((char) ('a' + (k - 1) % 26));
+		
+		while(sb.length() < length)
+			sb.append('_');
+		
+		return sb.toString();
+	}
+}
@@ -1,21 +1,29 @@
 package robDex;
 
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.net.Socket;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
 
+import robDex.access.AccessControl;
 import robDex.exceptions.BadRequestException;
-import robDex.exceptions.FailedCompilationException;
-import robDex.util.Compiler;
-import robDex.util.Util;
+import robDex.metrics.Metrics;
+import robDex.metrics.Metrics.Outcome;
+import robDex.metrics.Metrics.Phase;
+import robDex.protocol.Protocol;
+import robDex.protocol.Response;
+import robDex.util.CompilationResult;
 import robDex.util.option.OptionManager;
+import robDex.workspace.Workspace;
+import robDex.workspace.Workspaces;
 
 /**
  * <p>
  * This class is used to receive the client's java sources, compile them into a .dx file, then send it back to them.
+ * A thread is blocked on the client's socket for the whole request ; the {@link EventLoop} handles clients without blocking.
  * </p>
  * <p>
  * During the transfer, the server will check at mutiple times if the request is appropriate.<br />
@@ -35,6 +43,11 @@ import robDex.util.option.OptionManager;
  * All answers given by the server end with a line feed.
  * </p>
  * <p>
+ * This text protocol is kept for the existing clients. Clients may instead speak the binary protocol described in {@link robDex.protocol.BinaryProtocol},
+ * which needs a single answer from the server before the files' contents, and may carry several requests on the same connection.
+ * Such requests are handled here one after the other ; the {@link EventLoop} compiles them at once.
+ * </p>
+ * <p>
  * The operations are as follows :<br />
  * <ol>
  * <li>A handshaking sets place to ensure trust with the client.</li>
@@ -43,9 +56,10 @@ import robDex.util.option.OptionManager;
  * <li>Files are then received ; each file is read this way :
  * 		<ol>
  * 		<li>The name of the file is received.</li>
- * 		<li>The size of the file is received.</li>
+ * 		<li>The size of the file is received, in bytes. It may be followed by a space and the CRC-32 of the content, in hexadecimal.</li>
  * 		<li>An answer is given to the client based on the validity of the file.</li>
- * 		<li>The content of the file is received.</li>
+ * 		<li>The content of the file is received. If it doesn't match its checksum, the server answers as if the compilation had failed,
+ * 		and closes the connection.</li>
  * 		</ol></li>
  * <li>The received files are compiled.</li>
  * <li>The server will send an answer to the client, specifying if the compilation was successful.</li>
@@ -58,65 +72,107 @@ import robDex.util.option.OptionManager;
  * 
  */
 
-public class Request extends Thread{
+public class Request implements Runnable{
+	
+	private static final int BUF_SIZE = 64 * 1024;
+	
+	/**
+	 * Buffers in which the bytes sent by the clients are read, reused from a request to the next.
+	 */
+	private static final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
 	
-	private static final int BUF_SIZE = 4096, ERROR_TAG = -1, SUCCESS_TAG = 0, MAX_FILES = 100;
-	private static final String OUTPUT_FILE = "out.dex", ERROR_FILE = "error.log";
-	private static final String ERROR_MSG = "An error unrelated to the java compilation occured.";
-	private String directory;
 	protected final Socket client;
-	private ArrayList<File> files;
+	
+	/**
+	 * The moment the connection was accepted, as given by {@link System#nanoTime()}.
+	 */
+	private final long accepted = System.nanoTime();
+	
+	/**
+	 * Buffer holding the bytes received from the client, which may already hold the start of the next request.
+	 */
+	private ByteBuffer buf;
+	
+	/**
+	 * Deadline of the current phase (receiving, compiling or sending).
+	 */
+	private ScheduledFuture<?> deadline;
+	
+	/**
+	 * Thread running the request, {@code null} once the request is over.
+	 */
+	private Thread worker;
 	
 	/**
 	 * Creates a request for the socket in parameter.
 	 * 
-	 * @param client The client's socket.
+	 * @param client The client's socket, accepted by a {@link java.nio.channels.ServerSocketChannel} so that it has a channel.
 	 */
 	public Request(Socket client){
 		
 		this.client = client;
-		this.directory = OptionManager.getDir() + File.separator + Util.getclientIdentifier(client);		
+		
+		Metrics.enqueue();
 	}
 	
 	@Override
 	public void run(){
 		
-		DataBufferedReader in = null;
-		DataPrintWriter out = null;
+		synchronized(this){
+			worker = Thread.currentThread();
+		}
+		
+		Metrics.dequeue(accepted);
 		
 		try {
 			
-			in = new DataBufferedReader(client.getInputStream());
-			out = new DataPrintWriter(client.getOutputStream());
+			startPhase(OptionManager.getReceiveTimeout());
+			
+			SocketChannel channel = client.getChannel();
 			
 			if(handshaking()){
 				
-				receiveFiles(in, out);
-								
-				try {
+				Protocol protocol = receiveFiles(channel, null);
+				
+				//the requests of a persistent connection are handled one after the other, until the client closes it
+				while(protocol != null){
+					
+					startPhase(OptionManager.getCompileTimeout());
+					
+					CompilationResult result;
+					
+					try(Workspace workspace = Workspaces.acquire()){
+						result = new Job(workspace.getPath(), protocol.getFiles(), client.getInetAddress()).run();
+					}
 					
-					//Compiler.compile(directory, files);
-					Compiler.compile(directory, files);
-					sendDexFile(out);
-				} catch (FailedCompilationException e) {
-					//e.printStackTrace();
-					sendErrorFile(out);
-				}	
+					startPhase(OptionManager.getSendTimeout());
+					
+					Response response = protocol.encode(protocol.getRequestId(), result);
+					response.sendTo(channel);
+					
+					Metrics.record(Phase.SEND, response.getEncodingTime());
+					Metrics.countSent(response.getSize());
+					Metrics.countOutcome(result.isSuccessful() ? Outcome.SUCCESS : Outcome.FAILURE);
+					
+					protocol = waitForNext(protocol) ? receiveFiles(channel, protocol) : null;
+				}
 			}
 		} catch (IOException e) {
+			Metrics.countOutcome(Outcome.ERROR);
 			//TODO printstacktrace on verbose
 		} catch (BadRequestException e) {
+			Metrics.countOutcome(Outcome.REJECTED);
 			//TODO printstacktrace on verbose
 		}
 		
 		finally{
 			
+			endPhases();
+			releaseBuffer();
+			
 			try {
 				
-				in.close();
-				out.close();
 				client.close();
-				Util.deleteDir(new File(directory));
 			} 
 			
 			catch (IOException e) {
@@ -129,6 +185,46 @@ public class Request extends Thread{
 		}
 	}
 	
+	/**
+	 * Starts a phase of the request, which must end before {@code delay}.
+	 * If it doesn't, the connection with the client is cut and the thread running the request is interrupted.
+	 * 
+	 * @param delay the delay before the phase's deadline, in seconds.
+	 */
+	private synchronized void startPhase(long delay){
+		
+		if(deadline != null)
+			deadline.cancel(false);
+		
+		deadline = Deadlines.schedule(this::expire, delay);
+	}
+	
+	/**
+	 * Ends the last phase of the request.
+	 */
+	private synchronized void endPhases(){
+		
+		if(deadline != null)
+			deadline.cancel(false);
+		
+		worker = null;
+	}
+	
+	/**
+	 * Cuts the connection with the client, and interrupts the thread running the request if it isn't over.
+	 */
+	private synchronized void expire(){
+		
+		try {
+			closeConnection();
+		}
+		
+		catch (IOException e) {}
+		
+		if(worker != null)
+			worker.interrupt();
+	}
+	
 	/**
 	 * Close the connection with the client.
 	 * 
@@ -150,137 +246,129 @@ public class Request extends Thread{
 	}
 	
 	/**
-	 * Receives files from client.
+	 * Waits for the next request of a persistent connection, for at most the idle timeout.
 	 * 
-	 * @param in socket's input stream
-	 * @param out socket's output stream
-	 * @throws IOException if an IO issue appears.
-	 * @throws BadRequestException if the client's request is invalid.
-	 */
-	private void receiveFiles(DataBufferedReader in, PrintWriter out) throws IOException, BadRequestException{
-				
-    	int filesCount;
-    	
-    	filesCount = in.readInt();
-    	
-    	try{
-    		
-	    	if(filesCount > MAX_FILES)
-	    		throw new BadRequestException();
-			 
-	    	out.println(SUCCESS_TAG);
-	    	out.flush();
-	    	
-			files = new ArrayList<File>(filesCount);
-	        
-	        int n = 0;
-	        char[] buf = new char[BUF_SIZE];
-	        
-	        //creates repertories to store client files
-	        new File(directory).mkdirs();
-	
-	        for(int i = 0; i < filesCount; i++){
-	                    	
-	            String fileName = Util.filterFileName(in.readLine());
-	                        
-	            long fileSize = in.readLong();
-	            	            	
-            	if(!Util.isValid(fileName, fileSize))
-            		throw new BadRequestException();
-            	
-            	out.println(SUCCESS_TAG);
-            	out.flush();
-
-            	File file = new File(directory + File.separator + fileName);
-                
-                files.add(file);
-                
-                PrintWriter pw = new PrintWriter(file);
-                
-                String s;
-                                                
-                while (fileSize > 0 && (n = in.read(buf)) != -1){
-                	
-                	s = new String(buf, 0, n);
-                	pw.print(s);
-                	
-                	fileSize -= n;
-                }
-                
-                pw.close();    
-	                      
-	        }
-	        
-    	} catch (BadRequestException e){
-    		
-    		out.println(ERROR_TAG);
-        	out.flush();
-        	throw e;
-    	}
-	}
-	
-	/**
-	 * Sends the Dex file to the client. It only happens if it was successfully made.
-	 * 
-	 * @param out the socket's output stream
-	 * @throws IOException if an IO issue appears
+	 * @param protocol the protocol spoken by the client.
+	 * @return {@code true} if the connection is persistent, {@code false} if it must be closed.
 	 */
-	
-	public void sendDexFile(DataPrintWriter out) throws IOException{
+	private boolean waitForNext(Protocol protocol){
 		
-		out.println(SUCCESS_TAG);
-		sendFile(out, new File(directory + File.separator + OUTPUT_FILE));
+		if(!protocol.isPersistent())
+			return false;
+		
+		protocol.next();
+		startPhase(OptionManager.getIdleTimeout());
+		
+		return true;
 	}
 	
 	/**
-	 * Sends the error file to the client. If the error log file is empty, a default message will be sent.
+	 * Receives the files of a request. The files are kept in memory by the protocol, chosen from the first byte sent by the client.
+	 * The bytes are read into a reused buffer, and copied once, as they are, into the files' contents.
 	 * 
-	 * @param out the socket's output stream
-	 * @throws IOException if an IO issue appears
+	 * @param channel socket's channel
+	 * @param protocol the protocol spoken by the client, {@code null} for the first request.
+	 * @return the protocol spoken by the client, holding the files ; {@code null} if the client closed its persistent connection between two requests.
+	 * @throws IOException if an IO issue appears, or if the client closed the connection during the request.
+	 * @throws BadRequestException if the client's request is invalid.
 	 */
-	private void sendErrorFile(DataPrintWriter out) throws IOException{
+	private Protocol receiveFiles(SocketChannel channel, Protocol protocol) throws IOException, BadRequestException{
 		
-		out.println(ERROR_TAG);
+		if(buf == null){
+			
+			buf = buffers.poll();
+			
+			if(buf == null)
+				buf = ByteBuffer.allocateDirect(BUF_SIZE);
+			
+			buf.limit(0);
+		}
 		
-		File f = new File(directory + File.separator + ERROR_FILE);
+		boolean received = false;
 		
-		if(f.exists() && f.length() > 0)
-			sendFile(out, f);
+		//the first request's deadline runs since the connection was accepted, the next ones' since they start
+		boolean next = protocol != null;
+		long start = System.nanoTime();
 		
-		else{
+		while(!received){
 			
-			out.println(ERROR_MSG.length());
-			out.flush();
-			out.println(ERROR_MSG);
-			out.flush();
+			if(!buf.hasRemaining()){
+				
+				buf.clear();
+				
+				int n;
+				
+				try {
+					n = channel.read(buf);
+				}
+				
+				catch (IOException e) {
+					
+					//between two requests, the connection may be cut for being idle
+					if(next)
+						return null;
+					
+					throw e;
+				}
+				
+				if(n == -1 && next)
+					return null;
+				
+				if(n == -1)
+					throw new EOFException();
+				
+				Metrics.countReceived(n);
+				buf.flip();
+			}
+			
+			if(protocol == null){
+				
+				protocol = Protocol.detect(buf.get(0));
+				protocol.setAdmission(() -> AccessControl.admit(client.getInetAddress()));
+			}
+			
+			if(next){
+				
+				next = false;
+				start = System.nanoTime();
+				startPhase(OptionManager.getReceiveTimeout());
+			}
+			
+			try {
+				received = protocol.decode(buf);
+			}
+			
+			finally{
+				send(channel, protocol.takeAnswers());
+			}
 		}
+		
+		Metrics.record(Phase.RECEIVE, start);
+		
+		return protocol;
 	}
 	
 	/**
-	 * Send the content of a file to the client
+	 * Gives the buffer back, for the next requests.
+	 */
+	private void releaseBuffer(){
+		
+		if(buf != null)
+			buffers.add(buf);
+	}
+	
+	/**
+	 * Sends answers to the client.
 	 * 
-	 * @param out the socket's output stream
-	 * @param f the file to be sent
+	 * @param out the socket's channel
+	 * @param answers the answers to be sent
 	 * @throws IOException if an IO issue appears
 	 */
-	
-	private void sendFile(DataPrintWriter out, File f) throws IOException{
+	private void send(SocketChannel out, ByteBuffer answers) throws IOException{
 		
-		FileInputStream fis = new FileInputStream(f);
-
-        //sends file size
-        out.println(f.length());
-        out.flush();
-        
-        byte[] buf = new byte[BUF_SIZE];
-        int n;
-
-        while((n = fis.read(buf)) != -1){
-        	
-            out.write(buf, 0, n);
-            out.flush();
-        }
-        
-        fis.close();
+		Metrics.countSent(answers.remaining());
+		
+		while(answers.hasRemaining())
+			out.write(answers);
 	}
 }
@@ -1,13 +1,19 @@
 package robDex;
 
 import java.io.IOException;
-import java.net.InetAddress;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import robDex.access.AccessControl;
+import robDex.cache.ResultCache;
+import robDex.metrics.Metrics;
+import robDex.util.Compiler;
 import robDex.util.option.OptionManager;
+import robDex.worker.WorkerPool;
+import robDex.workspace.Workspaces;
 
 /**
  * This class is used to launch the server.
@@ -21,18 +27,38 @@ import robDex.util.option.OptionManager;
 public class Server {
 	
 	/**
-	 * Number of simultaneous threads.
+	 * Number of simultaneous threads, when requests are run by platform threads.
 	 */
 	public static int poolSize = 50;
+	
+	/**
+	 * Creates an executor running each request in its own virtual thread.
+	 * Virtual threads appeared in java 21, while the server is built for java 8 : the executor is created by reflection.
+	 * 
+	 * @return the executor.
+	 * @throws ReflectiveOperationException if the JVM doesn't support virtual threads.
+	 */
+	private static ExecutorService newVirtualThreadExecutor() throws ReflectiveOperationException{
+		
+		return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+	}
 
 	public static void main(String[] args){
 		
-		ServerSocket serverSocket = null;
-		ExecutorService pool = Executors.newFixedThreadPool(poolSize); 
+		ServerSocketChannel serverSocket = null;
+		ExecutorService pool = null;
 		
 		try{
 			OptionManager.init(args);
+			ResultCache.init();
+			Compiler.init();
+			AccessControl.init();
+			Workspaces.init();
+			WorkerPool.init();
+			Metrics.init();
+			Recorder.init();
 			
+			pool = OptionManager.useVirtualThreads() ? newVirtualThreadExecutor() : Executors.newFixedThreadPool(poolSize);
 		}
 
 		catch(Exception e){
@@ -42,24 +68,44 @@ public class Server {
 		}
 		
 		int port = OptionManager.getPort();
-		InetAddress acceptedHost = OptionManager.getHost();
 		
 		try {
-            serverSocket = new ServerSocket(port);
+			
+			if(OptionManager.useEventLoop()){
+				
+				EventLoop loop = new EventLoop(port, pool);
+				
+				System.out.println("Server launched on port " + port + ". Waiting for connections.\n");
+				
+				loop.run();
+			}
+			
+            serverSocket = ServerSocketChannel.open();
+            serverSocket.bind(new InetSocketAddress(port));
             Socket client = null;
     		
             System.out.println("Server launched on port " + port + ". Waiting for connections.\n");
             
     		while(true){
 
-    			client = serverSocket.accept();
+    			client = serverSocket.accept().socket();
+    			
+    			if(client == null || client.isClosed())
+    				continue;
     			
-    			if(client == null || client.isClosed() || !client.getInetAddress().equals(acceptedHost)){
+    			if(!AccessControl.isAllowed(client.getInetAddress())){
+    				
+    				try {
+    					client.close();
+    				}
+    				
+    				catch (IOException e) {}
+    				
     				client = null;
     				continue;
     			}
     			
-    			pool.submit(new TimedRequest(client));
+    			pool.submit(new Request(client));
     		}
         } 
 		
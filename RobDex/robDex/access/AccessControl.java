@@ -0,0 +1,150 @@
+package robDex.access;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import robDex.Deadlines;
+import robDex.util.option.OptionManager;
+
+/**
+ * This class decides which clients are served, and how often.
+ * 
+ * Connections are only accepted from the blocks of addresses given by {@code --allow}, or from {@code --host} alone if no block is given.
+ * Each client address may then send {@code --rateLimit} requests per minute, in bursts of at most {@code --rateBurst} requests :
+ * the requests exceeding the limit are rejected. The weight of a client, given by its block, sets its share of the compilations
+ * when several clients wait for them (see {@link robDex.util.Compiler}).
+ */
+
+public class AccessControl {
+	
+	/**
+	 * Number of buckets from which the full ones, belonging to the clients which stopped sending requests, are forgotten.
+	 */
+	private static final int MAX_BUCKETS = 4096;
+	
+	private static List<Subnet> allowed;
+	private static int rateLimit, rateBurst;
+	
+	/**
+	 * Token buckets of the clients, by address.
+	 */
+	private static final ConcurrentHashMap<InetAddress, TokenBucket> buckets = new ConcurrentHashMap<>();
+	
+	/**
+	 * Number of buckets from which the next sweep is run : twice the buckets left by the last sweep, so that the buckets still in use
+	 * aren't walked through again on every request.
+	 */
+	private static volatile int sweepThreshold = MAX_BUCKETS;
+	private static final AtomicBoolean sweeping = new AtomicBoolean();
+	
+	private static final AtomicLong denied = new AtomicLong(), limited = new AtomicLong();
+	
+	// Suppresses default constructor, ensuring non-instantiability.
+	private AccessControl(){}
+	
+	/**
+	 * Initializes the access control, according to the program's options.
+	 */
+	public static void init(){
+		
+		allowed = OptionManager.getAllowed();
+		rateLimit = OptionManager.getRateLimit();
+		rateBurst = OptionManager.getRateBurst();
+	}
+	
+	/**
+	 * Tells whether connections are accepted from an address.
+	 * 
+	 * @param client the address of the client.
+	 * @return {@code true} if the address belongs to an allowed block, {@code false} otherwise.
+	 */
+	public static boolean isAllowed(InetAddress client){
+		
+		if(find(client) != null)
+			return true;
+		
+		denied.incrementAndGet();
+		return false;
+	}
+	
+	/**
+	 * Takes a token from a client's bucket, for its next request.
+	 * 
+	 * @param client the address of the client.
+	 * @return {@code true} if the request may be served, {@code false} if the client exceeded its rate.
+	 */
+	public static boolean admit(InetAddress client){
+		
+		if(rateLimit == 0)
+			return true;
+		
+		//the full buckets are forgotten by the deadlines' thread, rather than by the thread serving the clients
+		if(buckets.size() > sweepThreshold && sweeping.compareAndSet(false, true))
+			Deadlines.execute(AccessControl::sweep);
+		
+		if(buckets.computeIfAbsent(client, c -> new TokenBucket(rateBurst, rateLimit)).tryTake())
+			return true;
+		
+		limited.incrementAndGet();
+		return false;
+	}
+	
+	/**
+	 * Returns the weight of a client, given by the first block it belongs to.
+	 * 
+	 * @param client the address of the client, {@code null} for the compilations run by the server itself.
+	 * @return the weight.
+	 */
+	public static int getWeight(InetAddress client){
+		
+		Subnet s = client == null ? null : find(client);
+		
+		return s == null ? 1 : s.getWeight();
+	}
+	
+	/**
+	 * Returns the number of connections refused, their address being outside of the allowed blocks.
+	 * 
+	 * @return the number of connections.
+	 */
+	public static long getDenied(){
+		return denied.get();
+	}
+	
+	/**
+	 * Returns the number of requests rejected for exceeding their client's rate.
+	 * 
+	 * @return the number of requests.
+	 */
+	public static long getLimited(){
+		return limited.get();
+	}
+	
+	/**
+	 * Forgets the full buckets, belonging to the clients which stopped sending requests.
+	 */
+	private static void sweep(){
+		
+		try {
+			
+			buckets.values().removeIf(TokenBucket::isFull);
+			sweepThreshold = Math.max(MAX_BUCKETS, 2 * buckets.size());
+		}
+		
+		finally{
+			sweeping.set(false);
+		}
+	}
+	
+	private static Subnet find(InetAddress client){
+		
+		for(Subnet s : allowed)
+			if(s.contains(client))
+				return s;
+		
+		return null;
+	}
+}
@@ -0,0 +1,106 @@
+package robDex.access;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * A block of addresses in the CIDR notation, such as {@code 192.168.1.0/24}, from which clients are accepted.
+ * The clients of a block are given a weight, their share of the compilations when several clients wait for them.
+ */
+
+public class Subnet {
+	
+	private final byte[] address;
+	private final int prefix;
+	private final int weight;
+	
+	/**
+	 * Creates a block of addresses.
+	 * 
+	 * @param address an address of the block.
+	 * @param prefix the number of leading bits shared by the addresses of the block.
+	 * @param weight the weight of the block's clients.
+	 */
+	public Subnet(InetAddress address, int prefix, int weight){
+		
+		this.address = address.getAddress();
+		this.prefix = prefix;
+		this.weight = weight;
+		
+		if(prefix < 0 || prefix > this.address.length * 8)
+			throw new IllegalArgumentException("Invalid prefix length: " + prefix);
+		
+		if(weight < 1)
+			throw new IllegalArgumentException("Invalid weight: " + weight);
+	}
+	
+	/**
+	 * Parses a block of addresses : an address, optionally followed by {@code /} and the length of the prefix,
+	 * then optionally by {@code =} and the weight of its clients. A single address is a block of its own, whose clients weigh {@code 1} by default.
+	 * 
+	 * @param s the block, such as {@code 10.0.0.0/8=2}.
+	 * @return the block.
+	 * @throws UnknownHostException if the address is invalid.
+	 * @throws IllegalArgumentException if the prefix length or the weight is invalid.
+	 */
+	public static Subnet parse(String s) throws UnknownHostException{
+		
+		int weight = 1;
+		int equals = s.indexOf('=');
+		
+		if(equals >= 0){
+			
+			weight = Integer.parseInt(s.substring(equals + 1).trim());
+			s = s.substring(0, equals);
+		}
+		
+		int slash = s.indexOf('/');
+		InetAddress address = InetAddress.getByName((slash < 0 ? s : s.substring(0, slash)).trim());
+		int prefix = slash < 0 ? address.getAddress().length * 8 : Integer.parseInt(s.substring(slash + 1).trim());
+		
+		return new Subnet(address, prefix, weight);
+	}
+	
+	/**
+	 * Tells whether an address belongs to the block. IPv4 addresses don't belong to IPv6 blocks, and conversely.
+	 * 
+	 * @param a the address.
+	 * @return {@code true} if the address belongs to the block, {@code false} otherwise.
+	 */
+	public boolean contains(InetAddress a){
+		
+		byte[] b = a.getAddress();
+		
+		if(b.length != address.length)
+			return false;
+		
+		int bytes = prefix / 8, bits = prefix % 8;
+		
+		for(int i = 0; i < bytes; i++)
+			if(b[i] != address[i])
+				return false;
+		
+		if(bits == 0)
+			return true;
+		
+		int mask = 0xff << (8 - bits);
+		
+		return (b[bytes] & mask) == (address[bytes] & mask);
+	}
+	
+	public int getWeight(){
+		return weight;
+	}
+	
+	@Override
+	public String toString(){
+		
+		try {
+			return InetAddress.getByAddress(address).getHostAddress() + "/" + prefix + "=" + weight;
+		}
+		
+		catch (UnknownHostException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package robDex.access;
+
+/**
+ * A token bucket, limiting the rate of a client's requests while allowing short bursts.
+ * The bucket is refilled continuously, up to its capacity, and each request takes a token.
+ */
+
+class TokenBucket {
+	
+	private final double capacity;
+	
+	/**
+	 * Tokens added per nanosecond.
+	 */
+	private final double rate;
+	
+	private double tokens;
+	private long refilled = System.nanoTime();
+	
+	/**
+	 * Creates a full bucket.
+	 * 
+	 * @param capacity the maximum number of tokens, the size of the largest burst.
+	 * @param perMinute the number of tokens added per minute.
+	 */
+	TokenBucket(double capacity, double perMinute){
+		
+		this.capacity = capacity;
+		this.rate = perMinute / 60e9;
+		this.tokens = capacity;
+	}
+	
+	/**
+	 * Takes a token, if the bucket holds one.
+	 * 
+	 * @return {@code true} if a token was taken, {@code false} if the bucket is empty.
+	 */
+	synchronized boolean tryTake(){
+		
+		refill();
+		
+		if(tokens < 1)
+			return false;
+		
+		tokens--;
+		return true;
+	}
+	
+	/**
+	 * Tells whether the bucket is full, in which case it can be forgotten : a new bucket would behave the same.
+	 * 
+	 * @return {@code true} if the bucket is full, {@code false} otherwise.
+	 */
+	synchronized boolean isFull(){
+		
+		refill();
+		return tokens >= capacity;
+	}
+	
+	private void refill(){
+		
+		long now = System.nanoTime();
+		
+		tokens = Math.min(capacity, tokens + (now - refilled) * rate);
+		refilled = now;
+	}
+}
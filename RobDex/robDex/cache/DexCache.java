@@ -0,0 +1,102 @@
+package robDex.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import robDex.util.Util;
+import robDex.util.option.OptionManager;
+
+/**
+ * This class is used to keep the DEX code of each class file compiled by previous requests.
+ * A class file is identified by a digest of its content, once converted to java 7.
+ * 
+ * When the java files of a request barely change from a previous one, only the changed class files are compiled into DEX code,
+ * the others are taken from this cache, and the DEX file is built by merging them.
+ * The DEX code is kept in memory, evicting the least recently used first.
+ */
+
+public class DexCache {
+	
+	/**
+	 * DEX code of the class files, from the least to the most recently used.
+	 */
+	private static final LinkedHashMap<String, byte[]> dexes = new LinkedHashMap<>(16, 0.75f, true);
+	
+	private static long size;
+	
+	private static final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+	
+	private DexCache(){}
+	
+	/**
+	 * Tells whether the DEX code of the class files is to be kept.
+	 * 
+	 * @return {@code true} if the cache has a size, {@code false} otherwise.
+	 */
+	public static boolean isEnabled(){
+		return OptionManager.getDexCache() > 0;
+	}
+	
+	/**
+	 * Computes the key identifying the DEX code of a class file.
+	 * 
+	 * @param classFile the content of the class file.
+	 * @return the key of the class file's DEX code.
+	 */
+	public static String key(byte[] classFile){
+		return Util.toHex(Util.newDigest().digest(classFile));
+	}
+	
+	/**
+	 * Returns the DEX code identified by {@code key}.
+	 * 
+	 * @param key the key of the class file.
+	 * @return the DEX code of the class file, or {@code null} if it isn't in the cache.
+	 */
+	public static synchronized byte[] get(String key){
+		
+		byte[] dex = dexes.get(key);
+		
+		(dex == null ? misses : hits).incrementAndGet();
+		
+		return dex;
+	}
+	
+	/**
+	 * Keeps the DEX code of a class file.
+	 * 
+	 * @param key the key of the class file.
+	 * @param dex the DEX code of the class file.
+	 */
+	public static synchronized void put(String key, byte[] dex){
+		
+		long maxSize = OptionManager.getDexCache() * 1024L * 1024L;
+		
+		if(dex.length > maxSize)
+			return;
+		
+		byte[] previous = dexes.put(key, dex);
+		
+		if(previous != null)
+			size -= previous.length;
+		
+		size += dex.length;
+		
+		Iterator<byte[]> it = dexes.values().iterator();
+		
+		while(size > maxSize){
+			
+			size -= it.next().length;
+			it.remove();
+		}
+	}
+	
+	public static long getHits(){
+		return hits.get();
+	}
+	
+	public static long getMisses(){
+		return misses.get();
+	}
+}
@@ -0,0 +1,359 @@
+package robDex.cache;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import robDex.util.CompilationResult;
+import robDex.util.Dependencies;
+import robDex.util.JavaSource;
+import robDex.util.Util;
+import robDex.util.option.OptionManager;
+
+/**
+ * This class is used to keep the results of previous compilations, so that identical requests are not compiled again.
+ * 
+ * A result is identified by a digest of the received files' names and contents, of the dependencies' jar, and of the options
+ * which change the output of the stages : the compiler, the tools run, and the maximum number of errors.
+ * Results are kept in two tiers, both bounded in size and evicting the least recently used results first :
+ * <ul>
+ * <li>in memory, outside of the java heap so that the results are written to the clients' sockets as they are,</li>
+ * <li>on disk, in the {@code cache} directory of {@link OptionManager#getDir()}, which survives restarts.</li>
+ * </ul>
+ * Results found on disk are not brought back in memory : they are sent straight from their file by the system,
+ * whose own cache keeps the most used files in memory. Their file is opened at once, so that a result being sent
+ * is still read entirely if it's evicted meanwhile.
+ */
+
+public class ResultCache {
+	
+	private static final String DIRECTORY = "cache";
+	/**
+	 * Tags of the results on disk. The errors of the failures written by former versions of the server were kept as text :
+	 * these failures are dropped and compiled again.
+	 */
+	private static final byte SUCCESS = 0, TEXT_FAILURE = 1, FAILURE = 2;
+	
+	/**
+	 * Results kept in memory, from the least to the most recently used.
+	 */
+	private static final LinkedHashMap<String, CompilationResult> memory = new LinkedHashMap<>(16, 0.75f, true);
+	
+	/**
+	 * Sizes of the results kept on disk, from the least to the most recently used.
+	 */
+	private static final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+	
+	private static long memorySize, diskSize, maxMemorySize, maxDiskSize;
+	private static String directory;
+	
+	/**
+	 * Digest of the options which change the output of the stages.
+	 */
+	private static byte[] settings;
+	
+	private static final AtomicLong hits = new AtomicLong(), diskHits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong();
+	
+	private ResultCache(){}
+	
+	/**
+	 * Initializes the cache : indexes the results kept on disk by previous runs.
+	 * 
+	 * @throws IOException if the cache's directory can't be read.
+	 */
+	public static synchronized void init() throws IOException{
+		
+		maxMemorySize = OptionManager.getCacheMemory() * 1024L * 1024L;
+		maxDiskSize = OptionManager.getCacheDisk() * 1024L * 1024L;
+		
+		directory = OptionManager.getDir() + File.separator + DIRECTORY;
+		
+		//the workers run the internal compiler
+		String compiler = OptionManager.useInternalCompiler() || OptionManager.useWorkers() ? "internal" : "external";
+		String options = String.join("\0", compiler, OptionManager.getDexLibrary(), OptionManager.getDx(), OptionManager.getRetroLambda(),
+				Integer.toString(OptionManager.getMaxErrors()));
+		
+		settings = Util.newDigest().digest(options.getBytes(StandardCharsets.UTF_8));
+		
+		File dir = new File(directory);
+		dir.mkdirs();
+		
+		File[] files = dir.listFiles();
+		
+		if(files == null)
+			throw new IOException("Can't read cache directory \"" + directory + "\".");
+		
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		
+		for(File f : files){
+			
+			//leftovers of interrupted writes
+			if(f.getName().endsWith(".tmp"))
+				f.delete();
+			
+			else{
+				disk.put(f.getName(), f.length());
+				diskSize += f.length();
+			}
+		}
+		
+		evictFromDisk();
+	}
+	
+	/**
+	 * Computes the key identifying the result of the compilation of {@code sources}, with the server's options.
+	 * 
+	 * @param sources the received files.
+	 * @return the key of the compilation's result.
+	 */
+	public static String key(List<JavaSource> sources){
+		
+		List<JavaSource> sorted = new ArrayList<>(sources);
+		sorted.sort(Comparator.comparing(JavaSource::getName));
+		
+		MessageDigest md = Util.newDigest();
+		
+		for(JavaSource s : sorted){
+			
+			md.update(s.getName().getBytes(StandardCharsets.UTF_8));
+			md.update((byte) 0);
+			md.update(Long.toString(s.getContent().length).getBytes(StandardCharsets.UTF_8));
+			md.update((byte) 0);
+			md.update(s.getContent());
+		}
+		
+		md.update(Dependencies.getDigest());
+		md.update(settings);
+		
+		return Util.toHex(md.digest());
+	}
+	
+	/**
+	 * Returns the result identified by {@code key}, looking for it in memory first, then on disk.
+	 * A result found on disk is left in its opened file, and must be closed once sent.
+	 * 
+	 * @param key the key of the result.
+	 * @return the result, or {@code null} if it isn't in the cache.
+	 */
+	public static CompilationResult get(String key){
+		
+		CompilationResult r;
+		
+		synchronized(ResultCache.class){
+			r = memory.get(key);
+		}
+		
+		if(r != null){
+			
+			hits.incrementAndGet();
+			return r;
+		}
+		
+		r = readFromDisk(key);
+		
+		if(r == null){
+			
+			misses.incrementAndGet();
+			return null;
+		}
+		
+		diskHits.incrementAndGet();
+		
+		return r;
+	}
+	
+	/**
+	 * Keeps a result in both tiers of the cache.
+	 * 
+	 * @param key the key of the result.
+	 * @param result the result to be kept, held in memory.
+	 */
+	public static void put(String key, CompilationResult result){
+		
+		putInMemory(key, result.toDirect());
+		writeToDisk(key, result);
+	}
+	
+	public static long getHits(){
+		return hits.get();
+	}
+	
+	public static long getDiskHits(){
+		return diskHits.get();
+	}
+	
+	public static long getMisses(){
+		return misses.get();
+	}
+	
+	public static long getEvictions(){
+		return evictions.get();
+	}
+	
+	private static synchronized void putInMemory(String key, CompilationResult result){
+		
+		long size = result.getSize();
+		
+		if(size > maxMemorySize)
+			return;
+		
+		CompilationResult previous = memory.put(key, result);
+		
+		if(previous != null)
+			memorySize -= previous.getSize();
+		
+		memorySize += size;
+		
+		Iterator<CompilationResult> it = memory.values().iterator();
+		
+		while(memorySize > maxMemorySize){
+			
+			memorySize -= it.next().getSize();
+			it.remove();
+			evictions.incrementAndGet();
+		}
+	}
+	
+	private static CompilationResult readFromDisk(String key){
+		
+		synchronized(ResultCache.class){
+			
+			if(disk.get(key) == null)
+				return null;
+		}
+		
+		File f = new File(directory, key);
+		FileChannel in = null;
+		
+		try {
+			
+			in = FileChannel.open(f.toPath());
+			
+			ByteBuffer tag = ByteBuffer.allocate(1);
+			
+			if(in.read(tag, 0) != 1)
+				throw new IOException("Empty result \"" + key + "\".");
+			
+			if(tag.get(0) == TEXT_FAILURE)
+				throw new IOException("Result \"" + key + "\" of a former version.");
+			
+			f.setLastModified(System.currentTimeMillis());
+			
+			//the file is closed once the result is sent
+			if(tag.get(0) == SUCCESS)
+				return new CompilationResult(true, in, 1, in.size() - 1);
+			
+			//the diagnostics are read at once, to be decoded for the clients which want them as text
+			ByteBuffer diagnostics = ByteBuffer.allocate((int) in.size() - 1);
+			
+			while(diagnostics.hasRemaining())
+				if(in.read(diagnostics, 1 + diagnostics.position()) == -1)
+					throw new EOFException();
+			
+			diagnostics.flip();
+			in.close();
+			
+			return new CompilationResult(false, diagnostics);
+		}
+		
+		catch (IOException e) {
+			
+			try {
+				
+				if(in != null)
+					in.close();
+			}
+			
+			catch (IOException ce) {}
+			
+			synchronized(ResultCache.class){
+				
+				Long size = disk.remove(key);
+				
+				if(size != null)
+					diskSize -= size;
+			}
+			
+			f.delete();
+			
+			return null;
+		}
+	}
+	
+	private static void writeToDisk(String key, CompilationResult result){
+		
+		long size = result.getSize() + 1L;
+		
+		if(size > maxDiskSize)
+			return;
+		
+		Path tmp = Paths.get(directory, key + "." + Thread.currentThread().getId() + ".tmp");
+		
+		try {
+			
+			try(FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+				
+				ByteBuffer tag = ByteBuffer.wrap(new byte[]{result.isSuccessful() ? SUCCESS : FAILURE});
+				ByteBuffer content = result.getContent();
+				
+				while(tag.hasRemaining() || content.hasRemaining())
+					out.write(new ByteBuffer[]{tag, content});
+			}
+			
+			Files.move(tmp, Paths.get(directory, key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		
+		catch (IOException e) {
+			
+			tmp.toFile().delete();
+			return;
+		}
+		
+		synchronized(ResultCache.class){
+			
+			Long previous = disk.put(key, size);
+			
+			if(previous != null)
+				diskSize -= previous;
+			
+			diskSize += size;
+			
+			evictFromDisk();
+		}
+	}
+	
+	/**
+	 * Deletes the least recently used results from the disk until the disk tier fits its maximum size.
+	 */
+	private static synchronized void evictFromDisk(){
+		
+		Iterator<Map.Entry<String, Long>> it = disk.entrySet().iterator();
+		
+		while(diskSize > maxDiskSize){
+			
+			Map.Entry<String, Long> e = it.next();
+			
+			diskSize -= e.getValue();
+			new File(directory, e.getKey()).delete();
+			it.remove();
+			evictions.incrementAndGet();
+		}
+	}
+}
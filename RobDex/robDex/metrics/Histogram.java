@@ -0,0 +1,171 @@
+package robDex.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class counts recorded values, such as durations, in buckets of logarithmic width.
+ * 
+ * Like an HDR histogram, each power of two is split into {@value #SUB_BUCKETS} buckets of equal width :
+ * a value is known within 12.5% of itself, whatever its magnitude, with a fixed number of counters.
+ * Values are recorded without locks, by any number of threads at once.
+ * 
+ * The values are also counted exactly against fixed bounds, if the histogram is given some, as the Prometheus histograms need.
+ */
+
+public class Histogram {
+	
+	private static final int SUB_BITS = 3, SUB_BUCKETS = 1 << SUB_BITS;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+	private final AtomicLong sum = new AtomicLong();
+	
+	/**
+	 * Fixed bounds, in increasing order, and the number of values recorded above the previous bound and up to each bound,
+	 * the last counter holding the values above every bound.
+	 */
+	private final long[] bounds;
+	private final AtomicLongArray boundCounts;
+	
+	/**
+	 * Creates a histogram without fixed bounds.
+	 */
+	public Histogram(){
+		this(new long[0]);
+	}
+	
+	/**
+	 * Creates a histogram which also counts its values against fixed bounds.
+	 * 
+	 * @param bounds the bounds, in increasing order.
+	 */
+	public Histogram(long... bounds){
+		
+		this.bounds = bounds.clone();
+		boundCounts = new AtomicLongArray(bounds.length + 1);
+	}
+	
+	/**
+	 * Records a value.
+	 * 
+	 * @param value the value, negative values being counted as {@code 0}.
+	 */
+	public void record(long value){
+		
+		value = Math.max(value, 0);
+		
+		counts.incrementAndGet(index(value));
+		sum.addAndGet(value);
+		
+		//the first bound greater than or equal to the value
+		int b = Arrays.binarySearch(bounds, value);
+		boundCounts.incrementAndGet(b < 0 ? -b - 1 : b);
+	}
+	
+	/**
+	 * Returns the number of recorded values.
+	 * 
+	 * @return the number of values.
+	 */
+	public long getCount(){
+		
+		long count = 0;
+		
+		for(int i = 0; i < counts.length(); i++)
+			count += counts.get(i);
+		
+		return count;
+	}
+	
+	/**
+	 * Returns the sum of the recorded values.
+	 * 
+	 * @return the sum.
+	 */
+	public long getSum(){
+		return sum.get();
+	}
+	
+	/**
+	 * Returns the value below which a given fraction of the recorded values fall.
+	 * 
+	 * @param quantile the fraction of the values, between {@code 0} and {@code 1}.
+	 * @return the upper bound of the bucket holding the quantile, {@code 0} if no value was recorded.
+	 */
+	public long getQuantile(double quantile){
+		
+		long[] c = snapshot();
+		long total = 0;
+		
+		for(long n : c)
+			total += n;
+		
+		long rank = (long) Math.ceil(quantile * total), seen = 0;
+		
+		for(int i = 0; i < c.length; i++){
+			
+			seen += c[i];
+			
+			if(c[i] > 0 && seen >= rank)
+				return upperBound(i);
+		}
+		
+		return 0;
+	}
+	
+	/**
+	 * Returns the cumulative counts of the recorded values at each fixed bound, as used by the Prometheus histograms.
+	 * 
+	 * @return the number of values lower than or equal to each bound, followed by the number of all the values.
+	 */
+	public long[] getCumulativeCounts(){
+		
+		long[] cumulative = new long[boundCounts.length()];
+		long seen = 0;
+		
+		for(int i = 0; i < cumulative.length; i++){
+			
+			seen += boundCounts.get(i);
+			cumulative[i] = seen;
+		}
+		
+		return cumulative;
+	}
+	
+	private long[] snapshot(){
+		
+		long[] c = new long[counts.length()];
+		
+		for(int i = 0; i < c.length; i++)
+			c[i] = counts.get(i);
+		
+		return c;
+	}
+	
+	private static int index(long value){
+		
+		if(value < SUB_BUCKETS)
+			return (int) value;
+		
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		
+		return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+	
+	/**
+	 * Returns the upper bound of a bucket, excluded from it.
+	 * 
+	 * @param index the index of the bucket.
+	 * @return the bound.
+	 */
+	private static long upperBound(int index){
+		
+		if(index < SUB_BUCKETS)
+			return index + 1;
+		
+		int shift = index / SUB_BUCKETS - 1;
+		
+		return (long) (index % SUB_BUCKETS + SUB_BUCKETS + 1) << shift;
+	}
+}
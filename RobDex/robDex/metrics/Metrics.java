@@ -0,0 +1,340 @@
+package robDex.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import robDex.Job;
+import robDex.access.AccessControl;
+import robDex.cache.DexCache;
+import robDex.cache.ResultCache;
+import robDex.protocol.Compression;
+import robDex.util.Compiler;
+import robDex.util.option.OptionManager;
+import robDex.worker.WorkerPool;
+import robDex.workspace.Workspaces;
+
+/**
+ * This class is used to measure what the server does : how long each phase of the requests takes, how many bytes go through,
+ * how the requests end, and how busy the server is.
+ * 
+ * The measures are kept in histograms and counters updated without locks. They are exported in the Prometheus text format
+ * by a local HTTP endpoint, if a port is given with {@code --metricsPort}, and as the JMX bean {@value #JMX_NAME}.
+ */
+
+public class Metrics {
+	
+	public static final String JMX_NAME = "robDex:type=Metrics";
+	
+	/**
+	 * The phases of a request whose durations are measured.
+	 */
+	public enum Phase {
+		
+		/**
+		 * Waiting for a thread of the pool, from the connection's acceptance or, with the event loop, from the reception of the files.
+		 */
+		QUEUE,
+		RECEIVE,
+		JAVAC,
+		RETROLAMBDA,
+		DEX,
+		SEND
+	}
+	
+	/**
+	 * The ways a request ends.
+	 */
+	public enum Outcome {
+		
+		SUCCESS,
+		FAILURE,
+		
+		/**
+		 * The request was invalid.
+		 */
+		REJECTED,
+		
+		/**
+		 * The connection was lost or cut, on an I/O error or when a deadline expired.
+		 */
+		ERROR
+	}
+	
+	/**
+	 * Bounds of the buckets of the durations exported to Prometheus, in microseconds : from 1 ms to the default deadline of a compilation.
+	 */
+	private static final long[] BOUNDS = {1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000,
+			1_000_000, 2_500_000, 5_000_000, 10_000_000, 30_000_000, 60_000_000, 180_000_000};
+	
+	private static final Map<Phase, Histogram> durations = new EnumMap<>(Phase.class);
+	private static final Map<Outcome, AtomicLong> outcomes = new EnumMap<>(Outcome.class);
+	
+	/**
+	 * Number of times each phase was skipped, and the time it spared, in microseconds.
+	 */
+	private static final Map<Phase, AtomicLong> skipped = new EnumMap<>(Phase.class), saved = new EnumMap<>(Phase.class);
+	
+	private static final AtomicLong received = new AtomicLong(), sent = new AtomicLong();
+	
+	/**
+	 * Number of requests waiting for a thread of the pool.
+	 */
+	private static final AtomicInteger queued = new AtomicInteger();
+	
+	private static MetricsServer server;
+	
+	static{
+		
+		for(Phase p : Phase.values()){
+			
+			durations.put(p, new Histogram(BOUNDS));
+			skipped.put(p, new AtomicLong());
+			saved.put(p, new AtomicLong());
+		}
+		
+		for(Outcome o : Outcome.values())
+			outcomes.put(o, new AtomicLong());
+	}
+	
+	// Suppresses default constructor, ensuring non-instantiability.
+	private Metrics(){}
+	
+	/**
+	 * Exports the metrics, according to the program's options.
+	 * 
+	 * @throws IOException if the HTTP endpoint can't listen on its port.
+	 * @throws JMException if the JMX bean can't be registered.
+	 */
+	public static void init() throws IOException, JMException{
+		
+		ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsBean(), new ObjectName(JMX_NAME));
+		
+		if(OptionManager.getMetricsPort() != 0)
+			server = new MetricsServer(OptionManager.getMetricsPort());
+	}
+	
+	/**
+	 * Records the duration of a phase.
+	 * 
+	 * @param phase the phase.
+	 * @param start the start of the phase, as given by {@link System#nanoTime()}.
+	 * @return the end of the phase, which may be the start of the next one.
+	 */
+	public static long record(Phase phase, long start){
+		
+		long end = System.nanoTime();
+		durations.get(phase).record((end - start) / 1000);
+		
+		return end;
+	}
+	
+	/**
+	 * Records the duration of a phase measured elsewhere, such as in a worker JVM.
+	 * 
+	 * @param phase the phase.
+	 * @param micros the duration, in microseconds.
+	 */
+	public static void recordDuration(Phase phase, long micros){
+		durations.get(phase).record(micros);
+	}
+	
+	/**
+	 * Counts a phase which wasn't needed by a request. The time it spared is estimated by the mean duration of the phase when it was run.
+	 * 
+	 * @param phase the phase.
+	 * @param start the moment the phase would have started, as given by {@link System#nanoTime()}.
+	 * @return the moment the next phase starts.
+	 */
+	public static long skip(Phase phase, long start){
+		
+		Histogram h = durations.get(phase);
+		long count = h.getCount();
+		
+		skipped.get(phase).incrementAndGet();
+		
+		if(count > 0)
+			saved.get(phase).addAndGet(h.getSum() / count);
+		
+		return System.nanoTime();
+	}
+	
+	/**
+	 * Counts a request waiting for a thread of the pool.
+	 */
+	public static void enqueue(){
+		queued.incrementAndGet();
+	}
+	
+	/**
+	 * Counts a request taken by a thread of the pool, and records how long it waited.
+	 * 
+	 * @param start the moment the request started waiting, as given by {@link System#nanoTime()}.
+	 */
+	public static void dequeue(long start){
+		
+		queued.decrementAndGet();
+		record(Phase.QUEUE, start);
+	}
+	
+	public static void countOutcome(Outcome outcome){
+		outcomes.get(outcome).incrementAndGet();
+	}
+	
+	public static void countReceived(long bytes){
+		received.addAndGet(bytes);
+	}
+	
+	public static void countSent(long bytes){
+		sent.addAndGet(bytes);
+	}
+	
+	public static Histogram getDurations(Phase phase){
+		return durations.get(phase);
+	}
+	
+	public static long getSkipped(Phase phase){
+		return skipped.get(phase).get();
+	}
+	
+	/**
+	 * Returns the time spared by skipping a phase, estimated by its mean duration when it was run.
+	 * 
+	 * @param phase the phase.
+	 * @return the time, in microseconds.
+	 */
+	public static long getSaved(Phase phase){
+		return saved.get(phase).get();
+	}
+	
+	public static long getOutcomes(Outcome outcome){
+		return outcomes.get(outcome).get();
+	}
+	
+	/**
+	 * Returns the number of bytes received from the clients, as they were sent.
+	 * 
+	 * @return the number of bytes.
+	 */
+	public static long getReceivedBytes(){
+		return received.get();
+	}
+	
+	/**
+	 * Returns the number of bytes sent to the clients, answers and results included.
+	 * 
+	 * @return the number of bytes.
+	 */
+	public static long getSentBytes(){
+		return sent.get();
+	}
+	
+	public static int getQueueDepth(){
+		return queued.get();
+	}
+	
+	/**
+	 * Writes all the metrics in the Prometheus text format. Durations are given in seconds.
+	 * 
+	 * @return the metrics.
+	 */
+	public static String toPrometheus(){
+		
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append("# HELP robdex_phase_seconds Duration of the phases of the requests.\n");
+		sb.append("# TYPE robdex_phase_seconds histogram\n");
+		
+		for(Phase p : Phase.values()){
+			
+			Histogram h = durations.get(p);
+			String phase = "phase=\"" + label(p) + "\"";
+			long[] cumulative = h.getCumulativeCounts();
+			
+			for(int i = 0; i < BOUNDS.length; i++)
+				sb.append("robdex_phase_seconds_bucket{").append(phase).append(",le=\"").append(seconds(BOUNDS[i])).append("\"} ").append(cumulative[i]).append('\n');
+			
+			sb.append("robdex_phase_seconds_bucket{").append(phase).append(",le=\"+Inf\"} ").append(cumulative[cumulative.length - 1]).append('\n');
+			sb.append("robdex_phase_seconds_sum{").append(phase).append("} ").append(seconds(h.getSum())).append('\n');
+			sb.append("robdex_phase_seconds_count{").append(phase).append("} ").append(cumulative[cumulative.length - 1]).append('\n');
+		}
+		
+		sb.append("# HELP robdex_phase_skipped_total Phases which weren't needed by the requests, such as retrolambda for class files without java 8 features.\n");
+		sb.append("# TYPE robdex_phase_skipped_total counter\n");
+		
+		for(Phase p : Phase.values())
+			sb.append("robdex_phase_skipped_total{phase=\"").append(label(p)).append("\"} ").append(getSkipped(p)).append('\n');
+		
+		sb.append("# HELP robdex_phase_skipped_seconds_total Time spared by skipping phases, estimated by their mean duration when they were run.\n");
+		sb.append("# TYPE robdex_phase_skipped_seconds_total counter\n");
+		
+		for(Phase p : Phase.values())
+			sb.append("robdex_phase_skipped_seconds_total{phase=\"").append(label(p)).append("\"} ").append(seconds(getSaved(p))).append('\n');
+		
+		sb.append("# HELP robdex_requests_total Requests, by the way they ended.\n");
+		sb.append("# TYPE robdex_requests_total counter\n");
+		
+		for(Outcome o : Outcome.values())
+			sb.append("robdex_requests_total{outcome=\"").append(label(o)).append("\"} ").append(getOutcomes(o)).append('\n');
+		
+		counter(sb, "robdex_denied_connections_total", "Connections refused, their address being outside of the allowed blocks.", AccessControl.getDenied());
+		counter(sb, "robdex_rate_limited_requests_total", "Requests rejected for exceeding their client's rate.", AccessControl.getLimited());
+		counter(sb, "robdex_received_bytes_total", "Bytes received from the clients.", getReceivedBytes());
+		counter(sb, "robdex_sent_bytes_total", "Bytes sent to the clients.", getSentBytes());
+		gauge(sb, "robdex_queue_depth", "Requests waiting for a thread of the pool.", getQueueDepth());
+		gauge(sb, "robdex_active_compilations", "Compilations being run.", Compiler.getActiveCompilations());
+		gauge(sb, "robdex_waiting_compilations", "Compilations waiting for a compilation slot.", Compiler.getWaitingCompilations());
+		counter(sb, "robdex_coalesced_requests_total", "Requests which shared the compilation of identical files.", Job.getCoalesced());
+		
+		sb.append("# HELP robdex_result_cache_hits_total Results found in the cache.\n");
+		sb.append("# TYPE robdex_result_cache_hits_total counter\n");
+		sb.append("robdex_result_cache_hits_total{tier=\"memory\"} ").append(ResultCache.getHits()).append('\n');
+		sb.append("robdex_result_cache_hits_total{tier=\"disk\"} ").append(ResultCache.getDiskHits()).append('\n');
+		
+		counter(sb, "robdex_result_cache_misses_total", "Results missing from the cache.", ResultCache.getMisses());
+		counter(sb, "robdex_result_cache_evictions_total", "Results evicted from the cache.", ResultCache.getEvictions());
+		counter(sb, "robdex_dex_cache_hits_total", "Class files whose DEX code was found in the cache.", DexCache.getHits());
+		counter(sb, "robdex_dex_cache_misses_total", "Class files whose DEX code was missing from the cache.", DexCache.getMisses());
+		counter(sb, "robdex_compression_uploaded_bytes_total", "Uncompressed size of the compressed files received.", Compression.getUploadedBytes());
+		counter(sb, "robdex_compression_uploaded_compressed_bytes_total", "Size of the compressed files received.", Compression.getUploadedCompressedBytes());
+		counter(sb, "robdex_compression_sent_bytes_total", "Uncompressed size of the results sent to the clients accepting compression.", Compression.getSentBytes());
+		counter(sb, "robdex_compression_sent_compressed_bytes_total", "Size of the results sent to the clients accepting compression.", Compression.getSentCompressedBytes());
+		counter(sb, "robdex_workspaces_created_total", "Workspaces made for the compilations.", Workspaces.getCreated());
+		counter(sb, "robdex_workspaces_reused_total", "Workspaces taken from the pool instead of being made.", Workspaces.getReused());
+		counter(sb, "robdex_workspaces_swept_total", "Directories left by previous runs, deleted at startup.", Workspaces.getSwept());
+		counter(sb, "robdex_workers_started_total", "Worker JVMs started and warmed up, with --compiler worker.", WorkerPool.getStarted());
+		counter(sb, "robdex_workers_recycled_total", "Worker JVMs replaced after their jobs, their heap's growth or their failure.", WorkerPool.getRecycled());
+		
+		return sb.toString();
+	}
+	
+	private static void counter(StringBuilder sb, String name, String help, long value){
+		metric(sb, name, "counter", help, value);
+	}
+	
+	private static void gauge(StringBuilder sb, String name, String help, long value){
+		metric(sb, name, "gauge", help, value);
+	}
+	
+	private static void metric(StringBuilder sb, String name, String type, String help, long value){
+		
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		sb.append(name).append(' ').append(value).append('\n');
+	}
+	
+	static String label(Enum<?> e){
+		return e.name().toLowerCase(Locale.ROOT);
+	}
+	
+	private static String seconds(long micros){
+		return Double.toString(micros / 1e6);
+	}
+}
@@ -0,0 +1,115 @@
+package robDex.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import robDex.Job;
+import robDex.cache.ResultCache;
+import robDex.metrics.Metrics.Outcome;
+import robDex.metrics.Metrics.Phase;
+import robDex.util.Compiler;
+
+/**
+ * This class exports the metrics as a JMX bean.
+ */
+
+class MetricsBean implements MetricsMXBean {
+	
+	@Override
+	public Map<String, Long> getRequests(){
+		
+		Map<String, Long> m = new LinkedHashMap<>();
+		
+		for(Outcome o : Outcome.values())
+			m.put(Metrics.label(o), Metrics.getOutcomes(o));
+		
+		return m;
+	}
+	
+	@Override
+	public Map<String, Long> getMedianDurations(){
+		return quantiles(0.5);
+	}
+	
+	@Override
+	public Map<String, Long> getP99Durations(){
+		return quantiles(0.99);
+	}
+	
+	@Override
+	public Map<String, Long> getSkippedPhases(){
+		
+		Map<String, Long> m = new LinkedHashMap<>();
+		
+		for(Phase p : Phase.values())
+			m.put(Metrics.label(p), Metrics.getSkipped(p));
+		
+		return m;
+	}
+	
+	@Override
+	public Map<String, Long> getSavedDurations(){
+		
+		Map<String, Long> m = new LinkedHashMap<>();
+		
+		for(Phase p : Phase.values())
+			m.put(Metrics.label(p), Metrics.getSaved(p));
+		
+		return m;
+	}
+	
+	@Override
+	public long getReceivedBytes(){
+		return Metrics.getReceivedBytes();
+	}
+	
+	@Override
+	public long getSentBytes(){
+		return Metrics.getSentBytes();
+	}
+	
+	@Override
+	public int getQueueDepth(){
+		return Metrics.getQueueDepth();
+	}
+	
+	@Override
+	public int getActiveCompilations(){
+		return Compiler.getActiveCompilations();
+	}
+	
+	@Override
+	public int getWaitingCompilations(){
+		return Compiler.getWaitingCompilations();
+	}
+	
+	@Override
+	public long getCoalescedRequests(){
+		return Job.getCoalesced();
+	}
+	
+	@Override
+	public long getResultCacheHits(){
+		return ResultCache.getHits();
+	}
+	
+	@Override
+	public long getResultCacheDiskHits(){
+		return ResultCache.getDiskHits();
+	}
+	
+	@Override
+	public long getResultCacheMisses(){
+		return ResultCache.getMisses();
+	}
+	
+	private static Map<String, Long> quantiles(double quantile){
+		
+		Map<String, Long> m = new LinkedHashMap<>();
+		
+		for(Phase p : Phase.values())
+			m.put(Metrics.label(p), Metrics.getDurations(p).getQuantile(quantile));
+		
+		return m;
+	}
+}
@@ -0,0 +1,38 @@
+package robDex.metrics;
+
+import java.util.Map;
+
+/**
+ * The metrics of the server, as exported by JMX. Durations are given in microseconds, by phase.
+ */
+
+public interface MetricsMXBean {
+	
+	Map<String, Long> getRequests();
+	
+	Map<String, Long> getMedianDurations();
+	
+	Map<String, Long> getP99Durations();
+	
+	Map<String, Long> getSkippedPhases();
+	
+	Map<String, Long> getSavedDurations();
+	
+	long getReceivedBytes();
+	
+	long getSentBytes();
+	
+	int getQueueDepth();
+	
+	int getActiveCompilations();
+	
+	int getWaitingCompilations();
+	
+	long getCoalescedRequests();
+	
+	long getResultCacheHits();
+	
+	long getResultCacheDiskHits();
+	
+	long getResultCacheMisses();
+}
@@ -0,0 +1,61 @@
+package robDex.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class is used to let Prometheus scrape the metrics, at {@code http://localhost:port/metrics}.
+ * The endpoint only listens on the loopback interface, and answers on a thread of its own.
+ */
+
+class MetricsServer {
+	
+	private static final String PATH = "/metrics";
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	
+	private final HttpServer server;
+	
+	/**
+	 * Creates the endpoint, and starts it.
+	 * 
+	 * @param port the port on which the endpoint listens.
+	 * @throws IOException if the endpoint can't listen on the port.
+	 */
+	MetricsServer(int port) throws IOException{
+		
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext(PATH, this::handle);
+		server.start();
+	}
+	
+	private void handle(HttpExchange exchange) throws IOException{
+		
+		try {
+			
+			if(!exchange.getRequestMethod().equals("GET") || !exchange.getRequestURI().getPath().equals(PATH)){
+				
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			
+			byte[] body = Metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+			
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, body.length);
+			
+			try(OutputStream out = exchange.getResponseBody()){
+				out.write(body);
+			}
+		}
+		
+		finally{
+			exchange.close();
+		}
+	}
+}
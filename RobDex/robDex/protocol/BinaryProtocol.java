@@ -0,0 +1,573 @@
+package robDex.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import robDex.exceptions.BadRequestException;
+import robDex.util.CompilationResult;
+import robDex.util.JavaSource;
+import robDex.util.Util;
+
+/**
+ * <p>
+ * This class decodes the files sent by a client with the binary protocol, and encodes the answers of the server.
+ * Every field has a fixed width, and numbers are sent in big-endian order. Unlike the text protocol, the client describes
+ * all of its files at once, and only waits for one answer before sending their contents.
+ * </p>
+ * <p>
+ * The operations are as follows :
+ * <ol>
+ * <li>The client sends a header : the magic number {@code 0xD7} (1 byte), the version of the protocol {@code 2} (1 byte)
+ * and flags (1 byte) :
+ * 		<ul>
+ * 		<li>{@code 0x01} : the manifest holds the CRC-32 of each file's content.</li>
+ * 		<li>{@code 0x02} : the client accepts compressed contents, and may compress its own.</li>
+ * 		<li>{@code 0x04} : the connection is persistent, and carries several requests.</li>
+ * 		<li>{@code 0x08} : the client reads the errors of failed compilations as encoded diagnostics (see {@link robDex.util.Diagnostics})
+ * 		instead of text.</li>
+ * 		</ul></li>
+ * <li>If the connection is persistent, the client sends the ID of the request (4 bytes), which it chooses.</li>
+ * <li>The client sends the number of files (4 bytes).</li>
+ * <li>The client sends the manifest ; for each file, the length of its name (2 bytes), its name in UTF-8, the size of its content (4 bytes),
+ * the CRC-32 of its content (4 bytes) if the client sends checksums,
+ * then the size of its compressed content (4 bytes) if the client accepts compression, {@code 0} if the content is sent as is.
+ * Empty contents are always sent as they are.</li>
+ * <li>The server answers {@code 0} (1 byte) if the request is valid, {@code -1} otherwise. In this case, it immediately closes the connection.</li>
+ * <li>The client sends the contents of the files, one after the other in the order of the manifest.
+ * Compressed contents are sent in the zlib format (deflate), and checksums are computed on the uncompressed contents.
+ * If a content doesn't match its checksum, the server answers as if the compilation had failed, and closes the connection.</li>
+ * <li>The server sends {@code 0} (1 byte) if the compilation was successful, {@code -1} otherwise,
+ * the size of the DEX file or of the errors (4 bytes), then the DEX file or the errors, as text or as encoded diagnostics.
+ * If the client accepts compression, the tag is followed by the encoding of the content (1 byte : {@code 0} as is, {@code 1} deflate),
+ * the size of the uncompressed content (4 bytes), then the size of the content as it is sent (4 bytes).</li>
+ * </ol>
+ * </p>
+ * <p>
+ * On a persistent connection, the steps following the header are repeated for each request, and the client doesn't need to wait
+ * for a result before sending the next request. The requests are compiled at once, and their results are sent as soon as they are ready,
+ * in any order : each answer of the server is preceded by the ID of its request (4 bytes). Valid manifests aren't answered.
+ * If a request is invalid, the server closes the connection once it's answered, and the other requests are abandoned.
+ * The connection is closed once it's been idle for {@code --idleTimeout} seconds, or once the client closed its side and all the results are sent.
+ * </p>
+ */
+
+public class BinaryProtocol extends Protocol{
+	
+	public static final byte MAGIC = (byte) 0xD7, VERSION = 2;
+	
+	/**
+	 * Flag telling that the manifest holds the checksums of the files.
+	 */
+	public static final int CHECKSUM = 0x01;
+	
+	/**
+	 * Flag telling that the client accepts compressed contents.
+	 */
+	public static final int COMPRESSION = 0x02;
+	
+	/**
+	 * Flag telling that the connection carries several requests.
+	 */
+	public static final int PERSISTENT = 0x04;
+	
+	/**
+	 * Flag telling that the client reads encoded diagnostics.
+	 */
+	public static final int DIAGNOSTICS = 0x08;
+	
+	private static final int FLAGS = CHECKSUM | COMPRESSION | PERSISTENT | DIAGNOSTICS;
+	
+	private static final byte RAW = 0, DEFLATE = 1;
+	
+	/**
+	 * Maximum length of a file's name, in bytes.
+	 */
+	private static final int MAX_NAME = 1024;
+	
+	private static final int HEADER_SIZE = 3, REQUEST_ID_SIZE = 4, COUNT_SIZE = 4, NAME_LENGTH_SIZE = 2, SIZE_SIZE = 4, CHECKSUM_SIZE = 4, COMPRESSED_SIZE_SIZE = 4;
+	private static final int RESULT_HEADER_SIZE = 5, COMPRESSED_RESULT_HEADER_SIZE = 10;
+	
+	private enum State { HEADER, REQUEST_ID, COUNT, NAME_LENGTH, NAME, SIZE, CHECKSUM, COMPRESSED_SIZE, CONTENT, DONE }
+	
+	private State state = State.HEADER;
+	
+	/**
+	 * The fixed-width field being received.
+	 */
+	private final ByteBuffer field = ByteBuffer.allocate(MAX_NAME);
+	
+	private List<String> names;
+	private List<byte[]> contents;
+	private List<JavaSource> files;
+	private long[] checksums;
+	
+	/**
+	 * Sizes of the compressed contents, {@code 0} for the contents sent as they are.
+	 */
+	private int[] compressedSizes;
+	
+	private int requestId, filesCount, flags;
+	
+	/**
+	 * Bytes of the current file received from the client, and written into its content.
+	 */
+	private int received, written;
+	
+	private Inflater inflater;
+	private byte[] compressed;
+	
+	BinaryProtocol(){
+		expect(HEADER_SIZE);
+	}
+	
+	@Override
+	public boolean decode(ByteBuffer in) throws BadRequestException{
+		
+		while(state != State.DONE && in.hasRemaining()){
+			
+			if(state == State.CONTENT){
+				
+				int i = files.size();
+				
+				if(compressedSizes != null && compressedSizes[i] != 0)
+					inflate(in, compressedSizes[i]);
+				
+				else
+					copy(in);
+			}
+			
+			else if(fill(in))
+				decodeField();
+		}
+		
+		return state == State.DONE;
+	}
+	
+	@Override
+	public List<JavaSource> getFiles(){
+		return files;
+	}
+	
+	@Override
+	public boolean isPersistent(){
+		return (flags & PERSISTENT) != 0;
+	}
+	
+	@Override
+	public int getRequestId(){
+		return requestId;
+	}
+	
+	@Override
+	public void next(){
+		
+		if(!isPersistent())
+			super.next();
+		
+		files = null;
+		compressedSizes = null;
+		
+		state = State.REQUEST_ID;
+		expect(REQUEST_ID_SIZE);
+	}
+	
+	/**
+	 * Encodes the result of a compilation : its tag, the size of its content, then the content itself.
+	 * If the client accepts compression, contents of at least {@link Compression#getThreshold()} bytes are compressed.
+	 */
+	@Override
+	public Response encode(int requestId, CompilationResult result){
+		
+		result = toSend(result, (flags & DIAGNOSTICS) != 0);
+		byte tag = (byte) (result.isSuccessful() ? SUCCESS_TAG : ERROR_TAG);
+		int size = (int) result.getSize();
+		
+		if((flags & COMPRESSION) == 0)
+			return new Response(header(requestId, tag, RAW, size, size), result);
+		
+		byte[] deflated = size >= Compression.getThreshold() ? Compression.deflate(result) : null;
+		
+		if(deflated != null && deflated.length < size){
+			
+			Compression.countResponse(size, deflated.length);
+			
+			//the content is sent compressed, the file holding it isn't read anymore
+			try {
+				result.close();
+			}
+			
+			catch (IOException e) {}
+			
+			return new Response(header(requestId, tag, DEFLATE, size, deflated.length), new CompilationResult(result.isSuccessful(), deflated));
+		}
+		
+		Compression.countResponse(size, size);
+		return new Response(header(requestId, tag, RAW, size, size), result);
+	}
+	
+	@Override
+	protected void answerFailure(byte[] errors){
+		
+		errors = toSend(ByteBuffer.wrap(errors), (flags & DIAGNOSTICS) != 0);
+		ByteBuffer header = header(requestId, (byte) ERROR_TAG, RAW, errors.length, errors.length);
+		
+		answers.write(header.array(), 0, header.limit());
+		answers.write(errors, 0, errors.length);
+	}
+	
+	/**
+	 * Builds the header of a result, whose fields depend on the flags sent by the client.
+	 * 
+	 * @param requestId the ID of the request, sent on persistent connections only.
+	 * @param tag the tag of the result.
+	 * @param encoding the encoding of the content, sent if the client accepts compression.
+	 * @param size the size of the content.
+	 * @param sentSize the size of the content as it is sent, sent if the client accepts compression.
+	 * @return the header.
+	 */
+	private ByteBuffer header(int requestId, byte tag, byte encoding, int size, int sentSize){
+		
+		boolean compression = (flags & COMPRESSION) != 0;
+		
+		ByteBuffer header = ByteBuffer.allocate((isPersistent() ? REQUEST_ID_SIZE : 0) + (compression ? COMPRESSED_RESULT_HEADER_SIZE : RESULT_HEADER_SIZE));
+		
+		if(isPersistent())
+			header.putInt(requestId);
+		
+		header.put(tag);
+		
+		if(compression)
+			header.put(encoding).putInt(size).putInt(sentSize);
+		
+		else
+			header.putInt(size);
+		
+		header.flip();
+		
+		return header;
+	}
+	
+	private void decodeField() throws BadRequestException{
+		
+		switch(state){
+		
+		case HEADER:
+			
+			if(field.get() != MAGIC || field.get() != VERSION)
+				throw reject();
+			
+			int f = field.get() & 0xff;
+			
+			if((f & ~FLAGS) != 0)
+				throw reject();
+			
+			flags = f;
+			
+			if(isPersistent())
+				next();
+			
+			else{
+				
+				state = State.COUNT;
+				expect(COUNT_SIZE);
+			}
+			
+			break;
+		
+		case REQUEST_ID:
+			
+			requestId = field.getInt();
+			
+			state = State.COUNT;
+			expect(COUNT_SIZE);
+			break;
+		
+		case COUNT:
+			
+			filesCount = field.getInt();
+			
+			if(filesCount < 0 || filesCount > MAX_FILES || !admit())
+				throw reject();
+			
+			names = new ArrayList<>(filesCount);
+			contents = new ArrayList<>(filesCount);
+			files = new ArrayList<>(filesCount);
+			checksums = new long[filesCount];
+			
+			if((flags & COMPRESSION) != 0)
+				compressedSizes = new int[filesCount];
+			
+			nextName();
+			break;
+		
+		case NAME_LENGTH:
+			
+			int length = field.getShort() & 0xffff;
+			
+			if(length == 0 || length > MAX_NAME)
+				throw reject();
+			
+			state = State.NAME;
+			expect(length);
+			break;
+		
+		case NAME:
+			
+			names.add(Util.filterFileName(StandardCharsets.UTF_8.decode(field).toString()));
+			
+			state = State.SIZE;
+			expect(SIZE_SIZE);
+			break;
+		
+		case SIZE:
+			
+			int size = field.getInt();
+			
+			if(!Util.isValid(names.get(contents.size()), size))
+				throw reject();
+			
+			contents.add(new byte[size]);
+			
+			if((flags & CHECKSUM) != 0){
+				
+				state = State.CHECKSUM;
+				expect(CHECKSUM_SIZE);
+			}
+			
+			else
+				afterChecksum();
+			
+			break;
+		
+		case CHECKSUM:
+			
+			checksums[contents.size() - 1] = field.getInt() & 0xffffffffL;
+			
+			afterChecksum();
+			break;
+		
+		case COMPRESSED_SIZE:
+			
+			int compressedSize = field.getInt();
+			int i = contents.size() - 1;
+			
+			if(compressedSize != 0 && (contents.get(i).length == 0 || !Util.isValid(names.get(i), compressedSize)))
+				throw reject();
+			
+			compressedSizes[i] = compressedSize;
+			
+			nextName();
+			break;
+		
+		default:
+			throw new IllegalStateException(state.name());
+		}
+	}
+	
+	private void afterChecksum() throws BadRequestException{
+		
+		if((flags & COMPRESSION) != 0){
+			
+			state = State.COMPRESSED_SIZE;
+			expect(COMPRESSED_SIZE_SIZE);
+		}
+		
+		else
+			nextName();
+	}
+	
+	/**
+	 * Expects the name of the next file, or the contents of the files once the manifest is received.
+	 */
+	private void nextName() throws BadRequestException{
+		
+		if(names.size() < filesCount){
+			
+			state = State.NAME_LENGTH;
+			expect(NAME_LENGTH_SIZE);
+			return;
+		}
+		
+		//on a persistent connection, only the invalid requests are answered
+		if(!isPersistent())
+			answers.write(SUCCESS_TAG);
+		
+		state = filesCount == 0 ? State.DONE : State.CONTENT;
+		
+		//empty files have no content to wait for
+		if(state == State.CONTENT && contents.get(0).length == 0)
+			endFile();
+	}
+	
+	/**
+	 * Receives the bytes of a content sent as is.
+	 * 
+	 * @param in the bytes received from the client.
+	 * @throws BadRequestException if the content doesn't match its checksum.
+	 */
+	private void copy(ByteBuffer in) throws BadRequestException{
+		
+		byte[] content = contents.get(files.size());
+		
+		int n = Math.min(in.remaining(), content.length - written);
+		in.get(content, written, n);
+		
+		if((flags & CHECKSUM) != 0)
+			crc.update(content, written, n);
+		
+		written += n;
+		
+		if(written == content.length)
+			endFile();
+	}
+	
+	/**
+	 * Receives the bytes of a compressed content, and uncompresses them.
+	 * 
+	 * @param in the bytes received from the client.
+	 * @param compressedSize the size of the compressed content.
+	 * @throws BadRequestException if the compressed content is invalid, or doesn't match its size or its checksum.
+	 */
+	private void inflate(ByteBuffer in, int compressedSize) throws BadRequestException{
+		
+		byte[] content = contents.get(files.size());
+		
+		if(inflater == null){
+			
+			inflater = new Inflater();
+			compressed = new byte[8192];
+		}
+		
+		int n = Math.min(Math.min(in.remaining(), compressedSize - received), compressed.length);
+		in.get(compressed, 0, n);
+		inflater.setInput(compressed, 0, n);
+		received += n;
+		
+		try {
+			
+			while(!inflater.finished() && !inflater.needsInput()){
+				
+				int m = inflater.inflate(content, written, content.length - written);
+				
+				//the content is larger than its size, or needs a dictionary
+				if(m == 0 && !inflater.finished() && !inflater.needsInput())
+					throw reject();
+				
+				if((flags & CHECKSUM) != 0)
+					crc.update(content, written, m);
+				
+				written += m;
+			}
+		}
+		
+		catch (DataFormatException e) {
+			throw reject();
+		}
+		
+		if(received < compressedSize)
+			return;
+		
+		if(!inflater.finished() || written != content.length)
+			throw reject();
+		
+		Compression.countUpload(compressedSize, content.length);
+		inflater.reset();
+		
+		endFile();
+	}
+	
+	private void endFile() throws BadRequestException{
+		
+		int i = files.size();
+		
+		if((flags & CHECKSUM) != 0 && crc.getValue() != checksums[i]){
+			
+			state = State.DONE;
+			endInflater();
+			
+			throw corrupted(names.get(i));
+		}
+		
+		files.add(new JavaSource(names.get(i), contents.get(i)));
+		received = 0;
+		written = 0;
+		crc.reset();
+		
+		if(files.size() == filesCount){
+			
+			state = State.DONE;
+			endInflater();
+		}
+		
+		else if(contents.get(i + 1).length == 0)
+			endFile();
+	}
+	
+	/**
+	 * Releases the inflater, once the contents of a request are received.
+	 */
+	private void endInflater(){
+		
+		if(inflater != null){
+			
+			inflater.end();
+			inflater = null;
+		}
+	}
+	
+	/**
+	 * Expects a field of {@code size} bytes.
+	 * 
+	 * @param size the size of the field.
+	 */
+	private void expect(int size){
+		
+		field.clear();
+		field.limit(size);
+	}
+	
+	/**
+	 * Receives the bytes of the expected field.
+	 * 
+	 * @param in the bytes received from the client.
+	 * @return {@code true} if the field is complete, and ready to be read ; {@code false} if more bytes are needed.
+	 */
+	private boolean fill(ByteBuffer in){
+		
+		int n = Math.min(field.remaining(), in.remaining());
+		
+		ByteBuffer chunk = in.duplicate();
+		chunk.limit(chunk.position() + n);
+		field.put(chunk);
+		in.position(in.position() + n);
+		
+		if(field.hasRemaining())
+			return false;
+		
+		field.flip();
+		return true;
+	}
+	
+	/**
+	 * Rejects the client's request.
+	 * 
+	 * @return the exception to be thrown.
+	 */
+	private BadRequestException reject(){
+		
+		//the request's ID is known once the header is received
+		if(isPersistent() && state != State.HEADER)
+			answers.write(ByteBuffer.allocate(REQUEST_ID_SIZE).putInt(requestId).array(), 0, REQUEST_ID_SIZE);
+		
+		answers.write(ERROR_TAG);
+		state = State.DONE;
+		endInflater();
+		
+		return new BadRequestException();
+	}
+}
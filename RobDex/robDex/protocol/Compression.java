@@ -0,0 +1,153 @@
+package robDex.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+import robDex.util.CompilationResult;
+import robDex.util.option.OptionManager;
+
+/**
+ * This class is used to compress the results sent to the clients which accept it, and counts the bytes spared by compression,
+ * for the files received from the clients as well as for the results sent to them.
+ */
+
+public class Compression {
+	
+	private static final AtomicLong uploaded = new AtomicLong(), uploadedCompressed = new AtomicLong(),
+			sent = new AtomicLong(), sentCompressed = new AtomicLong();
+	
+	private Compression(){}
+	
+	/**
+	 * Returns the size from which the results are compressed.
+	 * 
+	 * @return the size, in bytes.
+	 */
+	public static int getThreshold(){
+		return OptionManager.getCompressThreshold();
+	}
+	
+	/**
+	 * Compresses the content of a result, in the zlib format.
+	 * 
+	 * @param result the result to be compressed.
+	 * @return the compressed content, or {@code null} if the content can't be read.
+	 */
+	static byte[] deflate(CompilationResult result){
+		
+		byte[] content;
+		
+		try {
+			content = read(result);
+		}
+		
+		catch (IOException e) {
+			return null;
+		}
+		
+		Deflater deflater = new Deflater();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2 + 64);
+		byte[] buf = new byte[8192];
+		
+		try {
+			
+			deflater.setInput(content);
+			deflater.finish();
+			
+			while(!deflater.finished()){
+				
+				int n = deflater.deflate(buf);
+				out.write(buf, 0, n);
+			}
+		}
+		
+		finally{
+			deflater.end();
+		}
+		
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Counts a file received from a client.
+	 * 
+	 * @param compressedSize the size of the file as it was received.
+	 * @param size the size of the file, uncompressed.
+	 */
+	static void countUpload(long compressedSize, long size){
+		
+		uploadedCompressed.addAndGet(compressedSize);
+		uploaded.addAndGet(size);
+	}
+	
+	/**
+	 * Counts a result sent to a client which accepts compression.
+	 * 
+	 * @param size the size of the result, uncompressed.
+	 * @param sentSize the size of the result as it is sent.
+	 */
+	static void countResponse(long size, long sentSize){
+		
+		sent.addAndGet(size);
+		sentCompressed.addAndGet(sentSize);
+	}
+	
+	/**
+	 * Returns the uncompressed size of the compressed files received from the clients.
+	 * 
+	 * @return the size, in bytes.
+	 */
+	public static long getUploadedBytes(){
+		return uploaded.get();
+	}
+	
+	/**
+	 * Returns the size of the compressed files received from the clients, as they were received.
+	 * 
+	 * @return the size, in bytes.
+	 */
+	public static long getUploadedCompressedBytes(){
+		return uploadedCompressed.get();
+	}
+	
+	/**
+	 * Returns the uncompressed size of the results sent to the clients which accept compression.
+	 * 
+	 * @return the size, in bytes.
+	 */
+	public static long getSentBytes(){
+		return sent.get();
+	}
+	
+	/**
+	 * Returns the size of the results sent to the clients which accept compression, as they were sent.
+	 * 
+	 * @return the size, in bytes.
+	 */
+	public static long getSentCompressedBytes(){
+		return sentCompressed.get();
+	}
+	
+	private static byte[] read(CompilationResult result) throws IOException{
+		
+		byte[] content = new byte[(int) result.getSize()];
+		
+		if(result.isInMemory()){
+			
+			result.getContent().get(content);
+			return content;
+		}
+		
+		ByteBuffer b = ByteBuffer.wrap(content);
+		
+		while(b.hasRemaining())
+			if(result.getFile().read(b, result.getOffset() + b.position()) == -1)
+				throw new EOFException();
+		
+		return content;
+	}
+}
@@ -0,0 +1,215 @@
+package robDex.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.zip.CRC32;
+
+import robDex.exceptions.BadRequestException;
+import robDex.util.CompilationResult;
+import robDex.util.Diagnostic;
+import robDex.util.Diagnostic.Severity;
+import robDex.util.Diagnostic.Stage;
+import robDex.util.Diagnostics;
+import robDex.util.JavaSource;
+
+/**
+ * This class is the base of the protocols spoken by the clients.
+ * 
+ * A protocol decodes the files sent by a client and encodes the answers of the server. The bytes are given to it as they arrive,
+ * in chunks of any size : the same decoding serves a thread blocking on the client's socket as well as a selector handling many clients at once.
+ * 
+ * The protocol of a client is chosen from the first byte it sends, see {@link #detect(byte)}.
+ */
+
+public abstract class Protocol {
+	
+	public static final int ERROR_TAG = -1, SUCCESS_TAG = 0, MAX_FILES = 100;
+	private static final String ERROR_MSG = "An error unrelated to the java compilation occured.";
+	
+	/**
+	 * Value of a file's checksum when the client didn't send one.
+	 */
+	protected static final long NO_CHECKSUM = -1;
+	
+	/**
+	 * Answers waiting to be sent to the client.
+	 */
+	protected final ByteArrayOutputStream answers = new ByteArrayOutputStream();
+	
+	/**
+	 * CRC-32 of the content being received, when the client sent its checksum.
+	 */
+	protected final CRC32 crc = new CRC32();
+	
+	/**
+	 * Decides whether the client may send a new request, {@code null} if all requests are admitted.
+	 */
+	private BooleanSupplier admission;
+	
+	/**
+	 * Chooses the protocol spoken by a client.
+	 * 
+	 * @param first the first byte sent by the client.
+	 * @return the binary protocol if the byte is its magic number, the text protocol otherwise.
+	 */
+	public static Protocol detect(byte first){
+		
+		return first == BinaryProtocol.MAGIC ? new BinaryProtocol() : new TextProtocol();
+	}
+	
+	/**
+	 * Decodes the bytes received from the client, as far as they go.
+	 * The answers due to the client are then given by {@link #takeAnswers()}.
+	 * 
+	 * @param in the bytes received from the client.
+	 * @return {@code true} once all the files are received, {@code false} if more bytes are needed.
+	 * @throws BadRequestException if the client's request is invalid. The rejection is given by {@link #takeAnswers()}.
+	 */
+	public abstract boolean decode(ByteBuffer in) throws BadRequestException;
+	
+	/**
+	 * Returns the received files.
+	 * 
+	 * @return the files, once {@link #decode(ByteBuffer)} returned {@code true}.
+	 */
+	public abstract List<JavaSource> getFiles();
+	
+	/**
+	 * Tells whether the client sends several requests on its connection.
+	 * 
+	 * @return {@code true} if the connection carries several requests, {@code false} if it is closed after the first one.
+	 */
+	public boolean isPersistent(){
+		return false;
+	}
+	
+	/**
+	 * Returns the ID of the request whose files are received, given by the client on a persistent connection.
+	 * 
+	 * @return the ID, {@code 0} if the connection carries a single request.
+	 */
+	public int getRequestId(){
+		return 0;
+	}
+	
+	/**
+	 * Starts decoding the next request of a persistent connection, once the files of the previous one are received.
+	 * The files of the previous request are still given by the list returned by {@link #getFiles()} before the call.
+	 * 
+	 * @throws IllegalStateException if the connection isn't persistent.
+	 */
+	public void next(){
+		throw new IllegalStateException("The connection carries a single request.");
+	}
+	
+	/**
+	 * Sets what decides whether the client may send a new request, asked once per request as soon as it starts.
+	 * A request which isn't admitted is rejected like an invalid one.
+	 * 
+	 * @param admission gives {@code true} if the request is admitted, {@code false} otherwise.
+	 */
+	public void setAdmission(BooleanSupplier admission){
+		this.admission = admission;
+	}
+	
+	/**
+	 * Tells whether the client may send a new request.
+	 * 
+	 * @return {@code true} if the request is admitted, {@code false} if it must be rejected.
+	 */
+	protected boolean admit(){
+		return admission == null || admission.getAsBoolean();
+	}
+	
+	/**
+	 * Encodes the result of a compilation. On a persistent connection, the results are encoded by the threads which compiled them,
+	 * while the next requests are being decoded : the encoding must only depend on what the client sent before its first request.
+	 * 
+	 * @param requestId the ID of the request, as given by {@link #getRequestId()} when its files were received.
+	 * @param result the result of the compilation.
+	 * @return the response to be sent to the client.
+	 */
+	public abstract Response encode(int requestId, CompilationResult result);
+	
+	/**
+	 * Returns the answers due to the client since the last call.
+	 * 
+	 * @return the answers to be sent, which may be empty.
+	 */
+	public ByteBuffer takeAnswers(){
+		
+		ByteBuffer b = ByteBuffer.wrap(answers.toByteArray());
+		answers.reset();
+		
+		return b;
+	}
+	
+	/**
+	 * Answers a failed compilation, whose errors are given, instead of the usual answer.
+	 * 
+	 * @param errors the encoding of the errors' diagnostics, to be sent to the client as it reads them.
+	 */
+	protected abstract void answerFailure(byte[] errors);
+	
+	/**
+	 * Rejects a file whose content doesn't match the checksum sent by the client.
+	 * The client is answered as if the compilation had failed, with an error naming the file, so that it doesn't wait for a result.
+	 * 
+	 * @param fileName the name of the file.
+	 * @return the exception to be thrown.
+	 */
+	protected BadRequestException corrupted(String fileName){
+		
+		Diagnostic d = new Diagnostic(Stage.RECEIVE, Severity.ERROR, fileName, 0, 0, "", "the content doesn't match its checksum.");
+		
+		answerFailure(Diagnostics.encode(Collections.singletonList(d)));
+		
+		return new BadRequestException();
+	}
+	
+	/**
+	 * Returns the result to be sent to the client. The diagnostics of a failed compilation are sent either encoded, or as text.
+	 * If a failed compilation has no errors to show, a default message is sent instead.
+	 * 
+	 * @param result the result of the compilation.
+	 * @param encoded {@code true} if the client reads the encoding of the diagnostics, {@code false} if it wants them as text.
+	 * @return the result to be sent.
+	 */
+	protected static CompilationResult toSend(CompilationResult result, boolean encoded){
+		
+		if(result.isSuccessful())
+			return result;
+		
+		return new CompilationResult(false, toSend(result.getContent(), encoded));
+	}
+	
+	/**
+	 * Returns the errors to be sent to the client, either encoded or as text.
+	 * If there are no errors to show, a default message is sent instead.
+	 * 
+	 * @param errors the encoding of the errors' diagnostics.
+	 * @param encoded {@code true} if the client reads the encoding of the diagnostics, {@code false} if it wants them as text.
+	 * @return the errors to be sent.
+	 */
+	protected static byte[] toSend(ByteBuffer errors, boolean encoded){
+		
+		List<Diagnostic> diagnostics;
+		
+		try {
+			diagnostics = Diagnostics.decode(errors);
+		}
+		
+		catch (IllegalArgumentException e) {
+			diagnostics = Collections.emptyList();
+		}
+		
+		if(diagnostics.isEmpty())
+			diagnostics = Collections.singletonList(new Diagnostic(Stage.SERVER, Severity.ERROR, "", 0, 0, "", ERROR_MSG));
+		
+		return encoded ? Diagnostics.encode(diagnostics, false) : Diagnostics.toText(diagnostics).getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,121 @@
+package robDex.protocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+
+import robDex.util.CompilationResult;
+
+/**
+ * This class is used to send the result of a compilation to a client : the header given by its protocol, then its content.
+ * 
+ * Nothing is copied by the server on the way. A content held in memory is written along with the header by a single gathering write,
+ * and a content left in a file is sent by the system from the file to the socket ({@link FileChannel#transferTo}), the file being closed with the response.
+ * The response can be sent to a non-blocking channel, bit by bit, as far as the client takes it.
+ */
+
+public class Response implements Closeable{
+	
+	private final ByteBuffer header;
+	private final ByteBuffer content;
+	private final CompilationResult result;
+	
+	private long sent;
+	
+	/**
+	 * The moment the response was encoded, as given by {@link System#nanoTime()}.
+	 */
+	private final long encoded = System.nanoTime();
+	
+	/**
+	 * Creates a response.
+	 * 
+	 * @param header the header of the response, given by the protocol.
+	 * @param result the result of the compilation, whose content follows the header.
+	 */
+	Response(ByteBuffer header, CompilationResult result){
+		
+		this.header = header;
+		this.result = result;
+		this.content = result.isInMemory() ? result.getContent() : null;
+	}
+	
+	/**
+	 * Returns the size of the response, header included.
+	 * 
+	 * @return the size, in bytes.
+	 */
+	public long getSize(){
+		return header.limit() + result.getSize();
+	}
+	
+	public boolean isSuccessful(){
+		return result.isSuccessful();
+	}
+	
+	public long getEncodingTime(){
+		return encoded;
+	}
+	
+	/**
+	 * Sends the response, as far as the channel takes it.
+	 * 
+	 * @param channel the client's channel.
+	 * @return {@code true} if the whole response is sent, {@code false} if the rest is to be sent when the channel can take it.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public boolean writeTo(SocketChannel channel) throws IOException{
+		
+		if(content != null){
+			
+			channel.write(new ByteBuffer[]{header, content});
+			
+			return !header.hasRemaining() && !content.hasRemaining();
+		}
+		
+		if(header.hasRemaining()){
+			
+			channel.write(header);
+			
+			if(header.hasRemaining())
+				return false;
+		}
+		
+		while(sent < result.getSize()){
+			
+			long n = result.getFile().transferTo(result.getOffset() + sent, result.getSize() - sent, channel);
+			
+			if(n == 0)
+				return false;
+			
+			sent += n;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Sends the whole response to a blocking channel.
+	 * 
+	 * @param channel the client's channel.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void sendTo(SocketChannel channel) throws IOException{
+		
+		try {
+			
+			while(!writeTo(channel));
+		}
+		
+		finally{
+			close();
+		}
+	}
+	
+	@Override
+	public void close() throws IOException{
+		result.close();
+	}
+}
@@ -0,0 +1,273 @@
+package robDex.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import robDex.exceptions.BadRequestException;
+import robDex.util.CompilationResult;
+import robDex.util.JavaSource;
+import robDex.util.Util;
+
+/**
+ * This class decodes the files sent by a client with the line-based protocol described in {@link robDex.Request},
+ * and encodes the answers of the server.
+ * Sizes are counted in bytes, and the files' contents are kept exactly as they were sent.
+ */
+
+public class TextProtocol extends Protocol{
+	
+	/**
+	 * Maximum length of a line, in bytes.
+	 */
+	private static final int MAX_LINE = 1024;
+	
+	private enum State { COUNT, NAME, SIZE, CONTENT, DONE }
+	
+	private State state = State.COUNT;
+	
+	/**
+	 * The line being received.
+	 */
+	private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+	
+	/**
+	 * {@code true} if the last line ended with a carriage return, which may be followed by a line feed.
+	 */
+	private boolean skipLF;
+	
+	private List<JavaSource> files;
+	private int filesCount;
+	private String fileName;
+	private byte[] content;
+	private int received;
+	private long checksum;
+	
+	@Override
+	public boolean decode(ByteBuffer in) throws BadRequestException{
+		
+		while(state != State.DONE && in.hasRemaining()){
+			
+			if(skipLF){
+				
+				skipLF = false;
+				
+				if(in.get(in.position()) == '\n'){
+					in.get();
+					continue;
+				}
+			}
+			
+			if(state == State.CONTENT){
+				
+				int n = Math.min(in.remaining(), content.length - received);
+				in.get(content, received, n);
+				
+				if(checksum != NO_CHECKSUM)
+					crc.update(content, received, n);
+				
+				received += n;
+				
+				if(received == content.length)
+					endFile();
+			}
+			
+			else{
+				
+				String l = readLine(in);
+				
+				if(l != null)
+					decodeLine(l);
+			}
+		}
+		
+		return state == State.DONE;
+	}
+	
+	@Override
+	public List<JavaSource> getFiles(){
+		return files;
+	}
+	
+	/**
+	 * Encodes the result of a compilation : its tag and the size of its content on a line each, then the content itself.
+	 * The connection carries a single request, whose ID isn't sent.
+	 */
+	@Override
+	public Response encode(int requestId, CompilationResult result){
+		
+		result = toSend(result, false);
+		int tag = result.isSuccessful() ? SUCCESS_TAG : ERROR_TAG;
+		
+		byte[] header = (tag + "\n" + result.getSize() + "\n").getBytes(StandardCharsets.US_ASCII);
+		
+		return new Response(ByteBuffer.wrap(header), result);
+	}
+	
+	private void decodeLine(String l) throws BadRequestException{
+		
+		switch(state){
+		
+		case COUNT:
+			
+			filesCount = (int) parse(l, MAX_FILES);
+			
+			if(!admit())
+				throw reject();
+			
+			files = new ArrayList<>(filesCount);
+			answer(SUCCESS_TAG);
+			
+			state = filesCount == 0 ? State.DONE : State.NAME;
+			break;
+		
+		case NAME:
+			
+			fileName = Util.filterFileName(l);
+			state = State.SIZE;
+			break;
+		
+		case SIZE:
+			
+			//the size may be followed by the checksum of the content
+			int space = l.indexOf(' ');
+			long size = parse(space < 0 ? l : l.substring(0, space), Long.MAX_VALUE);
+			
+			checksum = space < 0 ? NO_CHECKSUM : parseChecksum(l.substring(space + 1));
+			
+			if(!Util.isValid(fileName, size))
+				throw reject();
+			
+			answer(SUCCESS_TAG);
+			
+			content = new byte[(int) size];
+			received = 0;
+			crc.reset();
+			state = State.CONTENT;
+			
+			if(size == 0)
+				endFile();
+			
+			break;
+		
+		default:
+			throw new IllegalStateException(state.name());
+		}
+	}
+	
+	private void endFile() throws BadRequestException{
+		
+		if(checksum != NO_CHECKSUM && crc.getValue() != checksum){
+			
+			state = State.DONE;
+			throw corrupted(fileName);
+		}
+		
+		files.add(new JavaSource(fileName, content));
+		content = null;
+		
+		state = files.size() == filesCount ? State.DONE : State.NAME;
+	}
+	
+	/**
+	 * Reads a line ended by a line feed or a carriage return.
+	 * 
+	 * @param in the bytes received from the client.
+	 * @return the line, or {@code null} if its end isn't received yet.
+	 * @throws BadRequestException if the line is too long.
+	 */
+	private String readLine(ByteBuffer in) throws BadRequestException{
+		
+		while(in.hasRemaining()){
+			
+			byte b = in.get();
+			
+			if(b == '\n' || b == '\r'){
+				
+				skipLF = b == '\r';
+				
+				String l = new String(line.toByteArray(), Charset.defaultCharset());
+				line.reset();
+				
+				return l;
+			}
+			
+			if(line.size() == MAX_LINE)
+				throw reject();
+			
+			line.write(b);
+		}
+		
+		return null;
+	}
+	
+	private long parse(String l, long max) throws BadRequestException{
+		
+		try {
+			
+			long n = Long.parseLong(l);
+			
+			if(n >= 0 && n <= max)
+				return n;
+		}
+		
+		catch (NumberFormatException e) {}
+		
+		throw reject();
+	}
+	
+	/**
+	 * Parses the CRC-32 of a file's content, written in hexadecimal.
+	 * 
+	 * @param l the checksum sent by the client.
+	 * @return the checksum.
+	 * @throws BadRequestException if the checksum isn't valid.
+	 */
+	private long parseChecksum(String l) throws BadRequestException{
+		
+		try {
+			
+			long n = Long.parseLong(l.trim(), 16);
+			
+			if(n >= 0 && n <= 0xffffffffL)
+				return n;
+		}
+		
+		catch (NumberFormatException e) {}
+		
+		throw reject();
+	}
+	
+	@Override
+	protected void answerFailure(byte[] errors){
+		
+		errors = toSend(ByteBuffer.wrap(errors), false);
+		answer(ERROR_TAG);
+		
+		byte[] b = (errors.length + "\n").getBytes(StandardCharsets.US_ASCII);
+		answers.write(b, 0, b.length);
+		answers.write(errors, 0, errors.length);
+	}
+	
+	private void answer(int tag){
+		
+		byte[] b = (tag + "\n").getBytes(StandardCharsets.US_ASCII);
+		answers.write(b, 0, b.length);
+	}
+	
+	/**
+	 * Rejects the client's request.
+	 * 
+	 * @return the exception to be thrown.
+	 */
+	private BadRequestException reject(){
+		
+		answer(ERROR_TAG);
+		state = State.DONE;
+		
+		return new BadRequestException();
+	}
+}
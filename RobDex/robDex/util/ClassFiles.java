@@ -0,0 +1,228 @@
+package robDex.util;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class is used to tell whether class files need to be converted by retrolambda before being compiled into a DEX file.
+ * 
+ * Class files use java 8 features when their constant pool holds method handles, method types or {@code invokedynamic} call sites
+ * (lambdas and method references), or when they are interfaces with methods which aren't abstract (default and static methods).
+ * Other class files only need their version to be lowered to java 7's, their content being valid java 7 byte code.
+ */
+
+class ClassFiles {
+	
+	private static final int MAGIC = 0xCAFEBABE, JAVA_7 = 51, JAVA_8 = 52;
+	
+	private static final int UTF8 = 1, INTEGER = 3, FLOAT = 4, LONG = 5, DOUBLE = 6, CLASS = 7, STRING = 8, FIELD_REF = 9, METHOD_REF = 10,
+			INTERFACE_METHOD_REF = 11, NAME_AND_TYPE = 12, METHOD_HANDLE = 15, METHOD_TYPE = 16, INVOKE_DYNAMIC = 18;
+	
+	private static final int ACC_INTERFACE = 0x0200, ACC_ABSTRACT = 0x0400;
+	
+	/**
+	 * Offset of the major version in a class file.
+	 */
+	private static final int MAJOR_VERSION = 6;
+	
+	// Suppresses default constructor, ensuring non-instantiability.
+	private ClassFiles(){}
+	
+	/**
+	 * Tells whether class files must be converted by retrolambda.
+	 * 
+	 * @param classes the class files, indexed by their internal name.
+	 * @return {@code true} if one of the class files uses java 8 features, or can't be read ; {@code false} otherwise.
+	 */
+	static boolean needRetroLambda(Map<String, byte[]> classes){
+		
+		for(byte[] c : classes.values())
+			if(needsRetroLambda(c))
+				return true;
+		
+		return false;
+	}
+	
+	/**
+	 * Returns copies of class files of java 8 at most, lowered to the version of java 7.
+	 * 
+	 * @param classes the class files, indexed by their internal name, none of which needs to be converted by retrolambda.
+	 * @return the copies, indexed by their internal name.
+	 */
+	static Map<String, byte[]> toJava7(Map<String, byte[]> classes){
+		
+		Map<String, byte[]> java7 = new HashMap<>();
+		
+		for(Map.Entry<String, byte[]> e : classes.entrySet()){
+			
+			byte[] c = e.getValue();
+			
+			if(ByteBuffer.wrap(c).getShort(MAJOR_VERSION) > JAVA_7){
+				
+				c = c.clone();
+				ByteBuffer.wrap(c).putShort(MAJOR_VERSION, (short) JAVA_7);
+			}
+			
+			java7.put(e.getKey(), c);
+		}
+		
+		return java7;
+	}
+	
+	/**
+	 * Tells whether a class file must be converted by retrolambda.
+	 * Class files of versions after java 8 always are, since their byte code may use features unknown to java 7.
+	 * 
+	 * @param classFile the class file.
+	 * @return {@code true} if the class file uses java 8 features, or can't be read ; {@code false} otherwise.
+	 */
+	private static boolean needsRetroLambda(byte[] classFile){
+		
+		ByteBuffer in = ByteBuffer.wrap(classFile);
+		
+		try {
+			
+			if(in.getInt() != MAGIC)
+				return true;
+			
+			in.getShort();
+			
+			if(in.getShort() > JAVA_8)
+				return true;
+			
+			String[] utf8 = readConstantPool(in);
+			
+			if(utf8 == null)
+				return true;
+			
+			int access = in.getShort();
+			
+			//this class, super class
+			in.position(in.position() + 4);
+			
+			int interfaces = in.getShort() & 0xffff;
+			in.position(in.position() + interfaces * 2);
+			
+			skipMembers(in);
+			
+			return (access & ACC_INTERFACE) != 0 && hasConcreteMethods(in, utf8);
+		}
+		
+		catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+			return true;
+		}
+	}
+	
+	/**
+	 * Reads the constant pool of a class file.
+	 * 
+	 * @param in the class file, positioned at the size of the constant pool.
+	 * @return the UTF-8 entries of the constant pool, by index ; {@code null} if the constant pool holds java 8 entries or unknown ones.
+	 */
+	private static String[] readConstantPool(ByteBuffer in){
+		
+		int count = in.getShort() & 0xffff;
+		String[] utf8 = new String[count];
+		
+		for(int i = 1; i < count; i++){
+			
+			switch(in.get()){
+			
+			case UTF8:
+				
+				int length = in.getShort() & 0xffff;
+				utf8[i] = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+				in.position(in.position() + length);
+				break;
+			
+			case CLASS:
+			case STRING:
+				in.position(in.position() + 2);
+				break;
+			
+			case INTEGER:
+			case FLOAT:
+			case FIELD_REF:
+			case METHOD_REF:
+			case INTERFACE_METHOD_REF:
+			case NAME_AND_TYPE:
+				in.position(in.position() + 4);
+				break;
+			
+			//8-byte constants take two entries
+			case LONG:
+			case DOUBLE:
+				in.position(in.position() + 8);
+				i++;
+				break;
+			
+			case METHOD_HANDLE:
+			case METHOD_TYPE:
+			case INVOKE_DYNAMIC:
+			default:
+				return null;
+			}
+		}
+		
+		return utf8;
+	}
+	
+	/**
+	 * Skips the fields of a class file.
+	 * 
+	 * @param in the class file, positioned at the number of fields.
+	 */
+	private static void skipMembers(ByteBuffer in){
+		
+		int count = in.getShort() & 0xffff;
+		
+		for(int i = 0; i < count; i++){
+			
+			//access flags, name, descriptor
+			in.position(in.position() + 6);
+			skipAttributes(in);
+		}
+	}
+	
+	/**
+	 * Tells whether an interface has methods which aren't abstract, its static initializer apart.
+	 * 
+	 * @param in the class file, positioned at the number of methods.
+	 * @param utf8 the UTF-8 entries of the constant pool.
+	 * @return {@code true} if the interface has default or static methods, {@code false} otherwise.
+	 */
+	private static boolean hasConcreteMethods(ByteBuffer in, String[] utf8){
+		
+		int count = in.getShort() & 0xffff;
+		
+		for(int i = 0; i < count; i++){
+			
+			int access = in.getShort();
+			String name = utf8[in.getShort() & 0xffff];
+			
+			if((access & ACC_ABSTRACT) == 0 && !"<clinit>".equals(name))
+				return true;
+			
+			in.getShort();
+			skipAttributes(in);
+		}
+		
+		return false;
+	}
+	
+	private static void skipAttributes(ByteBuffer in){
+		
+		int count = in.getShort() & 0xffff;
+		
+		for(int i = 0; i < count; i++){
+			
+			in.getShort();
+			
+			int length = in.getInt();
+			in.position(in.position() + length);
+		}
+	}
+}
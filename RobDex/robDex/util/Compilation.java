@@ -0,0 +1,174 @@
+package robDex.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class holds the state of the compilation of a request, from the java sources to the DEX file.
+ * Everything is kept in memory ; the request's directory is only used by the stages run as separate processes.
+ */
+
+public class Compilation {
+	
+	/**
+	 * Directory of the request, created only if a stage needs to work on files.
+	 */
+	private final String directory;
+	
+	private final List<JavaSource> sources;
+	
+	/**
+	 * Address of the client, {@code null} for the compilations run by the server itself.
+	 */
+	private final InetAddress client;
+	
+	/**
+	 * Class files produced by the last stage, indexed by their internal name (such as {@code pkg/Main$Inner}).
+	 */
+	private Map<String, byte[]> classes = new HashMap<>();
+	
+	/**
+	 * Directory holding a copy of {@link #classes}, {@code null} if they are only in memory.
+	 */
+	private String classesDirectory;
+	
+	private byte[] dex;
+	
+	/**
+	 * Errors written as text by the stages, until they are parsed into {@link #diagnostics}.
+	 */
+	private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+	
+	/**
+	 * Errors, warnings and notes reported by the stages.
+	 */
+	private final List<Diagnostic> diagnostics = new ArrayList<>();
+	
+	/**
+	 * Creates the compilation of a request.
+	 * 
+	 * @param directory directory in which the request may write files.
+	 * @param sources the java files received from the client.
+	 */
+	public Compilation(String directory, List<JavaSource> sources){
+		this(directory, sources, null);
+	}
+	
+	/**
+	 * Creates the compilation of a client's request.
+	 * 
+	 * @param directory directory in which the request may write files.
+	 * @param sources the java files received from the client.
+	 * @param client the address of the client.
+	 */
+	public Compilation(String directory, List<JavaSource> sources, InetAddress client){
+		
+		this.directory = directory;
+		this.sources = sources;
+		this.client = client;
+	}
+	
+	public String getDirectory(){
+		return directory;
+	}
+	
+	/**
+	 * Returns the path of the request's directory, creating it if needed.
+	 * 
+	 * @return the path of the request's directory.
+	 */
+	public String makeDirectory(){
+		
+		new File(directory).mkdirs();
+		
+		return directory;
+	}
+	
+	/**
+	 * Returns the path of a sub-directory of the request's directory, creating it if needed.
+	 * 
+	 * @param name name of the sub-directory.
+	 * @return the path of the sub-directory.
+	 */
+	public String makeDirectory(String name){
+		
+		String path = directory + File.separator + name;
+		new File(path).mkdirs();
+		
+		return path;
+	}
+	
+	public InetAddress getClient(){
+		return client;
+	}
+	
+	public List<JavaSource> getSources(){
+		return sources;
+	}
+	
+	public Map<String, byte[]> getClasses(){
+		return classes;
+	}
+	
+	public String getClassesDirectory(){
+		return classesDirectory;
+	}
+	
+	/**
+	 * Replaces the class files of the compilation.
+	 * 
+	 * @param classes the new class files, indexed by their internal name.
+	 * @param directory directory holding a copy of the class files, {@code null} if they are only in memory.
+	 */
+	public void setClasses(Map<String, byte[]> classes, String directory){
+		
+		this.classes = classes;
+		this.classesDirectory = directory;
+	}
+	
+	public byte[] getDex(){
+		return dex;
+	}
+	
+	public void setDex(byte[] dex){
+		this.dex = dex;
+	}
+	
+	/**
+	 * Returns the stream in which the stages write their errors as text.
+	 * 
+	 * @return the errors' stream.
+	 */
+	public ByteArrayOutputStream getLog(){
+		return log;
+	}
+	
+	/**
+	 * Parses the errors written in the log by a stage, and adds them to the diagnostics of the compilation. The log is then emptied.
+	 * 
+	 * @param stage the stage which wrote the log.
+	 */
+	public void collectLog(Diagnostic.Stage stage){
+		
+		if(log.size() == 0)
+			return;
+		
+		//the tools run inside the server and the processes write their errors in the platform's charset
+		diagnostics.addAll(Diagnostics.parse(stage, new String(log.toByteArray(), Charset.defaultCharset())));
+		log.reset();
+	}
+	
+	public void report(Diagnostic diagnostic){
+		diagnostics.add(diagnostic);
+	}
+	
+	public List<Diagnostic> getDiagnostics(){
+		return diagnostics;
+	}
+}
@@ -0,0 +1,127 @@
+package robDex.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class holds what is sent back to the client once its files are compiled :
+ * the DEX file if the compilation was successful, the encoding of its diagnostics otherwise (see {@link Diagnostics}).
+ * 
+ * The content is either held in memory, or left in a file from which it is sent without being copied by the server.
+ * The file is opened when the result is created, so that it can still be read once it is deleted ; it is closed by {@link #close()}.
+ */
+
+public class CompilationResult implements Closeable{
+	
+	private final boolean successful;
+	
+	/**
+	 * The content, {@code null} if it is in a file.
+	 */
+	private final ByteBuffer content;
+	
+	private final FileChannel file;
+	private final long offset, size;
+	
+	/**
+	 * Creates a result held in memory.
+	 * 
+	 * @param successful {@code true} if the compilation was successful, {@code false} otherwise.
+	 * @param content the content of the DEX file if the compilation was successful, the errors otherwise.
+	 */
+	public CompilationResult(boolean successful, byte[] content){
+		this(successful, ByteBuffer.wrap(content));
+	}
+	
+	/**
+	 * Creates a result held in memory.
+	 * 
+	 * @param successful {@code true} if the compilation was successful, {@code false} otherwise.
+	 * @param content the content of the DEX file if the compilation was successful, the errors otherwise, from its position to its limit.
+	 */
+	public CompilationResult(boolean successful, ByteBuffer content){
+		
+		this.successful = successful;
+		this.content = content.asReadOnlyBuffer();
+		this.file = null;
+		this.offset = 0;
+		this.size = content.remaining();
+	}
+	
+	/**
+	 * Creates a result left in a file. The result is to be sent once, and closed.
+	 * 
+	 * @param successful {@code true} if the compilation was successful, {@code false} otherwise.
+	 * @param file the opened file holding the content.
+	 * @param offset the position of the content in the file.
+	 * @param size the size of the content.
+	 */
+	public CompilationResult(boolean successful, FileChannel file, long offset, long size){
+		
+		this.successful = successful;
+		this.content = null;
+		this.file = file;
+		this.offset = offset;
+		this.size = size;
+	}
+	
+	public boolean isSuccessful(){
+		return successful;
+	}
+	
+	public long getSize(){
+		return size;
+	}
+	
+	/**
+	 * Tells whether the content is held in memory.
+	 * 
+	 * @return {@code true} if the content is given by {@link #getContent()}, {@code false} if it is in {@link #getFile()}.
+	 */
+	public boolean isInMemory(){
+		return content != null;
+	}
+	
+	/**
+	 * Returns the content held in memory. Each call gives a new buffer, so that the content can be sent to several clients at once.
+	 * 
+	 * @return the content, from the buffer's position to its limit.
+	 */
+	public ByteBuffer getContent(){
+		return content.duplicate();
+	}
+	
+	public FileChannel getFile(){
+		return file;
+	}
+	
+	public long getOffset(){
+		return offset;
+	}
+	
+	/**
+	 * Returns a copy of this result, whose content is held outside of the java heap.
+	 * Such a content is written to the clients' sockets as is, instead of being copied into a temporary buffer on each write.
+	 * 
+	 * @return the copy of the result.
+	 */
+	public CompilationResult toDirect(){
+		
+		ByteBuffer direct = ByteBuffer.allocateDirect((int) size);
+		direct.put(getContent()).flip();
+		
+		return new CompilationResult(successful, direct);
+	}
+	
+	/**
+	 * Closes the file holding the content, if there is one.
+	 */
+	@Override
+	public void close() throws IOException{
+		
+		if(file != null)
+			file.close();
+	}
+}
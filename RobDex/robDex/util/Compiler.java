@@ -2,12 +2,42 @@ package robDex.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Stream;
 
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import robDex.access.AccessControl;
+import robDex.cache.DexCache;
 import robDex.exceptions.FailedCompilationException;
+import robDex.metrics.Metrics;
+import robDex.metrics.Metrics.Phase;
+import robDex.util.Diagnostic.Severity;
+import robDex.util.Diagnostic.Stage;
 import robDex.util.option.OptionManager;
+import robDex.worker.WorkerPool;
 
 /**
  * This class is used to compile java files into a DEX file.
@@ -20,11 +50,87 @@ import robDex.util.option.OptionManager;
 public class Compiler {
 	
 	private static final String errorFileName = "error.log";
-	private static final String dexFileName = "out.dex";
+	static final String dexFileName = "out.dex";
+	
+	/**
+	 * Compiler of the running JDK, shared by all the requests so that it stays loaded and warm.
+	 * {@code null} if the server runs on a JRE, in which case {@code javac} processes are used instead.
+	 */
+	private static final JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+	
+	/**
+	 * Options making javac write class files of java 8 whatever the version of its JDK, since retrolambda and the dexers read no later ones :
+	 * {@code --release 8} where javac supports it, which also limits the API to java 8's, or {@code -source 8 -target 8} on a java 8 JDK.
+	 */
+	private static final List<String> internalJava8 = javac != null && javac.isSupportedOption("--release") >= 0 ? Arrays.asList("--release", "8")
+			: Arrays.asList("-source", "8", "-target", "8");
+	
+	/**
+	 * The same options for the {@code javac} processes, whose JDK may not be the server's.
+	 */
+	private static List<String> externalJava8;
+	
+	/**
+	 * File managers released by previous compilations.
+	 * Reusing them spares the opening and indexing of the platform's classes on every request.
+	 */
+	private static final Queue<StandardJavaFileManager> fileManagers = new ConcurrentLinkedQueue<>();
+	
+	/**
+	 * Limits the number of compilations run at once, so that they don't compete for the processors
+	 * however many requests the server is handling. The slots are shared fairly between the clients.
+	 */
+	private static FairSlots slots;
 	
 	// Suppresses default constructor, ensuring non-instantiability.
 	private Compiler(){}
 	
+	/**
+	 * Initializes the compiler according to the program's options, loading the dexer library with the internal compiler.
+	 * 
+	 * @throws IllegalArgumentException if the dexer library can't be loaded.
+	 */
+	public static void init(){
+		
+		slots = new FairSlots(OptionManager.getCompileSlots());
+		
+		if(OptionManager.useInternalCompiler())
+			Dexer.load();
+		
+		if(!OptionManager.useInternalCompiler() || javac == null)
+			externalJava8 = supportsRelease() ? Arrays.asList("--release", "8") : Arrays.asList("-source", "8", "-target", "8");
+	}
+	
+	/**
+	 * Checks whether the {@code javac} command supports {@code --release}, which appeared with java 9.
+	 * 
+	 * @return {@code true} if it does, {@code false} if it doesn't or can't be run.
+	 */
+	private static boolean supportsRelease(){
+		
+		try {
+			
+			Process p = new ProcessBuilder("javac", "--release", "8", "-version").redirectErrorStream(true).start();
+			
+			try(InputStream in = p.getInputStream()){
+				
+				while(in.read() != -1);
+			}
+			
+			return p.waitFor() == 0;
+		}
+		
+		catch (IOException e) {
+			return false;
+		}
+		
+		catch (InterruptedException e) {
+			
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	
 	/**
 	 * Starts a process and waits for its death.
 	 * 
@@ -42,15 +148,25 @@ public class Compiler {
 		if(errorFileName != null)
 			pb.redirectError(new File(errorFileName));
 		
+		Process p;
+		
+		try {
+			p = pb.start();
+		} catch (IOException e) {
+			throw new FailedCompilationException(e);
+		}
+		
 		try {
-			Process p = pb.start();
 			
 			int exitStatus = p.waitFor();
 									
 			if(exitStatus != 0)
 				throw new FailedCompilationException(exitStatus);
 						
-		} catch (IOException | InterruptedException e) {
+		} catch (InterruptedException e) {
+			
+			//the request's deadline expired : the process is dead before its workspace is released
+			Util.kill(p);
 			throw new FailedCompilationException(e);
 		}
 	}
@@ -95,90 +211,513 @@ public class Compiler {
 	}
 	
 	/**
-	 * Compile a list of java files into class files.
+	 * Compiles the java files of a compilation into class files.
 	 * 
-	 * @param idir java files' location.
-	 * @param odir directory in which the class files will be located.
-	 * @param fileNames java files' names.
-	 * @throws FailedCompilationException if the process' exit status is different from {@code 0}.
+	 * @param compilation the compilation whose sources are to be compiled.
+	 * @throws FailedCompilationException if the compilation fails.
 	 */
-	private static void compileIntoClass(String idir, String odir, List<String> fileNames) throws FailedCompilationException{
+	private static void compileIntoClass(Compilation compilation) throws FailedCompilationException{
+		
+		if(OptionManager.useInternalCompiler() && javac != null){
+			
+			compileInternally(compilation);
+			return;
+		}
 		
+		String idir = compilation.makeDirectory();
+		String odir = compilation.makeDirectory("javacdir");
 		String errorPath = idir + File.separator + errorFileName;
 		
-		startCommandProcess(idir, errorPath, fileNames, "javac", "-d", odir, "-cp", OptionManager.getJar());
+		List<String> fileNames = new ArrayList<>(compilation.getSources().size());
+		
+		try {
+			
+			for(JavaSource source : compilation.getSources()){
+				
+				Files.write(Paths.get(idir, source.getName()), source.getContent());
+				fileNames.add(source.getName());
+			}
+			
+			List<String> options = new ArrayList<>(Arrays.asList("-d", odir, "-cp", OptionManager.getJar()));
+			options.addAll(externalJava8);
+			
+			if(OptionManager.getMaxErrors() > 0)
+				options.addAll(Arrays.asList("-Xmaxerrs", Integer.toString(OptionManager.getMaxErrors()), "-Xmaxwarns", Integer.toString(OptionManager.getMaxErrors())));
+			
+			startCommandProcess(idir, errorPath, fileNames, "javac", options.toArray(new String[0]));
+		}
+		
+		catch (IOException e) {
+			throw new FailedCompilationException(e);
+		}
+		
+		finally{
+			readLog(compilation, errorPath);
+		}
+		
+		compilation.setClasses(readClasses(odir), odir);
 	}
 	
 	/**
-	 * Convert java 8 class files to java 7 class files.
+	 * Compiles the java files of a compilation into class files, using the compiler of the server's JVM.
+	 * Both the java files and the class files stay in memory, and the dependencies are read from their shared index.
+	 * The behavior is the same as {@code javac --release 8 -cp jar files}, except that the compilation is stopped once {@code --maxErrors} errors are reported.
+	 * The errors are given to the compilation as diagnostics.
 	 * 
-	 * @param idir java 8 class files' location.
-	 * @param odir directory in which the java 7 class files will be located.
-	 * @param fileNames class files' names.
-	 * @throws FailedCompilationException if the process' exit status is different from {@code 0}.
+	 * @param compilation the compilation whose sources are to be compiled.
+	 * @throws FailedCompilationException if the compilation fails.
 	 */
-	private static void convertLambda(String idir, String odir, List<String> fileNames) throws FailedCompilationException{
+	private static void compileInternally(Compilation compilation) throws FailedCompilationException{
+		
+		Map<String, byte[]> classes = new HashMap<>();
+		
+		StandardJavaFileManager fileManager = fileManagers.poll();
+		
+		if(fileManager == null)
+			fileManager = javac.getStandardFileManager(null, null, null);
 		
-		String classPath = "-Dretrolambda.classpath=" + idir + File.pathSeparatorChar + OptionManager.getClassPath();
+		DiagnosticReporter reporter = new DiagnosticReporter(compilation, OptionManager.getMaxErrors());
+		boolean success;
 		
-		String rl = OptionManager.getRetroLambda();
+		try {
+			
+			Writer err = new OutputStreamWriter(compilation.getLog());
+			
+			//the dependencies are given by the shared index, the server's own classpath must not be seen
+			fileManager.setLocation(StandardLocation.CLASS_PATH, Collections.<File>emptyList());
+			
+			JavaFileManager memoryFileManager = new MemoryFileManager(fileManager, classes);
+			
+			success = javac.getTask(err, memoryFileManager, reporter, internalJava8, null, compilation.getSources()).call();
+			
+			err.flush();
+			
+		} catch (IOException | RuntimeException e) {
+			
+			if(!reporter.stopped)
+				throw new FailedCompilationException(e);
+			
+			success = false;
+		}
 		
-		String retroDir = new File(rl).getAbsoluteFile().getParent();
-		rl = new File(rl).getName();
+		finally{
+			fileManagers.offer(fileManager);
+		}
 		
-		String inOption = "-Dretrolambda.inputDir=" + idir;
-		String outOption = "-Dretrolambda.outputDir=" + odir;
+		if(!success)
+			throw new FailedCompilationException(1);
 		
-		startCommandProcess(retroDir, idir + File.separator + errorFileName, null, "java", inOption, outOption, classPath, "-jar", rl);
+		compilation.setClasses(classes, null);
 	}
 	
 	/**
-	 * Extracts the content of a jar file.
+	 * Convert the java 8 class files of a compilation to java 7 class files.
+	 * When possible with the internal compiler, retrolambda is run inside the server's JVM ; it is launched as a separate process otherwise.
 	 * 
-	 * @throws FailedCompilationException if the process' exit status is different from {@code 0}.
+	 * @param compilation the compilation whose class files are to be converted.
+	 * @throws FailedCompilationException if the conversion fails.
 	 */
-	public static void extractJar() throws FailedCompilationException{
+	private static void convertLambda(Compilation compilation) throws FailedCompilationException{
+		
+		String idir = writeClasses(compilation, "javacdir");
+		String odir = compilation.makeDirectory("java7dir");
+		String errorPath = idir + File.separator + errorFileName;
+		String classPath = idir + File.pathSeparatorChar + OptionManager.getClassPath();
+		
+		if(OptionManager.useInternalCompiler() && RetroLambda.isAvailable())
+			RetroLambda.convert(idir, odir, classPath, new PrintStream(compilation.getLog(), true));
+		
+		else{
+			
+			String rl = OptionManager.getRetroLambda();
+			
+			String retroDir = new File(rl).getAbsoluteFile().getParent();
+			rl = new File(rl).getName();
+			
+			String inOption = "-Dretrolambda.inputDir=" + idir;
+			String outOption = "-Dretrolambda.outputDir=" + odir;
+			String classPathOption = "-Dretrolambda.classpath=" + classPath;
+			
+			try {
+				startCommandProcess(retroDir, errorPath, null, "java", inOption, outOption, classPathOption, "-jar", rl);
+			}
+			
+			finally{
+				readLog(compilation, errorPath);
+			}
+		}
 		
-		startCommandProcess(OptionManager.getClassPath(), null, "jar", "xf", OptionManager.getJar());
+		compilation.setClasses(readClasses(odir), odir);
 	}
 	
 	/**
-	 * Compiles a list of class files  into a DEX file.
+	 * Compiles the class files of a compilation into a DEX file.
 	 * If class files are compiled using java 8, the result is undefined.
+	 * With the internal compiler, the dexer library is used if one was given ; dx is launched as a separate process otherwise.
 	 * 
-	 * @param idir class files' location.
-	 * @param odir directory in which the DEX file will be located.
-	 * @param fileNames class files' names.
-	 * @throws FailedCompilationException if the process' exit status is different from {@code 0}.
+	 * @param compilation the compilation whose class files are to be compiled.
+	 * @throws FailedCompilationException if the compilation fails.
 	 */
-	private static void compileIntoDex(String idir, String odir, List<String> fileNames) throws FailedCompilationException{
+	private static void compileIntoDex(Compilation compilation) throws FailedCompilationException{
+		
+		Dexer dexer = OptionManager.useInternalCompiler() ? Dexer.get() : null;
+		
+		if(dexer != null){
+			
+			if(dexer instanceof IncrementalDexer && DexCache.isEnabled())
+				compilation.setDex(compileIntoDexIncrementally(dexer, compilation));
+			
+			else
+				compilation.setDex(dexer.dex(compilation));
+			
+			return;
+		}
+		
+		String idir = writeClasses(compilation, "java7dir");
+		String output = compilation.makeDirectory() + File.separator + dexFileName;
+		
+		List<String> fileNames = new ArrayList<>(compilation.getClasses().size());
 		
-		startCommandProcess(idir, fileNames, OptionManager.getDx(), "--dex", "--output=" + odir + File.separator + dexFileName);
+		for(String name : compilation.getClasses().keySet())
+			fileNames.add(name.replace('/', File.separatorChar) + ".class");
+		
+		startCommandProcess(idir, fileNames, OptionManager.getDx(), "--dex", "--output=" + output);
+		
+		try {
+			compilation.setDex(Files.readAllBytes(Paths.get(output)));
+		}
+		
+		catch (IOException e) {
+			throw new FailedCompilationException(e);
+		}
 	}
 	
 	/**
-	 * Compiles a list of java files into a DEX file.
+	 * Compiles the class files of a compilation into a DEX file, reusing the DEX code of the class files compiled by previous requests.
+	 * Only the class files missing from the cache are compiled, each into its own DEX file ; all the DEX files are then merged.
+	 * If the dexer doesn't give the DEX file of each class file, the class files are compiled into a DEX file at once instead.
 	 * 
-	 * @param dir java files' location.
-	 * @param files java files' names.
-	 * @throws FailedCompilationException if the process' exit status is different from {@code 0}.
+	 * @param dexer the dexer used to compile and merge the DEX files, an {@link IncrementalDexer}.
+	 * @param compilation the compilation whose class files are to be compiled.
+	 * @return the content of the DEX file.
+	 * @throws FailedCompilationException if the compilation fails.
 	 */
-	public static void compile(String dir, List<File> files) throws FailedCompilationException{
-
-		String javacdir = dir + File.separator + "javacdir";
-		File javacDir = new File(javacdir);
-		javacDir.mkdirs();
+	private static byte[] compileIntoDexIncrementally(Dexer dexer, Compilation compilation) throws FailedCompilationException{
 		
-		String java7Dir = dir + File.separator + "java7dir";
-		new File(java7Dir).mkdirs();
+		IncrementalDexer incremental = (IncrementalDexer) dexer;
 		
-		compileIntoClass(dir, javacdir, Util.getNames(files));
+		//sorted by class, so that identical requests get identical DEX files
+		Map<String, byte[]> dexes = new TreeMap<>();
+		Map<String, byte[]> missing = new HashMap<>();
+		Map<String, String> keys = new HashMap<>();
 		
-		List<String> classFileNames = Util.getNames(Arrays.asList(javacDir.listFiles()));
-		classFileNames.removeIf(n -> !n.endsWith(".class"));
+		for(Map.Entry<String, byte[]> e : compilation.getClasses().entrySet()){
+			
+			String key = DexCache.key(e.getValue());
+			byte[] dex = DexCache.get(key);
+			
+			keys.put(e.getKey(), key);
+			
+			if(dex == null)
+				missing.put(e.getKey(), e.getValue());
+			
+			else
+				dexes.put(e.getKey(), dex);
+		}
 		
-		convertLambda(javacdir, java7Dir, classFileNames);
+		if(!missing.isEmpty())
+			for(Map.Entry<String, byte[]> e : incremental.dexEachClass(missing, compilation).entrySet()){
+				
+				String key = keys.get(e.getKey());
+				
+				if(key != null)
+					DexCache.put(key, e.getValue());
+				
+				dexes.put(e.getKey(), e.getValue());
+			}
 		
-		compileIntoDex(java7Dir, dir, classFileNames);
+		//a class file without its own DEX file would be missing from the merged DEX file
+		if(!dexes.keySet().equals(compilation.getClasses().keySet()))
+			return dexer.dex(compilation);
+		
+		return incremental.merge(dexes.values(), compilation);
+	}
+	
+	/**
+	 * Compiles the java files of a compilation into a DEX file, once the number of compilations run at once allows it
+	 * and the compilations of the other clients had their share.
+	 * Retrolambda is only run if the class files use java 8 features. With {@code --compiler worker}, all the stages are run by a worker JVM.
+	 * The DEX file and the errors are given by the compilation.
+	 * 
+	 * @param compilation the compilation to be run.
+	 * @throws FailedCompilationException if any stage of the compilation fails.
+	 */
+	public static void compile(Compilation compilation) throws FailedCompilationException{
+		
+		try {
+			slots.acquire(compilation.getClient(), AccessControl.getWeight(compilation.getClient()));
+		}
+		
+		catch (InterruptedException e) {
+			throw new FailedCompilationException(e);
+		}
+		
+		if(OptionManager.useWorkers()){
+			
+			try {
+				WorkerPool.compile(compilation);
+			}
+			
+			finally{
+				slots.release();
+			}
+			
+			return;
+		}
+		
+		Phase phase = Phase.JAVAC;
+		Stage stage = Stage.JAVAC;
+		long start = System.nanoTime();
+		
+		try {
+			
+			compileIntoClass(compilation);
+			compilation.collectLog(stage);
+			start = Metrics.record(phase, start);
+			
+			//class files without java 8 features go straight to the dexer, once lowered to java 7
+			if(ClassFiles.needRetroLambda(compilation.getClasses())){
+				
+				phase = Phase.RETROLAMBDA;
+				stage = Stage.RETROLAMBDA;
+				convertLambda(compilation);
+				compilation.collectLog(stage);
+				start = Metrics.record(phase, start);
+			}
+			
+			else{
+				
+				compilation.setClasses(ClassFiles.toJava7(compilation.getClasses()), null);
+				start = Metrics.skip(Phase.RETROLAMBDA, start);
+			}
+			
+			phase = Phase.DEX;
+			stage = Stage.DEX;
+			compileIntoDex(compilation);
+		}
+		
+		finally{
+			
+			//the last stage is measured and its errors are parsed whether it succeeded or not
+			compilation.collectLog(stage);
+			Metrics.record(phase, start);
+			slots.release();
+		}
+	}
+	
+	/**
+	 * Returns the number of compilations being run.
+	 * 
+	 * @return the number of compilations.
+	 */
+	public static int getActiveCompilations(){
+		return slots.getActive();
+	}
+	
+	/**
+	 * Returns the number of compilations waiting for one of the others to end.
+	 * 
+	 * @return the number of compilations.
+	 */
+	public static int getWaitingCompilations(){
+		return slots.getWaiting();
+	}
+	
+	/**
+	 * Makes sure the class files of a compilation are in a directory, writing them if they are only in memory.
+	 * 
+	 * @param compilation the compilation whose class files are needed on the file system.
+	 * @param name name of the sub-directory in which the class files are to be written.
+	 * @return the directory containing the class files.
+	 * @throws FailedCompilationException if the class files can't be written.
+	 */
+	static String writeClasses(Compilation compilation, String name) throws FailedCompilationException{
+		
+		if(compilation.getClassesDirectory() != null)
+			return compilation.getClassesDirectory();
+		
+		String dir = compilation.makeDirectory(name);
+		
+		try {
+			
+			for(Map.Entry<String, byte[]> e : compilation.getClasses().entrySet()){
+				
+				Path p = Paths.get(dir, e.getKey() + ".class");
+				Files.createDirectories(p.getParent());
+				Files.write(p, e.getValue());
+			}
+		} 
+		
+		catch (IOException e) {
+			throw new FailedCompilationException(e);
+		}
+		
+		compilation.setClasses(compilation.getClasses(), dir);
+		
+		return dir;
+	}
+	
+	/**
+	 * Reads the class files contained in a directory and its sub-directories.
+	 * 
+	 * @param dir the directory to be read.
+	 * @return the class files, indexed by their internal name.
+	 * @throws FailedCompilationException if the class files can't be read.
+	 */
+	private static Map<String, byte[]> readClasses(String dir) throws FailedCompilationException{
+		
+		Map<String, byte[]> classes = new HashMap<>();
+		Path root = Paths.get(dir);
+		
+		try(Stream<Path> paths = Files.walk(root)){
+			
+			for(Path p : (Iterable<Path>) paths::iterator){
+				
+				String name = root.relativize(p).toString().replace(File.separatorChar, '/');
+				
+				if(name.endsWith(".class"))
+					classes.put(name.substring(0, name.length() - ".class".length()), Files.readAllBytes(p));
+			}
+		}
+		
+		catch (IOException e) {
+			throw new FailedCompilationException(e);
+		}
+		
+		return classes;
+	}
+	
+	/**
+	 * Appends the errors written by a process to the log of a compilation.
+	 * 
+	 * @param compilation the compilation whose log is to be completed.
+	 * @param errorPath file to which the process' errors were redirected.
+	 */
+	private static void readLog(Compilation compilation, String errorPath){
+		
+		try {
+			
+			Path p = Paths.get(errorPath);
+			
+			if(Files.exists(p))
+				compilation.getLog().write(Files.readAllBytes(p));
+		}
+		
+		catch (IOException e) {
+			//the errors are lost, the client will receive a default message
+		}
+	}
+	
+	/**
+	 * This class gives the diagnostics of javac to a compilation. Once the maximum number of errors is reached, it stops javac by throwing
+	 * an exception, which javac passes on to its caller : the remaining files aren't analyzed. At most as many warnings are kept.
+	 */
+	private static class DiagnosticReporter implements DiagnosticListener<JavaFileObject>{
+		
+		private final Compilation compilation;
+		
+		/**
+		 * Maximum number of errors, {@code 0} if javac is never stopped.
+		 */
+		private final int maxErrors;
+		
+		private int errors, warnings;
+		
+		/**
+		 * Whether javac was stopped by the reporter.
+		 */
+		private boolean stopped;
+		
+		DiagnosticReporter(Compilation compilation, int maxErrors){
+			
+			this.compilation = compilation;
+			this.maxErrors = maxErrors;
+		}
+		
+		@Override
+		public void report(javax.tools.Diagnostic<? extends JavaFileObject> d){
+			
+			Severity severity;
+			
+			switch(d.getKind()){
+			
+			case ERROR:
+				severity = Severity.ERROR;
+				break;
+			
+			case WARNING:
+			case MANDATORY_WARNING:
+				
+				if(maxErrors > 0 && warnings++ >= maxErrors)
+					return;
+				
+				severity = Severity.WARNING;
+				break;
+			
+			default:
+				severity = Severity.NOTE;
+			}
+			
+			String file = d.getSource() == null ? "" : d.getSource().getName();
+			int line = d.getLineNumber() == javax.tools.Diagnostic.NOPOS ? 0 : (int) d.getLineNumber();
+			int column = d.getColumnNumber() == javax.tools.Diagnostic.NOPOS ? 0 : (int) d.getColumnNumber();
+			String code = d.getCode() == null ? "" : d.getCode();
+			
+			compilation.report(new Diagnostic(Stage.JAVAC, severity, file, line, column, code, d.getMessage(Locale.getDefault()), excerpt(d)));
+			
+			if(severity == Severity.ERROR && maxErrors > 0 && ++errors >= maxErrors){
+				
+				stopped = true;
+				throw new IllegalStateException("Too many errors.");
+			}
+		}
+		
+		/**
+		 * Returns the line of the source a diagnostic refers to, and the caret under its position, as javac prints them.
+		 * 
+		 * @param d the diagnostic.
+		 * @return the excerpt, empty if the diagnostic has no position in a source.
+		 */
+		private static String excerpt(javax.tools.Diagnostic<? extends JavaFileObject> d){
+			
+			if(d.getSource() == null || d.getPosition() == javax.tools.Diagnostic.NOPOS)
+				return "";
+			
+			CharSequence content;
+			
+			try {
+				content = d.getSource().getCharContent(true);
+			}
+			
+			catch (IOException e) {
+				return "";
+			}
+			
+			int position = (int) Math.min(d.getPosition(), content.length()), start = position, end = position;
+			
+			while(start > 0 && content.charAt(start - 1) != '\n' && content.charAt(start - 1) != '\r')
+				start--;
+			
+			while(end < content.length() && content.charAt(end) != '\n' && content.charAt(end) != '\r')
+				end++;
+			
+			StringBuilder sb = new StringBuilder(2 * (end - start) + 2).append(content, start, end).append('\n');
+			
+			//the tabs are kept, so that the caret lines up with the source whatever their width
+			for(int i = start; i < position; i++)
+				sb.append(content.charAt(i) == '\t' ? '\t' : ' ');
+			
+			return sb.append('^').toString();
+		}
 	}
 }
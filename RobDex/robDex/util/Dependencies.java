@@ -0,0 +1,180 @@
+package robDex.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+
+/**
+ * This class holds the content of the dependencies' jar, read once when the server starts and shared by all the requests.
+ * The class files are indexed by package, so that the internal compiler finds them without reading the jar again.
+ */
+
+public class Dependencies {
+	
+	private static final String CLASS = JavaFileObject.Kind.CLASS.extension;
+	
+	/**
+	 * Class files of the jar, indexed by their package (such as {@code java.util}).
+	 */
+	private static Map<String, List<ClassFile>> packages = Collections.emptyMap();
+	
+	private static byte[] digest;
+	
+	private Dependencies(){}
+	
+	/**
+	 * Reads the content of a jar and indexes its class files.
+	 * 
+	 * @param jar path of the jar to be read.
+	 * @throws IOException if the jar can't be read.
+	 */
+	public static synchronized void load(String jar) throws IOException{
+		
+		Map<String, List<ClassFile>> index = new HashMap<>();
+		byte[] content = Files.readAllBytes(Paths.get(jar));
+		
+		try(ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(content))){
+			
+			ZipEntry e;
+			byte[] buf = new byte[8192];
+			
+			while((e = in.getNextEntry()) != null){
+				
+				String name = e.getName();
+				
+				if(e.isDirectory() || !name.endsWith(CLASS))
+					continue;
+				
+				ByteArrayOutputStream classFile = new ByteArrayOutputStream(e.getSize() > 0 ? (int) e.getSize() : buf.length);
+				int n;
+				
+				while((n = in.read(buf)) != -1)
+					classFile.write(buf, 0, n);
+				
+				ClassFile c = new ClassFile(name.substring(0, name.length() - CLASS.length()), classFile.toByteArray());
+				
+				index.computeIfAbsent(c.getPackage(), p -> new ArrayList<>()).add(c);
+			}
+		}
+		
+		packages = index;
+		digest = Util.newDigest().digest(content);
+	}
+	
+	/**
+	 * Writes the class files of the jar into a directory, as {@code jar xf} would.
+	 * Each class file is written aside then moved in place, so that the tools reading the directory meanwhile never see it truncated.
+	 * 
+	 * @param dir the directory in which the class files are to be written.
+	 * @throws IOException if a class file can't be written.
+	 */
+	public static void extract(String dir) throws IOException{
+		
+		for(List<ClassFile> classes : packages.values())
+			for(ClassFile c : classes){
+				
+				Path p = Paths.get(dir, c.internalName + CLASS);
+				Files.createDirectories(p.getParent());
+				
+				Path tmp = Files.createTempFile(p.getParent(), p.getFileName().toString(), ".tmp");
+				
+				try {
+					
+					Files.write(tmp, c.content);
+					Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				}
+				
+				finally{
+					Files.deleteIfExists(tmp);
+				}
+			}
+	}
+	
+	/**
+	 * Returns the SHA-256 digest of the jar's content.
+	 * 
+	 * @return the digest of the jar.
+	 */
+	public static byte[] getDigest(){
+		return digest;
+	}
+	
+	/**
+	 * Lists the class files of a package, and of its sub-packages if {@code recurse} is {@code true}.
+	 * 
+	 * @param packageName name of the package, such as {@code java.util}.
+	 * @param recurse {@code true} if the sub-packages' class files must be listed.
+	 * @return the class files.
+	 */
+	static List<JavaFileObject> list(String packageName, boolean recurse){
+		
+		List<ClassFile> classes = packages.get(packageName);
+		
+		if(!recurse)
+			return classes == null ? Collections.<JavaFileObject>emptyList() : Collections.<JavaFileObject>unmodifiableList(classes);
+		
+		List<JavaFileObject> l = new ArrayList<>();
+		String prefix = packageName + ".";
+		
+		for(Map.Entry<String, List<ClassFile>> e : packages.entrySet())
+			if(e.getKey().equals(packageName) || packageName.isEmpty() || e.getKey().startsWith(prefix))
+				l.addAll(e.getValue());
+		
+		return l;
+	}
+	
+	/**
+	 * Returns the binary name of a class file of the jar.
+	 * 
+	 * @param file the class file.
+	 * @return the binary name of the class file, such as {@code pkg.Main$Inner}, or {@code null} if it doesn't belong to the jar.
+	 */
+	static String inferBinaryName(JavaFileObject file){
+		
+		return file instanceof ClassFile ? ((ClassFile) file).internalName.replace('/', '.') : null;
+	}
+	
+	/**
+	 * A class file of the jar.
+	 */
+	private static class ClassFile extends SimpleJavaFileObject{
+		
+		private final String internalName;
+		private final byte[] content;
+		
+		private ClassFile(String internalName, byte[] content){
+			
+			super(URI.create("dep:///" + internalName + CLASS), Kind.CLASS);
+			this.internalName = internalName;
+			this.content = content;
+		}
+		
+		private String getPackage(){
+			
+			int i = internalName.lastIndexOf('/');
+			
+			return i < 0 ? "" : internalName.substring(0, i).replace('/', '.');
+		}
+		
+		@Override
+		public InputStream openInputStream(){
+			return new ByteArrayInputStream(content);
+		}
+	}
+}
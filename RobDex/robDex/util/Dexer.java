@@ -0,0 +1,501 @@
+package robDex.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import robDex.exceptions.FailedCompilationException;
+import robDex.util.Diagnostic.Severity;
+import robDex.util.Diagnostic.Stage;
+import robDex.util.option.OptionManager;
+
+/**
+ * This class is used to compile class files into a DEX file inside the server's JVM.
+ * The dexer is loaded once from the jar given by {@link OptionManager#getDexLibrary()}, and stays loaded and warm between requests.
+ * 
+ * Both D8 ({@code d8.jar} or {@code r8.jar}) and dx ({@code dx.jar}) are supported.
+ * D8 can run several jobs at once, while dx keeps its state in static fields and is run one job at a time.
+ * The versions of D8 which can also compile each class file into its own DEX file and merge DEX files are {@link IncrementalDexer}s.
+ * The errors and warnings reported by D8 are given to the compilation as diagnostics of the DEX stage.
+ */
+
+abstract class Dexer {
+	
+	private static Dexer dexer;
+	
+	/**
+	 * Limits the number of jobs run at once.
+	 */
+	private final Semaphore jobs;
+	
+	protected Dexer(int maxJobs){
+		jobs = new Semaphore(maxJobs);
+	}
+	
+	/**
+	 * Loads the dexer from the dexer library, if one was given, so that it's resident before the first request.
+	 * 
+	 * @throws IllegalArgumentException if the library contains neither D8 nor dx, or a version whose API doesn't match.
+	 */
+	static synchronized void load(){
+		
+		String lib = OptionManager.getDexLibrary();
+		
+		if(lib.isEmpty())
+			return;
+		
+		try {
+			
+			ClassLoader loader = new URLClassLoader(new URL[]{new File(lib).toURI().toURL()}, null);
+			
+			try {
+				dexer = D8.load(loader, OptionManager.getDexJobs());
+			}
+			
+			catch (ClassNotFoundException e) {
+				dexer = new Dx(loader);
+			}
+			
+		} catch (IOException | ReflectiveOperationException | LinkageError e) {
+			throw new IllegalArgumentException("Dexer library \"" + lib + "\" contains neither a supported D8 nor dx (" + e + ").", e);
+		}
+	}
+	
+	/**
+	 * Returns the dexer loaded from the dexer library.
+	 * 
+	 * @return the dexer, {@code null} if no dexer library was given.
+	 */
+	static synchronized Dexer get(){
+		return dexer;
+	}
+	
+	/**
+	 * Compiles the class files of a compilation into a DEX file.
+	 * 
+	 * @param compilation the compilation whose class files are to be compiled.
+	 * @return the content of the DEX file.
+	 * @throws FailedCompilationException if the class files can't be compiled.
+	 */
+	byte[] dex(Compilation compilation) throws FailedCompilationException{
+		
+		return run(compilation, () -> dexClasses(compilation));
+	}
+	
+	/**
+	 * Runs a job once the number of jobs run at once allows it.
+	 * 
+	 * @param compilation the compilation in whose log the exceptions of the dexer are written.
+	 * @param job the job to be run.
+	 * @return the result of the job.
+	 * @throws FailedCompilationException if the job fails.
+	 */
+	protected <T> T run(Compilation compilation, Job<T> job) throws FailedCompilationException{
+		
+		try {
+			jobs.acquire();
+		}
+		
+		catch (InterruptedException e) {
+			throw new FailedCompilationException(e);
+		}
+		
+		try {
+			return job.run();
+		}
+		
+		catch (InvocationTargetException e) {
+			
+			new PrintStream(compilation.getLog(), true).println(e.getCause());
+			throw new FailedCompilationException(e.getCause());
+		}
+		
+		catch (IOException | ReflectiveOperationException e) {
+			throw new FailedCompilationException(e);
+		}
+		
+		finally{
+			jobs.release();
+		}
+	}
+	
+	/**
+	 * Runs the dexer on the class files of a compilation.
+	 * 
+	 * @param compilation the compilation whose class files are to be compiled.
+	 * @return the content of the DEX file.
+	 * @throws FailedCompilationException if the dexer reports a failure.
+	 * @throws InvocationTargetException if the dexer throws an exception.
+	 * @throws IOException if the class files or the DEX file can't be accessed.
+	 * @throws ReflectiveOperationException if the dexer's API can't be called.
+	 */
+	protected abstract byte[] dexClasses(Compilation compilation) throws FailedCompilationException, IOException, ReflectiveOperationException;
+	
+	/**
+	 * A call to the dexer.
+	 * 
+	 * @param <T> type of the call's result
+	 */
+	protected interface Job<T>{
+		
+		T run() throws FailedCompilationException, IOException, ReflectiveOperationException;
+	}
+	
+	/**
+	 * D8, called through its {@code D8Command} API. The class files are given and received in memory,
+	 * and the messages of D8 are received by a {@code DiagnosticsHandler}.
+	 */
+	private static class D8 extends Dexer{
+		
+		private final ClassLoader loader;
+		private final Class<?> indexedConsumer, diagnosticsHandler, textPosition;
+		private final Object unknownOrigin;
+		private final Method getOrigin, getPosition, getDiagnosticMessage;
+		private final Method builder, setProgramConsumer, build, run;
+		final Method addClassProgramData, addDexProgramData;
+		
+		private D8(ClassLoader loader, int maxJobs) throws ReflectiveOperationException{
+			
+			super(maxJobs);
+			
+			this.loader = loader;
+			
+			Class<?> command = Class.forName("com.android.tools.r8.D8Command", true, loader);
+			Class<?> commandBuilder = Class.forName("com.android.tools.r8.D8Command$Builder", true, loader);
+			Class<?> origin = Class.forName("com.android.tools.r8.origin.Origin", true, loader);
+			Class<?> programConsumer = Class.forName("com.android.tools.r8.ProgramConsumer", true, loader);
+			Class<?> diagnostic = Class.forName("com.android.tools.r8.Diagnostic", true, loader);
+			
+			indexedConsumer = Class.forName("com.android.tools.r8.DexIndexedConsumer", true, loader);
+			diagnosticsHandler = Class.forName("com.android.tools.r8.DiagnosticsHandler", true, loader);
+			textPosition = findClass("com.android.tools.r8.position.TextPosition", loader);
+			unknownOrigin = origin.getMethod("unknown").invoke(null);
+			
+			getOrigin = diagnostic.getMethod("getOrigin");
+			getPosition = diagnostic.getMethod("getPosition");
+			getDiagnosticMessage = diagnostic.getMethod("getDiagnosticMessage");
+			
+			builder = command.getMethod("builder", diagnosticsHandler);
+			addClassProgramData = commandBuilder.getMethod("addClassProgramData", byte[].class, origin);
+			addDexProgramData = commandBuilder.getMethod("addDexProgramData", byte[].class, origin);
+			setProgramConsumer = commandBuilder.getMethod("setProgramConsumer", programConsumer);
+			build = commandBuilder.getMethod("build");
+			run = Class.forName("com.android.tools.r8.D8", true, loader).getMethod("run", command);
+		}
+		
+		/**
+		 * Loads D8, with the API compiling each class file into its own DEX file if its version has it.
+		 * 
+		 * @param loader the class loader of the dexer's jar.
+		 * @param maxJobs the maximum number of jobs run at once.
+		 * @return D8.
+		 * @throws ClassNotFoundException if the jar doesn't contain D8.
+		 * @throws ReflectiveOperationException if D8's API can't be found.
+		 */
+		static D8 load(ClassLoader loader, int maxJobs) throws ReflectiveOperationException{
+			
+			Class<?> perClassConsumer = findClass("com.android.tools.r8.DexFilePerClassFileConsumer", loader);
+			
+			return perClassConsumer == null ? new D8(loader, maxJobs) : new IncrementalD8(loader, maxJobs, perClassConsumer);
+		}
+		
+		private static Class<?> findClass(String name, ClassLoader loader){
+			
+			try {
+				return Class.forName(name, true, loader);
+			}
+			
+			catch (ClassNotFoundException e) {
+				return null;
+			}
+		}
+		
+		@Override
+		protected byte[] dexClasses(Compilation compilation) throws FailedCompilationException, ReflectiveOperationException{
+			
+			return runIndexed(addClassProgramData, compilation.getClasses().values(), compilation);
+		}
+		
+		/**
+		 * Runs D8 to build a single DEX file.
+		 * 
+		 * @param add the builder's method adding an input.
+		 * @param inputs the class files or DEX files to be compiled.
+		 * @param compilation the compilation to which the errors are given.
+		 * @return the content of the DEX file.
+		 * @throws FailedCompilationException if D8 reports errors, or if the inputs don't fit in a single DEX file.
+		 * @throws ReflectiveOperationException if D8's API can't be called, or throws an exception.
+		 */
+		byte[] runIndexed(Method add, Collection<byte[]> inputs, Compilation compilation) throws FailedCompilationException, ReflectiveOperationException{
+			
+			DexOutput output = runD8(add, inputs, indexedConsumer, compilation);
+			
+			if(output.files.size() != 1)
+				throw new FailedCompilationException("The classes don't fit in a single DEX file.");
+			
+			return output.files.values().iterator().next();
+		}
+		
+		/**
+		 * Runs D8, giving its messages to a compilation.
+		 * 
+		 * @param add the builder's method adding an input.
+		 * @param inputs the class files or DEX files to be compiled.
+		 * @param consumer the interface of the consumer receiving the DEX files.
+		 * @param compilation the compilation to which the errors are given.
+		 * @return the DEX files.
+		 * @throws FailedCompilationException if D8 fails after reporting errors.
+		 * @throws ReflectiveOperationException if D8's API can't be called, or throws an exception without reporting errors.
+		 */
+		DexOutput runD8(Method add, Collection<byte[]> inputs, Class<?> consumer, Compilation compilation) throws FailedCompilationException, ReflectiveOperationException{
+			
+			Reporter reporter = new Reporter();
+			Object b = builder.invoke(null, Proxy.newProxyInstance(loader, new Class<?>[]{diagnosticsHandler}, reporter));
+			
+			for(byte[] input : inputs)
+				add.invoke(b, input, unknownOrigin);
+			
+			DexOutput output = new DexOutput();
+			
+			setProgramConsumer.invoke(b, Proxy.newProxyInstance(loader, new Class<?>[]{consumer}, output));
+			
+			try {
+				run.invoke(null, build.invoke(b));
+			}
+			
+			catch (InvocationTargetException e) {
+				
+				//the reasons of the failure were reported, the exception itself only tells that D8 failed
+				if(reporter.hasErrors())
+					throw new FailedCompilationException(1);
+				
+				throw e;
+			}
+			
+			finally{
+				
+				for(Diagnostic d : reporter.getDiagnostics())
+					compilation.report(d);
+			}
+			
+			return output;
+		}
+		
+		/**
+		 * Receives the messages of D8, in place of a {@code DiagnosticsHandler}, and turns them into diagnostics of the DEX stage.
+		 * D8 may report messages from several threads.
+		 */
+		private class Reporter implements InvocationHandler{
+			
+			private final List<Diagnostic> diagnostics = new ArrayList<>();
+			private boolean errors;
+			
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable{
+				
+				switch(method.getName()){
+				
+				case "error":
+					
+					report(Severity.ERROR, args[0]);
+					return null;
+				
+				case "warning":
+					
+					report(Severity.WARNING, args[0]);
+					return null;
+				
+				case "info":
+					
+					report(Severity.NOTE, args[0]);
+					return null;
+				
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				
+				case "equals":
+					return proxy == args[0];
+				
+				case "toString":
+					return Reporter.class.getName();
+				
+				default:
+					
+					//methods added by later versions, such as the one changing the level of a message, keep D8's defaults
+					if(args != null && args.length > 0 && method.getReturnType().isInstance(args[0]))
+						return args[0];
+					
+					return method.getReturnType() == boolean.class ? false : null;
+				}
+			}
+			
+			private void report(Severity severity, Object diagnostic) throws ReflectiveOperationException{
+				
+				Object origin = getOrigin.invoke(diagnostic), position = getPosition.invoke(diagnostic);
+				String file = origin == null || origin.equals(unknownOrigin) ? "" : origin.toString();
+				int line = 0, column = 0;
+				
+				if(textPosition != null && textPosition.isInstance(position)){
+					
+					line = Math.max(0, (Integer) textPosition.getMethod("getLine").invoke(position));
+					column = Math.max(0, (Integer) textPosition.getMethod("getColumn").invoke(position));
+				}
+				
+				Diagnostic d = new Diagnostic(Stage.DEX, severity, file, line, column, "", String.valueOf(getDiagnosticMessage.invoke(diagnostic)));
+				
+				synchronized(this){
+					
+					diagnostics.add(d);
+					errors |= severity == Severity.ERROR;
+				}
+			}
+			
+			synchronized boolean hasErrors(){
+				return errors;
+			}
+			
+			synchronized List<Diagnostic> getDiagnostics(){
+				return new ArrayList<>(diagnostics);
+			}
+		}
+	}
+	
+	/**
+	 * D8 from a version which can compile each class file into its own DEX file ({@code DexFilePerClassFileConsumer}), and merge DEX files.
+	 */
+	private static class IncrementalD8 extends D8 implements IncrementalDexer{
+		
+		private final Class<?> perClassConsumer;
+		
+		private IncrementalD8(ClassLoader loader, int maxJobs, Class<?> perClassConsumer) throws ReflectiveOperationException{
+			
+			super(loader, maxJobs);
+			
+			this.perClassConsumer = perClassConsumer;
+		}
+		
+		@Override
+		public Map<String, byte[]> dexEachClass(Map<String, byte[]> classes, Compilation compilation) throws FailedCompilationException{
+			
+			return run(compilation, () -> {
+				
+				DexOutput output = runD8(addClassProgramData, classes.values(), perClassConsumer, compilation);
+				
+				Map<String, byte[]> dexes = new HashMap<>();
+				
+				//the DEX files are given with the descriptor of their class, such as Lpkg/Main;
+				for(Map.Entry<Object, byte[]> e : output.files.entrySet()){
+					
+					String descriptor = (String) e.getKey();
+					dexes.put(descriptor.substring(1, descriptor.length() - 1), e.getValue());
+				}
+				
+				return dexes;
+			});
+		}
+		
+		@Override
+		public byte[] merge(Collection<byte[]> dexes, Compilation compilation) throws FailedCompilationException{
+			
+			return run(compilation, () -> runIndexed(addDexProgramData, dexes, compilation));
+		}
+	}
+	
+	/**
+	 * Receives the DEX files produced by D8, in place of a {@code DexIndexedConsumer} or a {@code DexFilePerClassFileConsumer}.
+	 */
+	private static class DexOutput implements InvocationHandler{
+		
+		/**
+		 * DEX files, indexed by their number or by the descriptor of their class.
+		 */
+		private final Map<Object, byte[]> files = new HashMap<>();
+		
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable{
+			
+			switch(method.getName()){
+			
+			case "accept":
+				
+				Object data = args[1];
+				
+				//depending on D8's version, the DEX file is given as a byte array or as a ByteDataView
+				if(!(data instanceof byte[]))
+					data = data.getClass().getMethod("copyByteData").invoke(data);
+				
+				synchronized(files){
+					files.put(args[0], (byte[]) data);
+				}
+				
+				return null;
+			
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			
+			case "equals":
+				return proxy == args[0];
+			
+			case "toString":
+				return DexOutput.class.getName();
+			
+			default:
+				return method.getReturnType() == boolean.class ? false : null;
+			}
+		}
+	}
+	
+	/**
+	 * dx, called through its {@code Main.run(Arguments)} API. The class files are read from the request's directory.
+	 */
+	private static class Dx extends Dexer{
+		
+		private final Class<?> arguments;
+		private final Method parse, run;
+		
+		private Dx(ClassLoader loader) throws ReflectiveOperationException{
+			
+			super(1);
+			
+			Class<?> main = Class.forName("com.android.dx.command.dexer.Main", true, loader);
+			
+			arguments = Class.forName("com.android.dx.command.dexer.Main$Arguments", true, loader);
+			
+			parse = arguments.getDeclaredMethod("parse", String[].class);
+			parse.setAccessible(true);
+			
+			run = main.getMethod("run", arguments);
+		}
+		
+		@Override
+		protected byte[] dexClasses(Compilation compilation) throws FailedCompilationException, IOException, ReflectiveOperationException{
+			
+			String idir = Compiler.writeClasses(compilation, "java7dir");
+			String output = compilation.makeDirectory() + File.separator + Compiler.dexFileName;
+			
+			Object args = arguments.getConstructor().newInstance();
+			parse.invoke(args, (Object) new String[]{"--output=" + output, idir});
+			
+			int status = (Integer) run.invoke(null, args);
+			
+			if(status != 0)
+				throw new FailedCompilationException(status);
+			
+			return Files.readAllBytes(Paths.get(output));
+		}
+	}
+}
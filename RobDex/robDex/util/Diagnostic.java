@@ -0,0 +1,144 @@
+package robDex.util;
+
+import java.util.Locale;
+
+/**
+ * This class holds a message reported by a stage of a compilation, such as an error of javac.
+ * The messages of the tools which don't locate their errors are kept whole, without a file.
+ */
+
+public class Diagnostic {
+	
+	/**
+	 * The stages which report messages. Their order gives their code in the encoding of the diagnostics.
+	 */
+	public enum Stage {
+		
+		/**
+		 * The server itself, for failures unrelated to the java files.
+		 */
+		SERVER,
+		RECEIVE,
+		JAVAC,
+		RETROLAMBDA,
+		DEX
+	}
+	
+	/**
+	 * The severities of the messages. Their order gives their code in the encoding of the diagnostics.
+	 */
+	public enum Severity { ERROR, WARNING, NOTE }
+	
+	private final Stage stage;
+	private final Severity severity;
+	private final String file, code, message, excerpt;
+	private final int line, column;
+	
+	/**
+	 * Creates a diagnostic without excerpt of the source.
+	 * 
+	 * @param stage the stage which reported it.
+	 * @param severity its severity.
+	 * @param file the name of the file it refers to, empty if there is none.
+	 * @param line the line it refers to, starting at {@code 1}, {@code 0} if it's unknown.
+	 * @param column the column it refers to, starting at {@code 1}, {@code 0} if it's unknown.
+	 * @param code the code of the message given by the tool, such as {@code compiler.err.cant.resolve}, empty if there is none.
+	 * @param message the message, which may span several lines.
+	 */
+	public Diagnostic(Stage stage, Severity severity, String file, int line, int column, String code, String message){
+		this(stage, severity, file, line, column, code, message, "");
+	}
+	
+	/**
+	 * Creates a diagnostic.
+	 * 
+	 * @param stage the stage which reported it.
+	 * @param severity its severity.
+	 * @param file the name of the file it refers to, empty if there is none.
+	 * @param line the line it refers to, starting at {@code 1}, {@code 0} if it's unknown.
+	 * @param column the column it refers to, starting at {@code 1}, {@code 0} if it's unknown.
+	 * @param code the code of the message given by the tool, such as {@code compiler.err.cant.resolve}, empty if there is none.
+	 * @param message the message, which may span several lines.
+	 * @param excerpt the lines javac prints under the location : the line of the source and the caret under the column, empty if there are none.
+	 */
+	public Diagnostic(Stage stage, Severity severity, String file, int line, int column, String code, String message, String excerpt){
+		
+		this.stage = stage;
+		this.severity = severity;
+		this.file = file;
+		this.line = line;
+		this.column = column;
+		this.code = code;
+		this.message = message;
+		this.excerpt = excerpt;
+	}
+	
+	public Stage getStage(){
+		return stage;
+	}
+	
+	public Severity getSeverity(){
+		return severity;
+	}
+	
+	public String getFile(){
+		return file;
+	}
+	
+	public int getLine(){
+		return line;
+	}
+	
+	public int getColumn(){
+		return column;
+	}
+	
+	public String getCode(){
+		return code;
+	}
+	
+	public String getMessage(){
+		return message;
+	}
+	
+	public String getExcerpt(){
+		return excerpt;
+	}
+	
+	/**
+	 * Returns the diagnostic as javac prints it, such as {@code Main.java:3: error: cannot find symbol},
+	 * with the excerpt of the source under the first line of the message.
+	 * The messages of the other stages are given as the tools wrote them, preceded by their file if there is one.
+	 * 
+	 * @return the diagnostic as text.
+	 */
+	@Override
+	public String toString(){
+		
+		StringBuilder sb = new StringBuilder();
+		
+		if(!file.isEmpty()){
+			
+			sb.append(file);
+			
+			if(line > 0)
+				sb.append(':').append(line);
+			
+			sb.append(": ");
+		}
+		
+		if(stage == Stage.JAVAC)
+			sb.append(severity == Severity.NOTE ? "Note" : severity.name().toLowerCase(Locale.ROOT)).append(": ");
+		
+		if(excerpt.isEmpty())
+			return sb.append(message).toString();
+		
+		//the excerpt follows the first line of the message, as javac prints it
+		int end = message.indexOf('\n');
+		
+		if(end == -1)
+			end = message.length();
+		
+		return sb.append(message, 0, end).append('\n').append(excerpt).append(message, end, message.length()).toString();
+	}
+}
@@ -0,0 +1,330 @@
+package robDex.util;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import robDex.util.Diagnostic.Severity;
+import robDex.util.Diagnostic.Stage;
+
+/**
+ * <p>
+ * This class is used to encode the diagnostics of a compilation, to parse the errors written by the tools run as separate processes,
+ * and to print the diagnostics as text for the clients which don't read their encoding.
+ * </p>
+ * <p>
+ * Every field of the encoding has a fixed width, and numbers are written in big-endian order : the number of diagnostics (4 bytes), then
+ * for each of them its stage (1 byte, {@code 0} server, {@code 1} receive, {@code 2} javac, {@code 3} retrolambda, {@code 4} dex),
+ * its severity (1 byte, {@code 0} error, {@code 1} warning, {@code 2} note), its line (4 bytes) and its column (4 bytes), {@code 0} if they're unknown,
+ * the length of its file's name (2 bytes) and the name in UTF-8, the length of its code (2 bytes) and the code in UTF-8,
+ * then the length of its message (4 bytes) and the message in UTF-8. Names and codes are empty when there are none.
+ * </p>
+ * <p>
+ * The encodings kept by the server, in its cache or given by its workers, are followed by the excerpts of the source printed by javac
+ * under the diagnostics : for each diagnostic, the length of its excerpt (4 bytes) and the excerpt in UTF-8. The clients aren't sent them.
+ * </p>
+ */
+
+public class Diagnostics {
+	
+	private static final int COUNT_SIZE = 4, FIXED_SIZE = 18, MAX_SHORT_FIELD = 0xffff;
+	
+	/**
+	 * Lines written by javac : the location of a message, the caret under its column, its summary, and the messages without location.
+	 */
+	private static final Pattern LOCATED = Pattern.compile("(.+?):(\\d{1,9}): (error|warning): (.*)"),
+			CARET = Pattern.compile(" *\\^ *"),
+			SUMMARY = Pattern.compile("\\d+ (error|warning)s?"),
+			UNLOCATED = Pattern.compile("(error|warning|Note): (.*)");
+	
+	// Suppresses default constructor, ensuring non-instantiability.
+	private Diagnostics(){}
+	
+	/**
+	 * Encodes diagnostics with their excerpts, to be kept by the server.
+	 * 
+	 * @param diagnostics the diagnostics.
+	 * @return their encoding.
+	 */
+	public static byte[] encode(List<Diagnostic> diagnostics){
+		return encode(diagnostics, true);
+	}
+	
+	/**
+	 * Encodes diagnostics.
+	 * 
+	 * @param diagnostics the diagnostics.
+	 * @param excerpts whether the excerpts follow the diagnostics, {@code false} for the encoding sent to the clients.
+	 * @return their encoding.
+	 */
+	public static byte[] encode(List<Diagnostic> diagnostics, boolean excerpts){
+		
+		List<byte[]> strings = new ArrayList<>(diagnostics.size() * 3);
+		List<byte[]> excerptStrings = new ArrayList<>(excerpts ? diagnostics.size() : 0);
+		int size = COUNT_SIZE;
+		
+		for(Diagnostic d : diagnostics){
+			
+			byte[] file = truncate(d.getFile()), code = truncate(d.getCode()), message = d.getMessage().getBytes(StandardCharsets.UTF_8);
+			
+			strings.add(file);
+			strings.add(code);
+			strings.add(message);
+			size += FIXED_SIZE + file.length + code.length + message.length;
+			
+			if(excerpts){
+				
+				byte[] excerpt = d.getExcerpt().getBytes(StandardCharsets.UTF_8);
+				
+				excerptStrings.add(excerpt);
+				size += 4 + excerpt.length;
+			}
+		}
+		
+		ByteBuffer b = ByteBuffer.allocate(size);
+		b.putInt(diagnostics.size());
+		
+		int i = 0;
+		
+		for(Diagnostic d : diagnostics){
+			
+			byte[] file = strings.get(i++), code = strings.get(i++), message = strings.get(i++);
+			
+			b.put((byte) d.getStage().ordinal());
+			b.put((byte) d.getSeverity().ordinal());
+			b.putInt(d.getLine());
+			b.putInt(d.getColumn());
+			b.putShort((short) file.length).put(file);
+			b.putShort((short) code.length).put(code);
+			b.putInt(message.length).put(message);
+		}
+		
+		for(byte[] excerpt : excerptStrings)
+			b.putInt(excerpt.length).put(excerpt);
+		
+		return b.array();
+	}
+	
+	/**
+	 * Decodes diagnostics.
+	 * 
+	 * @param encoded the encoding of the diagnostics, from its position to its limit. An empty encoding holds no diagnostics.
+	 * @return the diagnostics.
+	 * @throws IllegalArgumentException if the encoding is invalid.
+	 */
+	public static List<Diagnostic> decode(ByteBuffer encoded) throws IllegalArgumentException{
+		
+		List<Diagnostic> diagnostics = new ArrayList<>();
+		ByteBuffer b = encoded.duplicate();
+		
+		if(!b.hasRemaining())
+			return diagnostics;
+		
+		try {
+			
+			int count = b.getInt();
+			
+			if(count < 0 || count > b.remaining() / FIXED_SIZE)
+				throw new IllegalArgumentException("Invalid number of diagnostics : " + count + ".");
+			
+			for(int i = 0; i < count; i++){
+				
+				Stage stage = Stage.values()[b.get()];
+				Severity severity = Severity.values()[b.get()];
+				int line = b.getInt(), column = b.getInt();
+				String file = string(b, b.getShort() & MAX_SHORT_FIELD), code = string(b, b.getShort() & MAX_SHORT_FIELD), message = string(b, b.getInt());
+				
+				diagnostics.add(new Diagnostic(stage, severity, file, line, column, code, message));
+			}
+			
+			//the excerpts kept by the server, absent from the encodings sent to the clients
+			if(b.hasRemaining()){
+				
+				for(int i = 0; i < count; i++){
+					
+					Diagnostic d = diagnostics.get(i);
+					
+					diagnostics.set(i, new Diagnostic(d.getStage(), d.getSeverity(), d.getFile(), d.getLine(), d.getColumn(), d.getCode(), d.getMessage(),
+							string(b, b.getInt())));
+				}
+			}
+		}
+		
+		catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Truncated diagnostics.", e);
+		}
+		
+		return diagnostics;
+	}
+	
+	/**
+	 * Prints diagnostics as the tools would have written them. The errors and warnings of javac are counted at the end, as javac does.
+	 * 
+	 * @param diagnostics the diagnostics.
+	 * @return the diagnostics as text.
+	 */
+	public static String toText(List<Diagnostic> diagnostics){
+		
+		StringBuilder sb = new StringBuilder();
+		int errors = 0, warnings = 0;
+		
+		for(Diagnostic d : diagnostics){
+			
+			sb.append(d);
+			
+			if(sb.charAt(sb.length() - 1) != '\n')
+				sb.append('\n');
+			
+			if(d.getStage() == Stage.JAVAC && d.getSeverity() == Severity.ERROR)
+				errors++;
+			
+			if(d.getStage() == Stage.JAVAC && d.getSeverity() == Severity.WARNING)
+				warnings++;
+		}
+		
+		count(sb, errors, "error");
+		count(sb, warnings, "warning");
+		
+		return sb.toString();
+	}
+	
+	/**
+	 * Parses the errors written by a stage. The messages of javac are split and located ; those of the other stages are kept whole.
+	 * 
+	 * @param stage the stage which wrote the errors.
+	 * @param log the errors, as they were written.
+	 * @return the diagnostics, empty if nothing was written.
+	 */
+	public static List<Diagnostic> parse(Stage stage, String log){
+		
+		List<Diagnostic> diagnostics = new ArrayList<>();
+		
+		if(log.trim().isEmpty())
+			return diagnostics;
+		
+		if(stage != Stage.JAVAC){
+			
+			diagnostics.add(new Diagnostic(stage, Severity.ERROR, "", 0, 0, "", log));
+			return diagnostics;
+		}
+		
+		//message being read : its location, severity, text, and how many lines followed its first one
+		String file = null, severity = null, excerpt = "";
+		int line = 0, column = 0, following = 0;
+		StringBuilder message = null;
+		
+		for(String l : log.split("\r?\n")){
+			
+			Matcher located = LOCATED.matcher(l), unlocated = UNLOCATED.matcher(l);
+			
+			if(located.matches() || unlocated.matches() || SUMMARY.matcher(l).matches()){
+				
+				if(message != null)
+					diagnostics.add(javacDiagnostic(file, line, column, severity, message, excerpt));
+				
+				message = null;
+				
+				if(located.matches()){
+					
+					file = located.group(1);
+					line = Integer.parseInt(located.group(2));
+					severity = located.group(3);
+					message = new StringBuilder(located.group(4));
+				}
+				
+				else if(unlocated.matches()){
+					
+					file = "";
+					line = 0;
+					severity = unlocated.group(1);
+					message = new StringBuilder(unlocated.group(2));
+				}
+				
+				column = 0;
+				following = 0;
+				excerpt = "";
+			}
+			
+			else if(message == null){
+				
+				//lines without severity, such as the count of the errors which weren't shown, only inform
+				file = "";
+				line = 0;
+				severity = "Note";
+				message = new StringBuilder(l);
+			}
+			
+			//the source line and the caret under the column follow the location
+			else if(line > 0 && following == 0){
+				
+				excerpt = l;
+				following++;
+			}
+			
+			else if(line > 0 && following == 1 && CARET.matcher(l).matches()){
+				
+				excerpt += "\n" + l;
+				column = l.indexOf('^') + 1;
+				following++;
+			}
+			
+			else{
+				
+				message.append('\n').append(l);
+				following++;
+			}
+		}
+		
+		if(message != null)
+			diagnostics.add(javacDiagnostic(file, line, column, severity, message, excerpt));
+		
+		return diagnostics;
+	}
+	
+	private static Diagnostic javacDiagnostic(String file, int line, int column, String severity, StringBuilder message, String excerpt){
+		
+		Severity s = "warning".equals(severity) ? Severity.WARNING : "Note".equals(severity) ? Severity.NOTE : Severity.ERROR;
+		
+		return new Diagnostic(Stage.JAVAC, s, file == null ? "" : file, line, column, "", message.toString(), excerpt);
+	}
+	
+	private static void count(StringBuilder sb, int n, String what){
+		
+		if(n > 0)
+			sb.append(n).append(' ').append(what).append(n > 1 ? "s" : "").append('\n');
+	}
+	
+	/**
+	 * Returns a string in UTF-8, cut so that its length fits a field of 2 bytes.
+	 * 
+	 * @param s the string.
+	 * @return the bytes of the string.
+	 */
+	private static byte[] truncate(String s){
+		
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		
+		if(b.length <= MAX_SHORT_FIELD)
+			return b;
+		
+		//the last character may have been cut in the middle
+		String cut = new String(b, 0, MAX_SHORT_FIELD, StandardCharsets.UTF_8);
+		
+		return cut.substring(0, cut.length() - 1).getBytes(StandardCharsets.UTF_8);
+	}
+	
+	private static String string(ByteBuffer b, int length){
+		
+		if(length < 0 || length > b.remaining())
+			throw new BufferUnderflowException();
+		
+		byte[] s = new byte[length];
+		b.get(s);
+		
+		return new String(s, StandardCharsets.UTF_8);
+	}
+}
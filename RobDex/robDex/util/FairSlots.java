@@ -0,0 +1,140 @@
+package robDex.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * <p>
+ * This class limits the number of compilations run at once, like a semaphore, but gives the free slots to the waiting compilations
+ * by weighted fair queuing across their clients rather than in their order of arrival : a client sending a burst of requests
+ * doesn't hold the slots while the others wait.
+ * </p>
+ * <p>
+ * Each client is a flow, whose compilations are stamped on arrival with a virtual start and finish time (start-time fair queuing).
+ * A compilation starts at the virtual time, or once the previous compilation of its client finishes, and lasts {@code 1 / weight}.
+ * Free slots are given in the order of the finish times : a client of weight 2 gets twice as many slots as a client of weight 1
+ * while both have compilations waiting, and a client which was idle is served as soon as a slot is free.
+ * </p>
+ */
+
+class FairSlots {
+	
+	/**
+	 * A compilation waiting for a slot.
+	 */
+	private static class Waiter implements Comparable<Waiter>{
+		
+		final double start, finish;
+		final long order;
+		boolean granted;
+		
+		Waiter(double start, double finish, long order){
+			
+			this.start = start;
+			this.finish = finish;
+			this.order = order;
+		}
+		
+		@Override
+		public int compareTo(Waiter w){
+			
+			int c = Double.compare(finish, w.finish);
+			
+			return c != 0 ? c : Long.compare(order, w.order);
+		}
+	}
+	
+	private final int slots;
+	private int active;
+	
+	private final PriorityQueue<Waiter> waiting = new PriorityQueue<>();
+	
+	/**
+	 * Virtual finish time of the last compilation of each client, for the clients which may still be ahead of the virtual time.
+	 */
+	private final Map<Object, Double> finishes = new HashMap<>();
+	
+	private double virtualTime;
+	private long arrivals;
+	
+	FairSlots(int slots){
+		this.slots = slots;
+	}
+	
+	/**
+	 * Waits for a free slot.
+	 * 
+	 * @param client the client of the compilation.
+	 * @param weight the weight of the client.
+	 * @throws InterruptedException if the thread is interrupted while waiting. The compilation then has no slot.
+	 */
+	synchronized void acquire(Object client, int weight) throws InterruptedException{
+		
+		Double last = finishes.get(client);
+		double start = last == null ? virtualTime : Math.max(virtualTime, last);
+		
+		Waiter w = new Waiter(start, start + 1.0 / weight, arrivals++);
+		finishes.put(client, w.finish);
+		
+		if(active < slots && waiting.isEmpty()){
+			
+			grant(w);
+			return;
+		}
+		
+		waiting.add(w);
+		
+		try {
+			
+			while(!w.granted)
+				wait();
+		}
+		
+		catch (InterruptedException e) {
+			
+			if(!w.granted){
+				
+				waiting.remove(w);
+				throw e;
+			}
+			
+			//the slot was given meanwhile : the interruption is kept for the compilation
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Frees a slot, and gives it to the waiting compilation finishing first.
+	 */
+	synchronized void release(){
+		
+		active--;
+		
+		Waiter w = waiting.poll();
+		
+		if(w != null){
+			
+			grant(w);
+			notifyAll();
+		}
+		
+		//the clients behind the virtual time start from it, whatever they did before
+		finishes.values().removeIf(f -> f <= virtualTime);
+	}
+	
+	synchronized int getActive(){
+		return active;
+	}
+	
+	synchronized int getWaiting(){
+		return waiting.size();
+	}
+	
+	private void grant(Waiter w){
+		
+		w.granted = true;
+		active++;
+		virtualTime = Math.max(virtualTime, w.start);
+	}
+}
@@ -0,0 +1,34 @@
+package robDex.util;
+
+import java.util.Collection;
+import java.util.Map;
+
+import robDex.exceptions.FailedCompilationException;
+
+/**
+ * This interface is implemented by the dexers which can compile each class file into its own DEX file, and merge DEX files :
+ * the DEX code of the class files which didn't change since a previous request is then reused.
+ */
+
+interface IncrementalDexer {
+	
+	/**
+	 * Compiles each class file into its own DEX file. A class file may be missing from the result if the dexer groups it with another.
+	 * 
+	 * @param classes the class files, indexed by their internal name.
+	 * @param compilation the compilation to which the errors are given.
+	 * @return the DEX files, indexed by the internal name of their class.
+	 * @throws FailedCompilationException if the class files can't be compiled.
+	 */
+	Map<String, byte[]> dexEachClass(Map<String, byte[]> classes, Compilation compilation) throws FailedCompilationException;
+	
+	/**
+	 * Merges DEX files into a single DEX file.
+	 * 
+	 * @param dexes the DEX files to be merged.
+	 * @param compilation the compilation to which the errors are given.
+	 * @return the content of the merged DEX file.
+	 * @throws FailedCompilationException if the DEX files can't be merged.
+	 */
+	byte[] merge(Collection<byte[]> dexes, Compilation compilation) throws FailedCompilationException;
+}
@@ -0,0 +1,49 @@
+package robDex.util;
+
+import java.net.URI;
+import java.nio.charset.Charset;
+
+import javax.tools.SimpleJavaFileObject;
+
+/**
+ * This class is used to hold a java file received from a client in memory.
+ * It can be given as is to the internal compiler.
+ */
+
+public class JavaSource extends SimpleJavaFileObject{
+	
+	private final String name;
+	private final byte[] content;
+	
+	/**
+	 * Creates a java source.
+	 * 
+	 * @param name the name of the file, such as {@code Main.java}.
+	 * @param content the content of the file.
+	 */
+	public JavaSource(String name, byte[] content){
+		
+		super(URI.create("mem:///" + name), Kind.SOURCE);
+		this.name = name;
+		this.content = content;
+	}
+	
+	/**
+	 * Returns the name of the file. Errors refer to the file by this name only.
+	 * 
+	 * @return the name of the file.
+	 */
+	@Override
+	public String getName(){
+		return name;
+	}
+	
+	public byte[] getContent(){
+		return content;
+	}
+	
+	@Override
+	public CharSequence getCharContent(boolean ignoreEncodingErrors){
+		return new String(content, Charset.defaultCharset());
+	}
+}
@@ -0,0 +1,107 @@
+package robDex.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * This class is used by the internal compiler to write class files in memory instead of the file system,
+ * and to read the dependencies' class files from the index shared by all the requests.
+ * Everything else is delegated to a standard file manager.
+ */
+
+class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager>{
+	
+	/**
+	 * Compiled classes, indexed by their internal name (such as {@code pkg/Main$Inner}).
+	 */
+	private final Map<String, byte[]> classes;
+
+	/**
+	 * Creates a file manager writing the class files into {@code classes}.
+	 * 
+	 * @param fileManager the file manager to which everything but the class files' output and the dependencies is delegated.
+	 * @param classes map in which the class files will be put, indexed by their internal name.
+	 */
+	MemoryFileManager(StandardJavaFileManager fileManager, Map<String, byte[]> classes){
+		
+		super(fileManager);
+		this.classes = classes;
+	}
+	
+	@Override
+	public boolean hasLocation(Location location){
+		
+		return location == StandardLocation.CLASS_PATH || super.hasLocation(location);
+	}
+	
+	@Override
+	public Iterable<JavaFileObject> list(Location location, String packageName, Set<Kind> kinds, boolean recurse) throws IOException{
+		
+		if(location != StandardLocation.CLASS_PATH)
+			return super.list(location, packageName, kinds, recurse);
+		
+		if(!kinds.contains(Kind.CLASS))
+			return Collections.emptyList();
+		
+		return Dependencies.list(packageName, recurse);
+	}
+	
+	@Override
+	public String inferBinaryName(Location location, JavaFileObject file){
+		
+		String name = Dependencies.inferBinaryName(file);
+		
+		return name != null ? name : super.inferBinaryName(location, file);
+	}
+	
+	@Override
+	public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind, FileObject sibling) throws IOException{
+		
+		if(location == StandardLocation.CLASS_OUTPUT && kind == Kind.CLASS)
+			return new ClassFileObject(className.replace('.', '/'));
+		
+		return super.getJavaFileForOutput(location, className, kind, sibling);
+	}
+	
+	/**
+	 * A class file written by the compiler.
+	 */
+	private class ClassFileObject extends SimpleJavaFileObject{
+		
+		private final String internalName;
+		
+		private ClassFileObject(String internalName){
+			
+			super(URI.create("mem:///" + internalName + Kind.CLASS.extension), Kind.CLASS);
+			this.internalName = internalName;
+		}
+		
+		@Override
+		public OutputStream openOutputStream(){
+			
+			return new ByteArrayOutputStream(){
+				
+				@Override
+				public void close(){
+					
+					synchronized(classes){
+						classes.put(internalName, toByteArray());
+					}
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package robDex.util;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Properties;
+
+import robDex.exceptions.FailedCompilationException;
+import robDex.util.option.OptionManager;
+
+/**
+ * This class is used to run retrolambda inside the server's JVM.
+ * The retrolambda jar is loaded once, in a class loader isolated from the server's classes.
+ * 
+ * Retrolambda hooks the JVM's lambda factory to capture the lambda classes, which is global to the JVM
+ * and only supported by java 8 : conversions are therefore run one at a time, and only on a java 8 JVM.
+ */
+
+class RetroLambda {
+	
+	private static final String MAIN_CLASS = "net.orfjackal.retrolambda.Retrolambda";
+	
+	/**
+	 * Retrolambda's entry point, {@code null} if retrolambda can't be run inside the server's JVM.
+	 */
+	private static Method run;
+	private static ClassLoader loader;
+	private static boolean loaded;
+	
+	private static final Object lock = new Object();
+	
+	// Suppresses default constructor, ensuring non-instantiability.
+	private RetroLambda(){}
+	
+	/**
+	 * Loads retrolambda, if it has not been done yet.
+	 * 
+	 * @return {@code true} if retrolambda can be run inside the server's JVM, {@code false} otherwise.
+	 */
+	static synchronized boolean isAvailable(){
+		
+		if(loaded)
+			return run != null;
+		
+		loaded = true;
+		
+		if(!System.getProperty("java.specification.version").equals("1.8"))
+			return false;
+		
+		try {
+			
+			URL jar = new File(OptionManager.getRetroLambda()).toURI().toURL();
+			loader = new URLClassLoader(new URL[]{jar}, null);
+			run = Class.forName(MAIN_CLASS, true, loader).getMethod("run", Properties.class);
+			
+		} catch (MalformedURLException | ReflectiveOperationException | LinkageError e) {
+			run = null;
+		}
+		
+		return run != null;
+	}
+	
+	/**
+	 * Convert java 8 class files to java 7 class files.
+	 * 
+	 * @param idir java 8 class files' location.
+	 * @param odir directory in which the java 7 class files will be located.
+	 * @param classPath classpath needed to load the java 8 class files.
+	 * @param err stream in which the errors will be written.
+	 * @throws FailedCompilationException if the conversion fails.
+	 */
+	static void convert(String idir, String odir, String classPath, PrintStream err) throws FailedCompilationException{
+		
+		Properties p = new Properties();
+		p.setProperty("retrolambda.inputDir", idir);
+		p.setProperty("retrolambda.outputDir", odir);
+		p.setProperty("retrolambda.classpath", classPath);
+		p.setProperty("retrolambda.quiet", "true");
+		
+		Thread t = Thread.currentThread();
+		
+		synchronized(lock){
+			
+			ClassLoader contextLoader = t.getContextClassLoader();
+			t.setContextClassLoader(loader);
+			
+			try {
+				run.invoke(null, p);
+			}
+			
+			catch (InvocationTargetException e) {
+				
+				err.println(e.getCause());
+				throw new FailedCompilationException(e.getCause());
+			}
+			
+			catch (IllegalAccessException e) {
+				throw new FailedCompilationException(e);
+			}
+			
+			finally{
+				t.setContextClassLoader(contextLoader);
+			}
+		}
+	}
+}
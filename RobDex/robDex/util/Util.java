@@ -1,7 +1,8 @@
 package robDex.util;
 
 import java.io.File;
-import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -47,17 +48,6 @@ public class Util {
 		return new File(path).getName();
 	}
 	
-	/**
-	 * Returns a client identifier to differentiate between clients content. 
-	 * 
-	 * @param client The socket representing the client
-	 * @return an Identifier for the client.
-	 */
-	public static String getclientIdentifier(Socket client){
-		
-		return Integer.toHexString(System.identityHashCode(client));
-	}
-	
 	/**
 	 * Checks if the name and size of the file are valid.
 	 * 
@@ -67,7 +57,7 @@ public class Util {
 	 */
 	public static boolean isValid(String fileName, long size){
 		
-		return size < FILE_SIZE_MAX && isNameValid(fileName);
+		return size >= 0 && size < FILE_SIZE_MAX && isNameValid(fileName);
 	}
 	
 	/**
@@ -119,4 +109,66 @@ public class Util {
 		
 		return names;
 	}
+	
+	/**
+	 * Returns a new SHA-256 digest, used to identify contents.
+	 * 
+	 * @return a new SHA-256 digest.
+	 */
+	public static MessageDigest newDigest(){
+		
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		
+		catch (NoSuchAlgorithmException e) {
+			//every java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Returns the hexadecimal representation of an array of bytes.
+	 * 
+	 * @param bytes the bytes to be represented.
+	 * @return the hexadecimal representation of the bytes, in lower case.
+	 */
+	public static String toHex(byte[] bytes){
+		
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		
+		for(byte b : bytes)
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		
+		return sb.toString();
+	}
+	
+	/**
+	 * Kills a process, and waits for its death so that the files it was writing can be deleted.
+	 * The wait isn't interrupted ; the thread's interrupted status is restored once the process is dead.
+	 * 
+	 * @param process the process to be killed.
+	 */
+	public static void kill(Process process){
+		
+		boolean interrupted = false;
+		
+		process.destroyForcibly();
+		
+		while(true){
+			
+			try {
+				
+				process.waitFor();
+				break;
+			}
+			
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
 }
@@ -6,9 +6,11 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
-import robDex.util.Compiler;
+import robDex.access.Subnet;
+import robDex.util.Dependencies;
 
 /**
  * This class is used to manage the program's options.
@@ -20,15 +22,33 @@ import robDex.util.Compiler;
 public class OptionManager {
 	
 	private static List<Option<? extends Object>> options;
-	private static StringOption dir, dx, jar, rlambda;
-	private static IntOption port;
+	private static StringOption dir, dx, jar, rlambda, compiler, dexLibrary, threads, frontEnd, record, workspaces;
+	private static IntOption port, dexJobs, cacheMemory, cacheDisk, dexCache, receiveTimeout, compileTimeout, sendTimeout, idleTimeout, compileSlots, compressThreshold, metricsPort, rateLimit, rateBurst, maxErrors, workerJobs, workerHeap;
 	private static AddressOption host;
+	private static SubnetsOption allow;
 	private static String classPath;
 	
+	/**
+	 * The program's arguments, given again to the worker JVMs.
+	 */
+	private static String[] arguments;
+	
+	/**
+	 * Hidden flag given to the worker JVMs, which use the dependencies already extracted by the server.
+	 */
+	private static final String WORKER_FLAG = "--worker";
+	private static boolean isWorker;
+	
+	private static final String INTERNAL = "internal", EXTERNAL = "external", WORKER = "worker";
+	private static final String PLATFORM = "platform", VIRTUAL = "virtual";
+	private static final String EVENT_LOOP = "eventLoop", BLOCKING = "blocking";
+	
 	private OptionManager(){}
 	
 	public static void init(String[] args) throws Exception{
 		
+		arguments = args.clone();
+		isWorker = Arrays.asList(args).contains(WORKER_FLAG);
 		options = new ArrayList<>();
 		addOptions();
 				
@@ -37,6 +57,19 @@ public class OptionManager {
 		
 		checkDx();
 		checkJar();
+		checkCompiler();
+		checkThreads();
+		checkFrontEnd();
+		checkRateLimit();
+		
+		if(getMaxErrors() < 0)
+			throw new IllegalArgumentException("The number of errors can't be negative.");
+		
+		if(getWorkerJobs() < 1 || workerHeap.getValue() < 0)
+			throw new IllegalArgumentException("Workers must run at least one job, and their heap threshold can't be negative.");
+		
+		if(dexLibrary.modified())
+			checkExistence(getDexLibrary(), ".jar");
 		
 		checkExistence(getRetroLambda(), ".jar");
 		
@@ -51,7 +84,14 @@ public class OptionManager {
 		checkExistence(classPath);
 		classPath = getAbsolute(classPath);
 		
-		Compiler.extractJar();
+		if(!workspaces.modified())
+			workspaces.setValue(getDir() + File.separator + "workspaces");
+		
+		Dependencies.load(getJar());
+		
+		//the workers are started once the server extracted the dependencies, which they read while others are started
+		if(!isWorker)
+			Dependencies.extract(classPath);
 	}
 	
 	public static String getDir(){
@@ -78,10 +118,243 @@ public class OptionManager {
 		return host.getValue();
 	}
 	
+	/**
+	 * Returns the blocks of addresses from which connections are accepted.
+	 * 
+	 * @return the blocks given by {@code --allow}, or the host given by {@code --host} alone if there are none.
+	 */
+	public static List<Subnet> getAllowed(){
+		
+		if(!allow.getValue().isEmpty())
+			return allow.getValue();
+		
+		return Collections.singletonList(new Subnet(getHost(), getHost().getAddress().length * 8, 1));
+	}
+	
+	/**
+	 * Returns the number of requests a client may send per minute.
+	 * 
+	 * @return the number of requests, {@code 0} if it isn't limited.
+	 */
+	public static int getRateLimit(){
+		return rateLimit.getValue();
+	}
+	
+	/**
+	 * Returns the number of requests a client may send at once, without waiting for its rate to allow them.
+	 * 
+	 * @return the number of requests.
+	 */
+	public static int getRateBurst(){
+		return rateBurst.modified() ? Math.max(1, rateBurst.getValue()) : Math.max(1, getRateLimit());
+	}
+	
+	/**
+	 * Returns the number of errors after which the compilation of a request is stopped.
+	 * 
+	 * @return the number of errors, {@code 0} if the compilation is never stopped early.
+	 */
+	public static int getMaxErrors(){
+		return maxErrors.getValue();
+	}
+	
 	public static String getClassPath(){
 		return classPath;
 	}
 	
+	/**
+	 * Returns the jar containing the dexer (D8 or dx) to be used by the internal compiler.
+	 * 
+	 * @return the path of the dexer's jar, or an empty string if dx must be launched as a separate process.
+	 */
+	public static String getDexLibrary(){
+		return dexLibrary.getValue();
+	}
+	
+	public static int getDexJobs(){
+		return dexJobs.getValue();
+	}
+	
+	/**
+	 * Returns the maximum size of the compilation results kept in memory.
+	 * 
+	 * @return the maximum size, in megabytes.
+	 */
+	public static int getCacheMemory(){
+		return cacheMemory.getValue();
+	}
+	
+	/**
+	 * Returns the maximum size of the compilation results kept on disk.
+	 * 
+	 * @return the maximum size, in megabytes.
+	 */
+	public static int getCacheDisk(){
+		return cacheDisk.getValue();
+	}
+	
+	/**
+	 * Returns the maximum size of the DEX code of the class files kept in memory.
+	 * 
+	 * @return the maximum size, in megabytes.
+	 */
+	public static int getDexCache(){
+		return dexCache.getValue();
+	}
+	
+	/**
+	 * Returns the time given to a client to send its files.
+	 * 
+	 * @return the delay, in seconds.
+	 */
+	public static int getReceiveTimeout(){
+		return receiveTimeout.getValue();
+	}
+	
+	/**
+	 * Returns the time given to the compilation of a request's files.
+	 * 
+	 * @return the delay, in seconds.
+	 */
+	public static int getCompileTimeout(){
+		return compileTimeout.getValue();
+	}
+	
+	/**
+	 * Returns the time given to a client to receive the result of its request.
+	 * 
+	 * @return the delay, in seconds.
+	 */
+	public static int getSendTimeout(){
+		return sendTimeout.getValue();
+	}
+	
+	/**
+	 * Returns the time after which a persistent connection is closed, when the client neither sends requests nor waits for results.
+	 * 
+	 * @return the delay, in seconds.
+	 */
+	public static int getIdleTimeout(){
+		return idleTimeout.getValue();
+	}
+	
+	/**
+	 * Returns the maximum number of compilations run at once.
+	 * 
+	 * @return the number of compilations.
+	 */
+	public static int getCompileSlots(){
+		return compileSlots.getValue();
+	}
+	
+	/**
+	 * Returns the size from which the results are compressed, for the clients which accept it.
+	 * 
+	 * @return the size, in bytes.
+	 */
+	public static int getCompressThreshold(){
+		return compressThreshold.getValue();
+	}
+	
+	/**
+	 * Returns the port on which the metrics are exported in the Prometheus format.
+	 * 
+	 * @return the port, {@code 0} if the metrics are only exported by JMX.
+	 */
+	public static int getMetricsPort(){
+		return metricsPort.getValue();
+	}
+	
+	/**
+	 * Returns the file in which the received requests are recorded.
+	 * 
+	 * @return the path of the file, or an empty string if requests aren't recorded.
+	 */
+	public static String getRecord(){
+		return record.getValue();
+	}
+	
+	/**
+	 * Returns the directory in which the compilations' workspaces are made, such as a tmpfs mount.
+	 * 
+	 * @return the path of the directory.
+	 */
+	public static String getWorkspaces(){
+		return workspaces.getValue();
+	}
+	
+	/**
+	 * Tells whether the clients' connections must be handled by a single thread which never blocks on them.
+	 * 
+	 * @return {@code true} if connections are handled by an event loop, {@code false} if each request blocks a thread for its whole duration.
+	 */
+	public static boolean useEventLoop(){
+		return frontEnd.getValue().equals(EVENT_LOOP);
+	}
+	
+	/**
+	 * Tells whether each request must be run by its own virtual thread.
+	 * 
+	 * @return {@code true} if requests are run by virtual threads, {@code false} if they are run by a pool of platform threads.
+	 */
+	public static boolean useVirtualThreads(){
+		return threads.getValue().equals(VIRTUAL);
+	}
+	
+	/**
+	 * Tells whether the compilation stages must be run inside the server's JVM.
+	 * 
+	 * @return {@code true} if the internal compiler must be used, {@code false} if the stages must be run as separate processes.
+	 */
+	public static boolean useInternalCompiler(){
+		return compiler.getValue().equals(INTERNAL);
+	}
+	
+	/**
+	 * Tells whether the compilations must be run by the pool of worker JVMs.
+	 * 
+	 * @return {@code true} if the workers must be used, {@code false} otherwise.
+	 */
+	public static boolean useWorkers(){
+		return compiler.getValue().equals(WORKER);
+	}
+	
+	/**
+	 * Returns the arguments of a worker JVM : the program's arguments, with the internal compiler and the hidden flag of the workers.
+	 * 
+	 * @return the arguments.
+	 */
+	public static List<String> getWorkerArguments(){
+		
+		List<String> l = new ArrayList<>();
+		
+		//the first occurrence of an option is the one which counts
+		l.add("--compiler");
+		l.add(INTERNAL);
+		l.add(WORKER_FLAG);
+		l.addAll(Arrays.asList(arguments));
+		
+		return l;
+	}
+	
+	/**
+	 * Returns the number of jobs after which a worker JVM is replaced.
+	 * 
+	 * @return the number of jobs.
+	 */
+	public static int getWorkerJobs(){
+		return workerJobs.getValue();
+	}
+	
+	/**
+	 * Returns the size of the heap kept by a worker JVM after its garbage collections, from which it is replaced.
+	 * 
+	 * @return the size, in bytes, {@code 0} if the workers are only replaced after their jobs.
+	 */
+	public static long getWorkerHeap(){
+		return workerHeap.getValue() * 1024L * 1024L;
+	}
+	
 	public static void addOptions() throws Exception{
 				
 		port = new IntOption(5668, "-p", "--port");
@@ -90,8 +363,33 @@ public class OptionManager {
 		jar = new StringOption("", "-j", "--jar");
 		rlambda = new StringOption(".", "-r", "--retroLambda");
 		host = new AddressOption(InetAddress.getByName("127.0.0.1"), "-h", "--host");
+		compiler = new StringOption(INTERNAL, "-c", "--compiler");
+		dexLibrary = new StringOption("", "-l", "--dexLibrary");
+		dexJobs = new IntOption(Runtime.getRuntime().availableProcessors(), "--dexJobs");
+		cacheMemory = new IntOption(64, "--cacheMemory");
+		cacheDisk = new IntOption(512, "--cacheDisk");
+		dexCache = new IntOption(128, "--dexCache");
+		receiveTimeout = new IntOption(60, "--receiveTimeout");
+		compileTimeout = new IntOption(180, "--compileTimeout");
+		sendTimeout = new IntOption(60, "--sendTimeout");
+		idleTimeout = new IntOption(300, "--idleTimeout");
+		metricsPort = new IntOption(0, "--metricsPort");
+		record = new StringOption("", "--record");
+		workspaces = new StringOption("", "--workspaces");
+		allow = new SubnetsOption(new ArrayList<>(), "--allow");
+		rateLimit = new IntOption(0, "--rateLimit");
+		rateBurst = new IntOption(0, "--rateBurst");
+		maxErrors = new IntOption(100, "--maxErrors");
+		workerJobs = new IntOption(500, "--workerJobs");
+		workerHeap = new IntOption(256, "--workerHeap");
+		threads = new StringOption(PLATFORM, "-t", "--threads");
+		compileSlots = new IntOption(Runtime.getRuntime().availableProcessors(), "--compileSlots");
+		frontEnd = new StringOption(EVENT_LOOP, "-f", "--frontEnd");
+		compressThreshold = new IntOption(1024, "--compressThreshold");
 		
-		options.addAll(Arrays.asList(port, dir, dx, jar, rlambda, host));
+		options.addAll(Arrays.asList(port, dir, dx, jar, rlambda, host, compiler, dexLibrary, dexJobs, cacheMemory, cacheDisk, dexCache,
+				receiveTimeout, compileTimeout, sendTimeout, threads, compileSlots, frontEnd,
+				compressThreshold, idleTimeout, metricsPort, record, workspaces, allow, rateLimit, rateBurst, maxErrors, workerJobs, workerHeap));
 	}
 	
 	private static void checkExistence(String fileName, String extension){
@@ -139,6 +437,42 @@ public class OptionManager {
 		}
 	}
 	
+	private static void checkCompiler() throws IllegalArgumentException{
+		
+		String c = compiler.getValue();
+		
+		if(!c.equals(INTERNAL) && !c.equals(EXTERNAL) && !c.equals(WORKER))
+			throw new IllegalArgumentException("Compiler \"" + c + "\" is neither \"" + INTERNAL + "\", \"" + EXTERNAL + "\" nor \"" + WORKER + "\".");
+	}
+	
+	private static void checkThreads() throws IllegalArgumentException{
+		
+		String t = threads.getValue();
+		
+		if(!t.equals(PLATFORM) && !t.equals(VIRTUAL))
+			throw new IllegalArgumentException("Threads \"" + t + "\" are neither \"" + PLATFORM + "\" nor \"" + VIRTUAL + "\".");
+		
+		if(t.equals(VIRTUAL) && Integer.parseInt(System.getProperty("java.specification.version").replaceFirst("^1\\.", "")) < 21)
+			throw new IllegalArgumentException("Virtual threads require java 21 or later.");
+		
+		if(getCompileSlots() < 1)
+			throw new IllegalArgumentException("At least one compilation must be allowed at once.");
+	}
+	
+	private static void checkRateLimit() throws IllegalArgumentException{
+		
+		if(getRateLimit() < 0 || rateBurst.getValue() < 0)
+			throw new IllegalArgumentException("The rate limit and its burst can't be negative.");
+	}
+	
+	private static void checkFrontEnd() throws IllegalArgumentException{
+		
+		String f = frontEnd.getValue();
+		
+		if(!f.equals(EVENT_LOOP) && !f.equals(BLOCKING))
+			throw new IllegalArgumentException("Front end \"" + f + "\" is neither \"" + EVENT_LOOP + "\" nor \"" + BLOCKING + "\".");
+	}
+	
 	private static boolean isWindows(){
 		return System.getProperty("os.name").toLowerCase().contains("windows");
 	}
@@ -0,0 +1,35 @@
+package robDex.util.option;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+import robDex.access.Subnet;
+
+/**
+ * An option whose value is a comma-separated list of blocks of addresses, as parsed by {@link Subnet#parse(String)}.
+ */
+
+class SubnetsOption extends Option<List<Subnet>> {
+	
+	public SubnetsOption(List<Subnet> defaultValue, String alias, String... aliases) {
+		super(defaultValue, alias, aliases);
+	}
+	
+	@Override
+	public void scan(String[] args) throws UnknownHostException{
+		
+		String s = getFirstValue(args);
+		
+		if(s == null)
+			return;
+		
+		List<Subnet> subnets = new ArrayList<>();
+		
+		for(String block : s.split(","))
+			if(!block.trim().isEmpty())
+				subnets.add(Subnet.parse(block.trim()));
+		
+		setValue(subnets);
+	}
+}
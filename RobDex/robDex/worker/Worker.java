@@ -0,0 +1,214 @@
+package robDex.worker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+
+import robDex.exceptions.FailedCompilationException;
+import robDex.metrics.Histogram;
+import robDex.metrics.Metrics;
+import robDex.metrics.Metrics.Phase;
+import robDex.util.Compilation;
+import robDex.util.Compiler;
+import robDex.util.Diagnostics;
+import robDex.util.JavaSource;
+import robDex.util.option.OptionManager;
+
+/**
+ * <p>
+ * This class is the entry point of the worker JVMs started by {@link WorkerPool}. A worker runs all the stages of a compilation inside its JVM,
+ * as the internal compiler does in the server's : javac, retrolambda and the dexer stay loaded and warm from one job to the next,
+ * while a crash or a leak of one of them can't harm the server. A worker is given the server's arguments, with the internal compiler.
+ * </p>
+ * <p>
+ * The worker runs one job at a time, taken from its standard input, and answers on its standard output. Numbers are written in big-endian order,
+ * and strings as {@link DataOutputStream#writeUTF(String)} does.
+ * <ol>
+ * <li>The server sends the directory of the compilation (string), the number of files (4 bytes), then for each file its name (string),
+ * the size of its content (4 bytes) and its content.</li>
+ * <li>The worker answers {@code 0} (1 byte) if the compilation was successful, {@code 1} if it failed, {@code 2} if it failed for reasons unrelated
+ * to the java files, then the size of its heap kept after its last garbage collections (8 bytes). For javac, retrolambda and the dexer, it sends
+ * whether the stage was run ({@code 1}), skipped ({@code 2}) or not reached ({@code 0}) (1 byte) and its duration in microseconds (8 bytes).
+ * It ends with the size of the DEX file or of the encoded diagnostics (4 bytes) and their content.</li>
+ * </ol>
+ * The worker exits once its standard input is closed.
+ * </p>
+ */
+
+public class Worker {
+	
+	static final byte SUCCESS = 0, FAILURE = 1, ERROR = 2;
+	static final byte NOT_RUN = 0, RUN = 1, SKIPPED = 2;
+	
+	/**
+	 * The stages run by the workers, in the order of the answer.
+	 */
+	static final Phase[] PHASES = {Phase.JAVAC, Phase.RETROLAMBDA, Phase.DEX};
+	
+	// Suppresses default constructor, ensuring non-instantiability.
+	private Worker(){}
+	
+	public static void main(String[] args){
+		
+		//the answers are the only bytes written on the standard output ; the messages of the tools go to the standard error
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+		System.setOut(System.err);
+		
+		try{
+			OptionManager.init(args);
+			Compiler.init();
+		}
+		
+		catch(Exception e){
+			
+			System.err.println(e.getMessage());
+			System.exit(-1);
+		}
+		
+		DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+		
+		try {
+			
+			while(true){
+				
+				String directory;
+				
+				try {
+					directory = in.readUTF();
+				}
+				
+				catch (EOFException e) {
+					
+					//the server is done with this worker
+					return;
+				}
+				
+				int count = in.readInt();
+				List<JavaSource> files = new ArrayList<>(count);
+				
+				for(int i = 0; i < count; i++){
+					
+					String name = in.readUTF();
+					byte[] content = new byte[in.readInt()];
+					
+					in.readFully(content);
+					files.add(new JavaSource(name, content));
+				}
+				
+				run(new Compilation(directory, files), out);
+				out.flush();
+			}
+		}
+		
+		catch (IOException e) {
+			System.exit(-1);
+		}
+	}
+	
+	/**
+	 * Runs a job and sends its answer. The durations of the stages are read from the worker's own metrics, which only this job updates.
+	 * 
+	 * @param compilation the compilation to be run.
+	 * @param out the standard output.
+	 * @throws IOException if the answer can't be sent.
+	 */
+	private static void run(Compilation compilation, DataOutputStream out) throws IOException{
+		
+		long[] counts = new long[PHASES.length], sums = new long[PHASES.length], skips = new long[PHASES.length];
+		
+		for(int i = 0; i < PHASES.length; i++){
+			
+			Histogram h = Metrics.getDurations(PHASES[i]);
+			
+			counts[i] = h.getCount();
+			sums[i] = h.getSum();
+			skips[i] = Metrics.getSkipped(PHASES[i]);
+		}
+		
+		byte tag;
+		byte[] content;
+		
+		try {
+			
+			Compiler.compile(compilation);
+			
+			tag = SUCCESS;
+			content = compilation.getDex();
+		}
+		
+		catch (FailedCompilationException e) {
+			
+			tag = e.getCause() == null ? FAILURE : ERROR;
+			content = Diagnostics.encode(compilation.getDiagnostics());
+		}
+		
+		catch (RuntimeException e) {
+			
+			e.printStackTrace();
+			
+			tag = ERROR;
+			content = Diagnostics.encode(compilation.getDiagnostics());
+		}
+		
+		out.writeByte(tag);
+		out.writeLong(getKeptHeap());
+		
+		for(int i = 0; i < PHASES.length; i++){
+			
+			Histogram h = Metrics.getDurations(PHASES[i]);
+			
+			if(Metrics.getSkipped(PHASES[i]) > skips[i]){
+				
+				out.writeByte(SKIPPED);
+				out.writeLong(0);
+			}
+			
+			else if(h.getCount() > counts[i]){
+				
+				out.writeByte(RUN);
+				out.writeLong(h.getSum() - sums[i]);
+			}
+			
+			else{
+				
+				out.writeByte(NOT_RUN);
+				out.writeLong(0);
+			}
+		}
+		
+		out.writeInt(content.length);
+		out.write(content);
+	}
+	
+	/**
+	 * Returns the size of the heap kept after the last garbage collections : unlike the heap in use, it doesn't count the garbage of the previous jobs,
+	 * and only grows if the stages keep what they loaded.
+	 * 
+	 * @return the size, in bytes.
+	 */
+	private static long getKeptHeap(){
+		
+		long kept = 0;
+		
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+			
+			MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+			
+			if(usage != null)
+				kept += usage.getUsed();
+		}
+		
+		return kept;
+	}
+}
@@ -0,0 +1,268 @@
+package robDex.worker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import robDex.exceptions.FailedCompilationException;
+import robDex.metrics.Metrics;
+import robDex.util.Compilation;
+import robDex.util.Diagnostics;
+import robDex.util.JavaSource;
+import robDex.util.option.OptionManager;
+import robDex.workspace.Workspace;
+import robDex.workspace.Workspaces;
+
+/**
+ * <p>
+ * This class runs the compilations in a pool of worker JVMs, with {@code --compiler worker} : the stages are isolated from the server
+ * as with separate processes, without starting a JVM and loading the compilers for every stage of every request.
+ * </p>
+ * <p>
+ * As many workers as compilation slots are started at startup, and each of them compiles a sample holding a lambda before it is given any job,
+ * so that javac, retrolambda and the dexer are loaded and warm. A worker is replaced after {@code --workerJobs} jobs, once the heap it keeps
+ * after its garbage collections exceeds {@code --workerHeap}, or when it fails ; its replacement is started and warmed up in the background.
+ * </p>
+ */
+
+public class WorkerPool {
+	
+	private static final String SAMPLE_NAME = "Warmup.java",
+			SAMPLE = "public class Warmup { Runnable r = () -> System.out.println(new StringBuilder(\"warm\").reverse()); }\n";
+	
+	/**
+	 * Time waited before starting a worker again once a start failed, in milliseconds.
+	 */
+	private static final long RESTART_DELAY = 1000;
+	
+	/**
+	 * Workers waiting for a job.
+	 */
+	private static final BlockingQueue<WorkerProcess> idle = new LinkedBlockingQueue<>();
+	
+	private static final AtomicLong started = new AtomicLong(), recycled = new AtomicLong();
+	
+	/**
+	 * Threads starting the workers, and threads reading their answers.
+	 */
+	private static final ExecutorService starters = Executors.newCachedThreadPool(r -> daemon(r, "worker starter")),
+			readers = Executors.newCachedThreadPool(r -> daemon(r, "worker reader"));
+	
+	private static List<String> command;
+	
+	// Suppresses default constructor, ensuring non-instantiability.
+	private WorkerPool(){}
+	
+	/**
+	 * Starts the workers, if the program's options ask for them, and waits until they are all warmed up.
+	 * Must be called once the workspaces are initialized, the warm-up being compiled in one of them.
+	 * 
+	 * @throws IOException if a worker can't be started or warmed up.
+	 */
+	public static void init() throws IOException{
+		
+		if(!OptionManager.useWorkers())
+			return;
+		
+		command = new ArrayList<>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(Worker.class.getName());
+		command.addAll(OptionManager.getWorkerArguments());
+		
+		List<Future<WorkerProcess>> workers = new ArrayList<>();
+		
+		for(int i = 0; i < OptionManager.getCompileSlots(); i++)
+			workers.add(starters.submit(WorkerPool::start));
+		
+		try {
+			
+			for(Future<WorkerProcess> w : workers)
+				idle.add(w.get());
+		}
+		
+		catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+		
+		catch (ExecutionException e) {
+			throw new IOException("Can't start a worker : " + e.getCause().getMessage(), e.getCause());
+		}
+	}
+	
+	/**
+	 * Runs a compilation in a worker, once one is free. The durations of the stages measured by the worker are recorded by the server's metrics.
+	 * 
+	 * @param compilation the compilation to be run.
+	 * @throws FailedCompilationException if the compilation fails, or if the worker fails or the wait for it is interrupted.
+	 */
+	public static void compile(Compilation compilation) throws FailedCompilationException{
+		
+		WorkerProcess worker;
+		
+		try {
+			worker = idle.take();
+		}
+		
+		catch (InterruptedException e) {
+			throw new FailedCompilationException(e);
+		}
+		
+		WorkerProcess.Answer answer;
+		
+		try {
+			answer = worker.run(compilation, readers);
+		}
+		
+		catch (IOException | InterruptedException e) {
+			throw new FailedCompilationException(e);
+		}
+		
+		finally{
+			release(worker);
+		}
+		
+		for(int i = 0; i < Worker.PHASES.length; i++){
+			
+			if(answer.states[i] == Worker.RUN)
+				Metrics.recordDuration(Worker.PHASES[i], answer.durations[i]);
+			
+			else if(answer.states[i] == Worker.SKIPPED)
+				Metrics.skip(Worker.PHASES[i], System.nanoTime());
+		}
+		
+		if(answer.tag == Worker.SUCCESS){
+			
+			compilation.setDex(answer.content);
+			return;
+		}
+		
+		compilation.getDiagnostics().addAll(Diagnostics.decode(ByteBuffer.wrap(answer.content)));
+		
+		if(answer.tag == Worker.FAILURE)
+			throw new FailedCompilationException(1);
+		
+		throw new FailedCompilationException(new IOException("The worker failed."));
+	}
+	
+	/**
+	 * Returns the number of workers started and warmed up since the server started, the replacements included.
+	 * 
+	 * @return the number of workers.
+	 */
+	public static long getStarted(){
+		return started.get();
+	}
+	
+	/**
+	 * Returns the number of workers replaced since the server started.
+	 * 
+	 * @return the number of workers.
+	 */
+	public static long getRecycled(){
+		return recycled.get();
+	}
+	
+	/**
+	 * Starts a worker and warms it up.
+	 * 
+	 * @return the worker, ready for its jobs.
+	 * @throws IOException if the worker can't be started, or fails to compile the sample.
+	 * @throws InterruptedException if the warm-up is interrupted.
+	 */
+	private static WorkerProcess start() throws IOException, InterruptedException{
+		
+		WorkerProcess worker = new WorkerProcess(command);
+		List<JavaSource> sample = Collections.singletonList(new JavaSource(SAMPLE_NAME, SAMPLE.getBytes(StandardCharsets.UTF_8)));
+		
+		try(Workspace workspace = Workspaces.acquire()){
+			
+			WorkerProcess.Answer answer = worker.run(new Compilation(workspace.getPath(), sample), readers);
+			
+			if(answer.tag != Worker.SUCCESS){
+				
+				worker.kill();
+				throw new IOException("The warm-up failed.\n" + Diagnostics.toText(Diagnostics.decode(ByteBuffer.wrap(answer.content))));
+			}
+		}
+		
+		started.incrementAndGet();
+		
+		return worker;
+	}
+	
+	/**
+	 * Gives a worker back to the pool after a job, or replaces it if it failed, ran its jobs or keeps too much of its heap.
+	 * 
+	 * @param worker the worker.
+	 */
+	private static void release(WorkerProcess worker){
+		
+		long maxHeap = OptionManager.getWorkerHeap();
+		
+		//the warm-up isn't counted
+		if(!worker.isBroken() && worker.getJobs() <= OptionManager.getWorkerJobs() && (maxHeap == 0 || worker.getKeptHeap() <= maxHeap)){
+			
+			idle.add(worker);
+			return;
+		}
+		
+		worker.close();
+		recycled.incrementAndGet();
+		
+		starters.execute(WorkerPool::replace);
+	}
+	
+	/**
+	 * Starts a worker in place of a replaced one, trying again until it starts.
+	 */
+	private static void replace(){
+		
+		while(true){
+			
+			try {
+				
+				idle.add(start());
+				return;
+			}
+			
+			catch (IOException e) {
+				
+				System.err.println(e.getMessage());
+				
+				try {
+					TimeUnit.MILLISECONDS.sleep(RESTART_DELAY);
+				}
+				
+				catch (InterruptedException ie) {
+					return;
+				}
+			}
+			
+			catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+	
+	private static Thread daemon(Runnable r, String name){
+		
+		Thread t = new Thread(r, name);
+		t.setDaemon(true);
+		
+		return t;
+	}
+}
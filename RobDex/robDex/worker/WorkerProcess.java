@@ -0,0 +1,174 @@
+package robDex.worker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import robDex.util.Compilation;
+import robDex.util.JavaSource;
+import robDex.util.Util;
+
+/**
+ * This class is the server's side of a worker JVM : it sends the jobs on the worker's standard input, and reads its answers.
+ * A worker which doesn't answer properly, or whose job is abandoned, is broken : it is killed, and must be replaced.
+ */
+
+class WorkerProcess {
+	
+	private final Process process;
+	private final DataOutputStream in;
+	private final DataInputStream out;
+	
+	/**
+	 * Number of jobs run by the worker, its warm-up included.
+	 */
+	private int jobs;
+	
+	private long keptHeap;
+	private boolean broken;
+	
+	/**
+	 * The answer of a worker to a job.
+	 */
+	static class Answer {
+		
+		byte tag;
+		
+		/**
+		 * What the worker did of each stage of {@link Worker#PHASES}, and how long it took, in microseconds.
+		 */
+		final byte[] states = new byte[Worker.PHASES.length];
+		final long[] durations = new long[Worker.PHASES.length];
+		
+		/**
+		 * The DEX file, or the encoded diagnostics.
+		 */
+		byte[] content;
+	}
+	
+	/**
+	 * Starts a worker.
+	 * 
+	 * @param command the command starting the worker's JVM.
+	 * @throws IOException if the JVM can't be started.
+	 */
+	WorkerProcess(List<String> command) throws IOException{
+		
+		process = new ProcessBuilder(command).redirectError(Redirect.INHERIT).start();
+		
+		in = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+		out = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+	}
+	
+	/**
+	 * Gives a compilation to the worker, and waits for its answer. The answer is read by another thread, so that the wait can be interrupted
+	 * by the request's deadline, in which case the worker is killed.
+	 * 
+	 * @param compilation the compilation.
+	 * @param readers the threads reading the answers.
+	 * @return the answer of the worker.
+	 * @throws IOException if the worker can't be reached or doesn't answer properly.
+	 * @throws InterruptedException if the wait is interrupted.
+	 */
+	Answer run(Compilation compilation, ExecutorService readers) throws IOException, InterruptedException{
+		
+		jobs++;
+		
+		try {
+			
+			in.writeUTF(compilation.getDirectory());
+			in.writeInt(compilation.getSources().size());
+			
+			for(JavaSource s : compilation.getSources()){
+				
+				in.writeUTF(s.getName());
+				in.writeInt(s.getContent().length);
+				in.write(s.getContent());
+			}
+			
+			in.flush();
+			
+			Future<Answer> answer = readers.submit(this::read);
+			
+			return answer.get();
+		}
+		
+		catch (IOException | InterruptedException e) {
+			
+			kill();
+			throw e;
+		}
+		
+		catch (ExecutionException e) {
+			
+			kill();
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+	}
+	
+	private Answer read() throws IOException{
+		
+		Answer a = new Answer();
+		
+		a.tag = out.readByte();
+		keptHeap = out.readLong();
+		
+		for(int i = 0; i < a.states.length; i++){
+			
+			a.states[i] = out.readByte();
+			a.durations[i] = out.readLong();
+		}
+		
+		a.content = new byte[out.readInt()];
+		out.readFully(a.content);
+		
+		return a;
+	}
+	
+	int getJobs(){
+		return jobs;
+	}
+	
+	/**
+	 * Returns the size of the worker's heap kept after its last garbage collections, as given by its last answer.
+	 * 
+	 * @return the size, in bytes.
+	 */
+	long getKeptHeap(){
+		return keptHeap;
+	}
+	
+	boolean isBroken(){
+		return broken;
+	}
+	
+	/**
+	 * Stops the worker once it's done : its standard input is closed, which ends its loop.
+	 */
+	void close(){
+		
+		try {
+			in.close();
+		}
+		
+		catch (IOException e) {
+			kill();
+		}
+	}
+	
+	/**
+	 * Stops the worker at once, and waits for its death so that it doesn't write in the workspace anymore.
+	 */
+	void kill(){
+		
+		broken = true;
+		Util.kill(process);
+	}
+}
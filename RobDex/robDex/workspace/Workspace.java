@@ -0,0 +1,44 @@
+package robDex.workspace;
+
+import java.io.Closeable;
+import java.io.File;
+
+/**
+ * A directory in which a single compilation may write its files, taken from {@link Workspaces} and given back once the compilation is over.
+ */
+
+public class Workspace implements Closeable{
+	
+	private final File directory;
+	private boolean released;
+	
+	Workspace(File directory){
+		this.directory = directory;
+	}
+	
+	/**
+	 * Returns the path of the directory, which exists and is empty when the workspace is taken.
+	 * 
+	 * @return the path of the directory.
+	 */
+	public String getPath(){
+		return directory.getPath();
+	}
+	
+	File getDirectory(){
+		return directory;
+	}
+	
+	/**
+	 * Gives the workspace back, to be emptied and reused. The compilation must no longer write in its directory.
+	 */
+	@Override
+	public synchronized void close(){
+		
+		if(released)
+			return;
+		
+		released = true;
+		Workspaces.release(this);
+	}
+}
@@ -0,0 +1,287 @@
+package robDex.workspace;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import robDex.util.Util;
+import robDex.util.option.OptionManager;
+
+/**
+ * <p>
+ * This class gives the compilations the directories in which they write their files, such as the java files and class files
+ * given to the stages run as separate processes.
+ * </p>
+ * <p>
+ * Each run of the server has a directory of its own under {@link OptionManager#getWorkspaces()}, locked for as long as the server runs,
+ * whose workspaces are named by a counter so that two compilations never share one. A pool of empty workspaces is made at startup ;
+ * once a compilation is over, its workspace is emptied by a background thread, the reaper, then given to the next compilations.
+ * Workspaces which are still empty, holding at most the empty sub-directories of a previous compilation, are reused at once,
+ * and the reaper deletes the workspaces exceeding the pool.
+ * </p>
+ * <p>
+ * At startup, the reaper deletes the directories left by the runs which didn't end properly, recognized by their lock being free.
+ * </p>
+ */
+
+public class Workspaces {
+	
+	private static final String RUN_PREFIX = "run-", LOCK = "lock";
+	
+	/**
+	 * Age from which a run's directory without lock is deleted, in milliseconds : younger ones may be being made by a server starting at the same time.
+	 */
+	private static final long UNLOCKED_AGE = 60 * 1000;
+	
+	/**
+	 * Empty workspaces, ready to be taken.
+	 */
+	private static final ConcurrentLinkedQueue<Workspace> pool = new ConcurrentLinkedQueue<>();
+	
+	private static final AtomicInteger pooled = new AtomicInteger();
+	private static final AtomicLong created = new AtomicLong(), reused = new AtomicLong(), swept = new AtomicLong();
+	
+	private static final ExecutorService reaper = Executors.newSingleThreadExecutor(r -> {
+		
+		Thread t = new Thread(r, "workspace reaper");
+		t.setDaemon(true);
+		
+		return t;
+	});
+	
+	private static File run;
+	private static int maxPooled;
+	
+	/**
+	 * The lock of the run's directory, held until the server stops.
+	 */
+	private static FileChannel lock;
+	
+	// Suppresses default constructor, ensuring non-instantiability.
+	private Workspaces(){}
+	
+	/**
+	 * Initializes the workspaces : makes the run's directory and the pool, then sweeps the directories of the previous runs in the background.
+	 * 
+	 * @throws IOException if the run's directory can't be made or locked.
+	 */
+	public static synchronized void init() throws IOException{
+		
+		File root = new File(OptionManager.getWorkspaces());
+		root.mkdirs();
+		
+		run = Files.createTempDirectory(root.toPath(), RUN_PREFIX).toFile();
+		lock = FileChannel.open(new File(run, LOCK).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		
+		if(lock.tryLock() == null)
+			throw new IOException("Can't lock " + run);
+		
+		maxPooled = OptionManager.getCompileSlots() * 2;
+		
+		for(int i = 0; i < OptionManager.getCompileSlots(); i++){
+			
+			pool.add(create());
+			pooled.incrementAndGet();
+		}
+		
+		reaper.execute(() -> sweep(root));
+	}
+	
+	/**
+	 * Takes an empty workspace, from the pool if it holds one.
+	 * 
+	 * @return the workspace, to be closed once the compilation is over.
+	 */
+	public static Workspace acquire(){
+		
+		Workspace workspace = pool.poll();
+		
+		if(workspace == null)
+			return create();
+		
+		pooled.decrementAndGet();
+		reused.incrementAndGet();
+		
+		return workspace;
+	}
+	
+	/**
+	 * Gives a workspace back : to the pool at once if it is still empty, to the reaper otherwise.
+	 * 
+	 * @param workspace the workspace.
+	 */
+	static void release(Workspace workspace){
+		
+		if(isEmpty(workspace.getDirectory()))
+			recycle(workspace);
+		
+		else
+			reaper.execute(() -> {
+				
+				empty(workspace.getDirectory());
+				recycle(workspace);
+			});
+	}
+	
+	/**
+	 * Returns the number of workspaces made since the server started.
+	 * 
+	 * @return the number of workspaces.
+	 */
+	public static long getCreated(){
+		return created.get();
+	}
+	
+	/**
+	 * Returns the number of times a workspace was taken from the pool instead of being made.
+	 * 
+	 * @return the number of times.
+	 */
+	public static long getReused(){
+		return reused.get();
+	}
+	
+	/**
+	 * Returns the number of directories left by previous runs, deleted at startup.
+	 * 
+	 * @return the number of directories.
+	 */
+	public static long getSwept(){
+		return swept.get();
+	}
+	
+	/**
+	 * Makes a new workspace, named after the number of workspaces made by this run.
+	 * 
+	 * @return the workspace.
+	 */
+	private static Workspace create(){
+		
+		File directory = new File(run, Long.toString(created.getAndIncrement()));
+		directory.mkdir();
+		
+		return new Workspace(directory);
+	}
+	
+	/**
+	 * Puts an empty workspace back in the pool, or deletes it if the pool is full.
+	 * 
+	 * @param workspace the workspace.
+	 */
+	private static void recycle(Workspace workspace){
+		
+		if(pooled.incrementAndGet() <= maxPooled){
+			
+			pool.add(new Workspace(workspace.getDirectory()));
+			return;
+		}
+		
+		pooled.decrementAndGet();
+		reaper.execute(() -> Util.deleteDir(workspace.getDirectory()));
+	}
+	
+	/**
+	 * Tells whether a workspace is still empty : it holds no file, only the empty sub-directories kept by {@link #empty(File)}.
+	 * 
+	 * @param directory the workspace's directory, or one of its sub-directories.
+	 * @return {@code true} if no file was found, {@code false} otherwise or if a directory can't be read.
+	 */
+	private static boolean isEmpty(File directory){
+		
+		File[] files = directory.listFiles();
+		
+		if(files == null)
+			return false;
+		
+		for(File f : files)
+			if(!f.isDirectory() || !isEmpty(f))
+				return false;
+		
+		return true;
+	}
+	
+	/**
+	 * Deletes the content of a workspace. The sub-directories are only emptied, since the next compilations make the same ones.
+	 * 
+	 * @param directory the workspace's directory.
+	 */
+	private static void empty(File directory){
+		
+		File[] files = directory.listFiles();
+		
+		if(files == null)
+			return;
+		
+		for(File f : files){
+			
+			File[] content = f.listFiles();
+			
+			if(content == null)
+				f.delete();
+			
+			else
+				for(File c : content)
+					Util.deleteDir(c);
+		}
+	}
+	
+	/**
+	 * Deletes the directories of the previous runs whose lock is free, the server which made them being over.
+	 * 
+	 * @param root the directory holding the runs' directories.
+	 */
+	private static void sweep(File root){
+		
+		File[] runs = root.listFiles((dir, name) -> name.startsWith(RUN_PREFIX));
+		
+		if(runs == null)
+			return;
+		
+		for(File r : runs){
+			
+			if(r.equals(run) || !isOrphan(r))
+				continue;
+			
+			Util.deleteDir(r);
+			swept.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Tells whether the directory of a run is no longer used, its lock being free.
+	 * 
+	 * @param r the run's directory.
+	 * @return {@code true} if the server which made the directory is over, {@code false} otherwise.
+	 */
+	private static boolean isOrphan(File r){
+		
+		File l = new File(r, LOCK);
+		
+		if(!l.exists())
+			return System.currentTimeMillis() - r.lastModified() > UNLOCKED_AGE;
+		
+		try(FileChannel channel = FileChannel.open(l.toPath(), StandardOpenOption.WRITE)){
+			
+			FileLock fileLock = channel.tryLock();
+			
+			if(fileLock == null)
+				return false;
+			
+			fileLock.release();
+			return true;
+		}
+		
+		catch (IOException | OverlappingFileLockException e) {
+			return false;
+		}
+	}
+}
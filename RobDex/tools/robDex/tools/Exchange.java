@@ -0,0 +1,178 @@
+package robDex.tools;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import robDex.protocol.BinaryProtocol;
+import robDex.protocol.Protocol;
+import robDex.util.JavaSource;
+
+/**
+ * This class sends a request to the server, as a client does, and times each phase of the exchange :
+ * connecting, uploading the files, waiting for the compilation, then downloading the result.
+ */
+
+class Exchange {
+	
+	enum Phase { CONNECT, UPLOAD, COMPILE, DOWNLOAD }
+	
+	enum Outcome { SUCCESS, FAILURE, REJECTED, ERROR }
+	
+	private static final int TIMEOUT = 5 * 60 * 1000;
+	
+	/**
+	 * Durations of the phases, in nanoseconds.
+	 */
+	final long[] durations = new long[Phase.values().length];
+	
+	Outcome outcome = Outcome.ERROR;
+	
+	private final InetSocketAddress server;
+	private final boolean binary;
+	private final List<JavaSource> files;
+	
+	/**
+	 * Creates an exchange.
+	 * 
+	 * @param server the address of the server.
+	 * @param binary {@code true} to speak the binary protocol, {@code false} to speak the text protocol.
+	 * @param files the files to be compiled.
+	 */
+	Exchange(InetSocketAddress server, boolean binary, List<JavaSource> files){
+		
+		this.server = server;
+		this.binary = binary;
+		this.files = files;
+	}
+	
+	/**
+	 * Runs the exchange. Its phases and outcome are then given by {@link #durations} and {@link #outcome}.
+	 */
+	void run(){
+		
+		long t = System.nanoTime();
+		
+		try(Socket s = new Socket()){
+			
+			s.connect(server, TIMEOUT);
+			s.setSoTimeout(TIMEOUT);
+			s.setTcpNoDelay(true);
+			
+			t = end(Phase.CONNECT, t);
+			
+			OutputStream out = s.getOutputStream();
+			DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+			
+			if(!(binary ? uploadBinary(out, in) : uploadText(out, in))){
+				
+				outcome = Outcome.REJECTED;
+				return;
+			}
+			
+			t = end(Phase.UPLOAD, t);
+			
+			int tag = binary ? in.readByte() : Integer.parseInt(readLine(in));
+			t = end(Phase.COMPILE, t);
+			
+			int size = binary ? in.readInt() : Integer.parseInt(readLine(in));
+			in.readFully(new byte[size]);
+			end(Phase.DOWNLOAD, t);
+			
+			outcome = tag == Protocol.SUCCESS_TAG ? Outcome.SUCCESS : Outcome.FAILURE;
+		}
+		
+		catch (IOException | RuntimeException e) {
+			outcome = Outcome.ERROR;
+		}
+	}
+	
+	private long end(Phase phase, long start){
+		
+		long now = System.nanoTime();
+		durations[phase.ordinal()] = now - start;
+		
+		return now;
+	}
+	
+	private boolean uploadBinary(OutputStream out, DataInputStream in) throws IOException{
+		
+		ByteBuffer manifest = ByteBuffer.allocate(7 + files.size() * (2 + 4) + names());
+		manifest.put(BinaryProtocol.MAGIC).put(BinaryProtocol.VERSION).put((byte) 0).putInt(files.size());
+		
+		for(JavaSource f : files){
+			
+			byte[] name = f.getName().getBytes(StandardCharsets.UTF_8);
+			manifest.putShort((short) name.length).put(name).putInt(f.getContent().length);
+		}
+		
+		out.write(manifest.array());
+		out.flush();
+		
+		if(in.readByte() != Protocol.SUCCESS_TAG)
+			return false;
+		
+		for(JavaSource f : files)
+			out.write(f.getContent());
+		
+		out.flush();
+		
+		return true;
+	}
+	
+	private boolean uploadText(OutputStream out, DataInputStream in) throws IOException{
+		
+		out.write((files.size() + "\n").getBytes(StandardCharsets.US_ASCII));
+		out.flush();
+		
+		if(!readLine(in).equals("0"))
+			return false;
+		
+		for(JavaSource f : files){
+			
+			out.write((f.getName() + "\n" + f.getContent().length + "\n").getBytes(StandardCharsets.UTF_8));
+			out.flush();
+			
+			if(!readLine(in).equals("0"))
+				return false;
+			
+			out.write(f.getContent());
+		}
+		
+		out.flush();
+		
+		return true;
+	}
+	
+	private int names(){
+		
+		int n = 0;
+		
+		for(JavaSource f : files)
+			n += f.getName().getBytes(StandardCharsets.UTF_8).length;
+		
+		return n;
+	}
+	
+	private static String readLine(DataInputStream in) throws IOException{
+		
+		StringBuilder sb = new StringBuilder();
+		int b;
+		
+		while((b = in.read()) != '\n'){
+			
+			if(b == -1)
+				throw new IOException("Connection closed by the server.");
+			
+			sb.append((char) b);
+		}
+		
+		return sb.toString();
+	}
+}
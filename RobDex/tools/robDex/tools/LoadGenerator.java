@@ -0,0 +1,323 @@
+package robDex.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import robDex.Recorder;
+import robDex.Recorder.Recording;
+import robDex.metrics.Histogram;
+import robDex.tools.Exchange.Outcome;
+import robDex.tools.Exchange.Phase;
+import robDex.util.JavaSource;
+
+/**
+ * <p>
+ * This class pushes load at a server : virtual clients send requests at a target rate, and the durations of the exchanges are reported by phase.
+ * </p>
+ * <p>
+ * The load is open : requests are sent at the times given by the rate, whether the previous ones are answered or not,
+ * as real clients do. When all the virtual clients are busy, requests wait for one of them, and this wait is reported as the {@code queue} phase :
+ * the total duration of a request runs from the time it should have been sent, so that an overloaded server isn't hidden by a slower load.
+ * </p>
+ * <p>
+ * Usage : {@code java robDex.tools.LoadGenerator [options]}
+ * <ul>
+ * <li>{@code -h host}, {@code -p port} : address of the server, 127.0.0.1:5668 by default.</li>
+ * <li>{@code -c count} : number of virtual clients, 10 by default.</li>
+ * <li>{@code -r rate} : requests sent per second, 10 by default.</li>
+ * <li>{@code -d seconds} : duration of the load, 30 by default.</li>
+ * <li>{@code --protocol text|binary} : protocol spoken by the clients, binary by default.</li>
+ * <li>{@code --corpus path} : requests recorded by a server ({@code --record}), replayed one after the other.
+ * By default, each request sends a small java file of its own, so that it isn't answered by the server's cache.</li>
+ * <li>{@code --speedup factor} : replays the recorded requests at the times they were received, sped up by the factor, instead of at the rate.</li>
+ * <li>{@code -o path} : file in which the report is written in JSON, besides its summary on the standard output.</li>
+ * </ul>
+ * </p>
+ */
+
+public class LoadGenerator {
+	
+	private String host = "127.0.0.1", protocol = "binary", corpus, output;
+	private int port = 5668, clients = 10;
+	private double rate = 10, speedup;
+	private long duration = 30;
+	
+	private List<Recording> recordings = Collections.emptyList();
+	
+	/**
+	 * Durations of each phase, in microseconds, and of the whole requests.
+	 */
+	private final Map<Phase, Histogram> phases = new EnumMap<>(Phase.class);
+	private final Histogram queue = new Histogram(), total = new Histogram();
+	private final Map<Outcome, AtomicLong> outcomes = new EnumMap<>(Outcome.class);
+	
+	/**
+	 * Number given to the generated java files, unique from one run to the next so that the server's cache doesn't answer them.
+	 */
+	private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() * 1000);
+	
+	public static void main(String[] args){
+		
+		LoadGenerator generator = new LoadGenerator();
+		
+		try {
+			
+			generator.parse(args);
+			generator.run();
+		}
+		
+		catch (Exception e) {
+			
+			System.err.println(e.getMessage());
+			System.exit(-1);
+		}
+	}
+	
+	LoadGenerator(){
+		
+		for(Phase p : Phase.values())
+			phases.put(p, new Histogram());
+		
+		for(Outcome o : Outcome.values())
+			outcomes.put(o, new AtomicLong());
+	}
+	
+	private void parse(String[] args){
+		
+		for(int i = 0; i < args.length; i += 2){
+			
+			String a = args[i];
+			
+			if(i + 1 == args.length)
+				throw new IllegalArgumentException("Option \"" + a + "\" needs a value.");
+			
+			String v = args[i + 1];
+			
+			switch(a){
+			
+			case "-h":
+				host = v;
+				break;
+			
+			case "-p":
+				port = Integer.parseInt(v);
+				break;
+			
+			case "-c":
+				clients = Integer.parseInt(v);
+				break;
+			
+			case "-r":
+				rate = Double.parseDouble(v);
+				break;
+			
+			case "-d":
+				duration = Long.parseLong(v);
+				break;
+			
+			case "--protocol":
+				
+				if(!v.equals("text") && !v.equals("binary"))
+					throw new IllegalArgumentException("Protocol \"" + v + "\" is neither \"text\" nor \"binary\".");
+				
+				protocol = v;
+				break;
+			
+			case "--corpus":
+				corpus = v;
+				break;
+			
+			case "--speedup":
+				speedup = Double.parseDouble(v);
+				break;
+			
+			case "-o":
+				output = v;
+				break;
+			
+			default:
+				throw new IllegalArgumentException("Unknown option \"" + a + "\".");
+			}
+		}
+		
+		if(clients < 1 || rate <= 0 || duration < 1 || speedup < 0)
+			throw new IllegalArgumentException("Clients, rate, duration and speed-up must be positive.");
+		
+		if(speedup > 0 && corpus == null)
+			throw new IllegalArgumentException("A speed-up needs a corpus to replay.");
+	}
+	
+	private void run() throws IOException, InterruptedException{
+		
+		if(corpus != null){
+			
+			try(InputStream in = Files.newInputStream(Paths.get(corpus))){
+				recordings = Recorder.read(in);
+			}
+			
+			if(recordings.isEmpty())
+				throw new IllegalArgumentException("The corpus holds no requests.");
+		}
+		
+		InetSocketAddress server = new InetSocketAddress(host, port);
+		ExecutorService pool = Executors.newFixedThreadPool(clients);
+		
+		long start = System.nanoTime(), end = start + TimeUnit.SECONDS.toNanos(duration);
+		long sent = 0;
+		
+		while(true){
+			
+			long intended = start + delay(sent);
+			
+			if(intended >= end || speedup > 0 && sent == recordings.size())
+				break;
+			
+			long wait = intended - System.nanoTime();
+			
+			if(wait > 0)
+				TimeUnit.NANOSECONDS.sleep(wait);
+			
+			List<JavaSource> files = files(sent);
+			pool.execute(() -> send(server, files, intended));
+			
+			sent++;
+		}
+		
+		pool.shutdown();
+		pool.awaitTermination(10, TimeUnit.MINUTES);
+		
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		
+		report(System.out, sent, elapsed);
+		
+		if(output != null){
+			
+			try(PrintStream out = new PrintStream(Files.newOutputStream(Paths.get(output)), false, "UTF-8")){
+				json(out, sent, elapsed);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the time at which a request must be sent.
+	 * 
+	 * @param n the number of the request.
+	 * @return the delay since the start of the load, in nanoseconds.
+	 */
+	private long delay(long n){
+		
+		if(speedup > 0){
+			
+			if(n >= recordings.size())
+				return Long.MAX_VALUE / 2;
+			
+			return (long) ((recordings.get((int) n).getTime() - recordings.get(0).getTime()) * 1e6 / speedup);
+		}
+		
+		return (long) (n * 1e9 / rate);
+	}
+	
+	private List<JavaSource> files(long n){
+		
+		if(!recordings.isEmpty())
+			return recordings.get((int) (n % recordings.size())).getFiles();
+		
+		long id = sequence.incrementAndGet();
+		String source = "public class Load {\n\tRunnable r = () -> {};\n\tlong id() { return " + id + "L; }\n}\n";
+		
+		return Collections.singletonList(new JavaSource("Load.java", source.getBytes(StandardCharsets.UTF_8)));
+	}
+	
+	/**
+	 * Sends a request, and records the durations of its exchange.
+	 * 
+	 * @param server the address of the server.
+	 * @param files the files of the request.
+	 * @param intended the time at which the request should have been sent, as given by {@link System#nanoTime()}.
+	 */
+	private void send(InetSocketAddress server, List<JavaSource> files, long intended){
+		
+		queue.record((System.nanoTime() - intended) / 1000);
+		
+		Exchange e = new Exchange(server, protocol.equals("binary"), files);
+		e.run();
+		
+		total.record((System.nanoTime() - intended) / 1000);
+		outcomes.get(e.outcome).incrementAndGet();
+		
+		if(e.outcome == Outcome.SUCCESS || e.outcome == Outcome.FAILURE)
+			for(Phase p : Phase.values())
+				phases.get(p).record(e.durations[p.ordinal()] / 1000);
+	}
+	
+	private void report(PrintStream out, long sent, double elapsed){
+		
+		out.println(String.format(Locale.ROOT, "%d requests in %.1f s : %.2f requests/s", sent, elapsed, sent / elapsed));
+		
+		for(Outcome o : Outcome.values())
+			out.println(String.format(Locale.ROOT, "  %-9s %d", label(o), outcomes.get(o).get()));
+		
+		out.println();
+		out.println(String.format(Locale.ROOT, "%-9s %8s %10s %10s %10s %10s %10s", "phase (ms)", "count", "mean", "p50", "p90", "p99", "max"));
+		
+		row(out, "queue", queue);
+		
+		for(Phase p : Phase.values())
+			row(out, label(p), phases.get(p));
+		
+		row(out, "total", total);
+	}
+	
+	private static void row(PrintStream out, String name, Histogram h){
+		
+		long count = h.getCount();
+		
+		out.println(String.format(Locale.ROOT, "%-10s %8d %10.1f %10.1f %10.1f %10.1f %10.1f", name, count, count == 0 ? 0 : h.getSum() / 1e3 / count,
+				h.getQuantile(0.5) / 1e3, h.getQuantile(0.9) / 1e3, h.getQuantile(0.99) / 1e3, h.getQuantile(1) / 1e3));
+	}
+	
+	private void json(PrintStream out, long sent, double elapsed){
+		
+		out.print(String.format(Locale.ROOT, "{\n  \"requests\": %d,\n  \"seconds\": %.3f,\n  \"requestsPerSecond\": %.3f,\n  \"clients\": %d,\n  \"protocol\": \"%s\",\n",
+				sent, elapsed, sent / elapsed, clients, protocol));
+		
+		out.print("  \"outcomes\": {");
+		
+		for(Outcome o : Outcome.values())
+			out.print((o.ordinal() == 0 ? "" : ", ") + "\"" + label(o) + "\": " + outcomes.get(o).get());
+		
+		out.print("},\n  \"phases\": {\n");
+		out.print(jsonPhase("queue", queue) + ",\n");
+		
+		for(Phase p : Phase.values())
+			out.print(jsonPhase(label(p), phases.get(p)) + ",\n");
+		
+		out.print(jsonPhase("total", total) + "\n  }\n}\n");
+	}
+	
+	private static String jsonPhase(String name, Histogram h){
+		
+		long count = h.getCount();
+		
+		return String.format(Locale.ROOT, "    \"%s\": {\"count\": %d, \"meanMicros\": %d, \"p50Micros\": %d, \"p90Micros\": %d, \"p99Micros\": %d, \"maxMicros\": %d}",
+				name, count, count == 0 ? 0 : h.getSum() / count, h.getQuantile(0.5), h.getQuantile(0.9), h.getQuantile(0.99), h.getQuantile(1));
+	}
+	
+	private static String label(Enum<?> e){
+		return e.name().toLowerCase(Locale.ROOT);
+	}
+}